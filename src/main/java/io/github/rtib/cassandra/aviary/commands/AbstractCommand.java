@@ -15,21 +15,25 @@
  */
 package io.github.rtib.cassandra.aviary.commands;
 
+import java.util.concurrent.Callable;
+
 /**
  * Abstract super class for every CLI command.
  * 
  * @author repasi
  */
-public abstract class AbstractCommand implements Runnable {
+public abstract class AbstractCommand implements Callable<Integer> {
     
     @Override
-    public void run() {
-        execute();
+    public Integer call() {
+        return execute();
     }
     
     /**
      * CLI action to be executed. Override this to implement a CLI command.
+     * 
+     * @return the exit code of the command, zero on success
      */
-    protected abstract void execute();
+    protected abstract int execute();
 
 }
@@ -17,10 +17,34 @@ package io.github.rtib.cassandra.aviary.commands;
 
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.CqlSessionBuilder;
+import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
+import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
+import com.datastax.oss.driver.api.core.config.ProgrammaticDriverConfigLoaderBuilder;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import io.github.rtib.cassandra.aviary.report.AbstractRunReport;
+import io.github.rtib.cassandra.aviary.report.IRunReport;
+import io.github.rtib.cassandra.aviary.utils.DriverConfigLoaders;
+import io.github.rtib.cassandra.aviary.utils.DurationConverter;
+import io.github.rtib.cassandra.aviary.utils.PinningDiagnostics;
+import io.github.rtib.cassandra.aviary.utils.PrefixedOutputStream;
+import io.github.rtib.cassandra.aviary.utils.ProgressReporter;
+import io.github.rtib.cassandra.aviary.utils.ProgressTracker;
+import io.github.rtib.cassandra.aviary.utils.RunMonitor;
+import io.github.rtib.cassandra.aviary.utils.WorkerPartition;
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import picocli.CommandLine.Option;
@@ -33,7 +57,17 @@ public abstract class AbstractConnectCommand extends AbstractCommand {
 
     private static final Logger LOG = Logger.getLogger(AbstractConnectCommand.class.getName());
 
-    private final CqlSessionBuilder cqlSessionBuilder;
+    /**
+     * Path of the cluster profiles in the application.conf.
+     */
+    public static final String CLUSTERS_PATH = "aviary.clusters";
+
+    /**
+     * Resource of the driver settings of the tool, e.g. its execution profiles.
+     */
+    public static final String DEFAULTS_RESOURCE = "aviary-defaults.conf";
+
+    private final Map<String, CqlSession> clusterSessions = new ConcurrentHashMap<>();
     private CqlSession cqlSession;
     private Properties properties;
 
@@ -68,37 +102,419 @@ public abstract class AbstractConnectCommand extends AbstractCommand {
     )
     String localDc;
     
-    public AbstractConnectCommand() {
-        cqlSessionBuilder = CqlSession.builder();
-        properties = new Properties();
-        try {
-            properties.load(this.getClass().getClassLoader().getResourceAsStream("project.properties"));
-        } catch (IOException ex) {
-            LOG.log(Level.WARNING, "Failed to load properties", ex);
-        }
-    }
+    @Option(
+        names = "--cluster",
+        description = """
+                      Name of a cluster profile to connect to, defined as
+                      driver configuration below aviary.clusters.<name> in
+                      the application.conf. Repeat to run against several
+                      clusters concurrently. Contact point and local DC
+                      options are ignored for profiles.
+                      """
+    )
+    String[] clusters;
+    
+    @Option(
+        names = "--progress",
+        description = """
+                      Report progress periodically to the standard error.
+                      Valid values: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).
+                      """
+    )
+    ProgressReporter.Format progressFormat = ProgressReporter.Format.NONE;
+    
+    @Option(
+        names = "--progress-interval",
+        description = "Time between two progress reports, e.g. 10s or 1m (default: 10s).",
+        converter = DurationConverter.class
+    )
+    Duration progressInterval = Duration.ofSeconds(10);
+    
+    @Option(
+        names = "--report",
+        description = "File to write a machine-readable report of the run to."
+    )
+    File reportFile;
+    
+    @Option(
+        names = "--report-format",
+        description = """
+                      Format of the run report.
+                      Valid values: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).
+                      """
+    )
+    AbstractRunReport.Format reportFormat = AbstractRunReport.Format.JSON;
+    
+    @Option(
+        names = "--speculative-executions",
+        description = """
+                      Number of speculative executions the driver may start for
+                      idempotent reads not answered in time. Disabled by default.
+                      """
+    )
+    int speculativeExecutions = 0;
+    
+    @Option(
+        names = "--speculative-delay",
+        description = "Delay before starting a speculative execution (default: 100ms).",
+        converter = DurationConverter.class
+    )
+    Duration speculativeDelay = Duration.ofMillis(100);
+    
+    @Option(
+        names = "--diagnose-pinning",
+        description = """
+                      Record virtual threads pinning their carrier thread
+                      using JFR and print a summary of the pinned stacks at
+                      the end of the run.
+                      """
+    )
+    boolean diagnosePinning;
+    
+    @Option(
+        names = "--pinning-threshold",
+        description = "Minimum duration of pinning to be recorded (default: 1ms).",
+        converter = DurationConverter.class
+    )
+    Duration pinningThreshold = Duration.ofMillis(1);
     
     /**
      * Create a singleton cqlSession. A new session will be created if not exists
-     * using the parameter got from command line options.
+     * using the parameter got from command line options. The driver is not
+     * touched before, so commands are instantiated by picocli without loading
+     * driver classes.
      * 
      * @return the CQL session instance
      */
     protected CqlSession getCqlSession() {
         if (cqlSession == null) {
+            CqlSessionBuilder cqlSessionBuilder = CqlSession.builder();
             if (contactPoint != null)
                 for (InetAddress cp : contactPoint)
                     cqlSessionBuilder.addContactPoint(new InetSocketAddress(cp, port));
-            if (username != null)
-                cqlSessionBuilder.withAuthCredentials(username, password);
             if (localDc != null)
                 cqlSessionBuilder.withLocalDatacenter(localDc);
-            cqlSessionBuilder
-                    .withApplicationName(properties.getProperty("application-name"))
-                    .withApplicationVersion(properties.getProperty("version"));
-            cqlSession = cqlSessionBuilder.build();
+            cqlSession = configure(cqlSessionBuilder.withConfigLoader(configLoader(AbstractConnectCommand::loadConfig)))
+                    .build();
         }
             
         return cqlSession;
-    } 
+    }
+    
+    /**
+     * Get the session of a cluster profile, creating it on first use. The
+     * profile overrides the driver configuration of the application.conf,
+     * so each cluster may have its own contact points, local datacenter,
+     * request throttler, etc.
+     * 
+     * @param cluster name of the cluster profile, null for the cluster given
+     * by command line options
+     * @return the CQL session instance of the cluster
+     * @throws IllegalArgumentException if the profile is not defined
+     */
+    protected CqlSession getCqlSession(String cluster) {
+        if (cluster == null)
+            return getCqlSession();
+        return clusterSessions.computeIfAbsent(cluster, name -> {
+            CqlSessionBuilder builder = CqlSession.builder()
+                    .withConfigLoader(configLoader(profileConfig(name)));
+            return configure(builder).build();
+        });
+    }
+    
+    /**
+     * Get the local datacenter of a cluster: the one given by command line
+     * options, or the one configured for the driver.
+     * 
+     * @param cluster name of the cluster profile, null for the cluster given
+     * by command line options
+     * @return the local datacenter, null if not known
+     */
+    protected String getLocalDatacenter(String cluster) {
+        if (cluster == null && localDc != null)
+            return localDc;
+        return getCqlSession(cluster).getContext().getConfig().getDefaultProfile()
+                .getString(DefaultDriverOption.LOAD_BALANCING_LOCAL_DATACENTER, null);
+    }
+    
+    /**
+     * @return the names of the cluster profiles requested, or a single null
+     * name for the cluster given by command line options
+     */
+    protected String[] getClusters() {
+        if (clusters == null || clusters.length == 0)
+            return new String[]{null};
+        return clusters;
+    }
+    
+    /**
+     * Run a task for each cluster requested. Several clusters are run
+     * concurrently on virtual threads, each task having its own session,
+     * which is closed when the task finished. Failures are logged per
+     * cluster, not affecting the tasks of other clusters.
+     * 
+     * @param task the task to run with the name of a cluster profile
+     * @return the exit code, non-zero if the task failed on any cluster
+     */
+    protected int forEachCluster(ClusterTask task) {
+        String[] names = getClusters();
+        Future<?>[] runs = new Future<?>[names.length];
+        boolean failed = false;
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < names.length; i++) {
+                String name = names[i];
+                runs[i] = executor.submit(() -> {
+                    try {
+                        task.run(name);
+                    } finally {
+                        closeCqlSession(name);
+                    }
+                    return null;
+                });
+            }
+            for (int i = 0; i < names.length; i++) {
+                try {
+                    runs[i].get();
+                } catch (ExecutionException ex) {
+                    LOG.log(Level.SEVERE, names[i] == null ? "Run failed." : "Run failed on cluster " + names[i] + ".", ex.getCause());
+                    failed = true;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            failed = true;
+        }
+        return failed ? -1 : 0;
+    }
+
+    /**
+     * Close the session of a cluster, if it was created. A later request
+     * creates a new session.
+     * 
+     * @param cluster name of the cluster profile, null for the cluster given
+     * by command line options
+     */
+    protected void closeCqlSession(String cluster) {
+        CqlSession session;
+        if (cluster == null) {
+            session = cqlSession;
+            cqlSession = null;
+        } else {
+            session = clusterSessions.remove(cluster);
+        }
+        if (session != null)
+            session.close();
+    }
+    
+    /**
+     * @return the share of the work taken by this process, if the run is
+     * partitioned across several workers
+     */
+    protected WorkerPartition getWorker() {
+        return WorkerPartition.SINGLE;
+    }
+    
+    /**
+     * Derive the file of a cluster from a file given by command line options
+     * by appending the cluster name to the base name. The file is kept if only
+     * one cluster is requested. The shard files of several workers get the
+     * worker appended as well, see {@link WorkerPartition#shardFile}.
+     * 
+     * @param file the file given
+     * @param cluster name of the cluster profile
+     * @return the file of the cluster
+     */
+    protected File clusterFile(File file, String cluster) {
+        if (file == null || cluster == null || getClusters().length == 1)
+            return getWorker().shardFile(file);
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String clusterName = dot > 0
+                ? name.substring(0, dot) + "-" + cluster + name.substring(dot)
+                : name + "-" + cluster;
+        return getWorker().shardFile(new File(file.getParentFile(), clusterName));
+    }
+    
+    /**
+     * Get the stream the results of a cluster are printed to. If several
+     * clusters are requested, each line is labeled with the cluster name.
+     * 
+     * @param cluster name of the cluster profile
+     * @return stream of human-readable results
+     */
+    protected PrintStream clusterOutput(String cluster) {
+        if (cluster == null || getClusters().length == 1)
+            return System.out;
+        return PrefixedOutputStream.labeled(System.out, cluster);
+    }
+    
+    private CqlSessionBuilder configure(CqlSessionBuilder builder) {
+        if (properties == null)
+            properties = loadProperties();
+        if (username != null)
+            builder.withAuthCredentials(username, password);
+        return builder
+                .withApplicationName(properties.getProperty("application-name"))
+                .withApplicationVersion(properties.getProperty("version"));
+    }
+    
+    private static Properties loadProperties() {
+        Properties loaded = new Properties();
+        try {
+            loaded.load(AbstractConnectCommand.class.getClassLoader().getResourceAsStream("project.properties"));
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Failed to load properties", ex);
+        }
+        return loaded;
+    }
+    
+    /**
+     * Create the loader of a driver configuration, adding speculative
+     * executions if requested by command line options.
+     */
+    private DriverConfigLoader configLoader(Supplier<Config> config) {
+        if (speculativeExecutions > 0)
+            return withSpeculativeExecutions(DriverConfigLoaders.programmaticBuilder(config));
+        return DriverConfigLoaders.of(config);
+    }
+    
+    private DriverConfigLoader withSpeculativeExecutions(ProgrammaticDriverConfigLoaderBuilder builder) {
+        return builder
+                .withString(DefaultDriverOption.SPECULATIVE_EXECUTION_POLICY_CLASS, "ConstantSpeculativeExecutionPolicy")
+                .withInt(DefaultDriverOption.SPECULATIVE_EXECUTION_MAX, speculativeExecutions + 1)
+                .withDuration(DefaultDriverOption.SPECULATIVE_EXECUTION_DELAY, speculativeDelay)
+                .build();
+    }
+    
+    /**
+     * Load the configuration the way the driver does, with the driver
+     * settings of the tool between the application.conf and the driver
+     * defaults. The config is not narrowed to the driver root.
+     * 
+     * @return the resolved configuration
+     */
+    static Config loadConfig() {
+        ConfigFactory.invalidateCaches();
+        return ConfigFactory.defaultOverrides()
+                .withFallback(applicationConfig())
+                .withFallback(ConfigFactory.parseResourcesAnySyntax(
+                        AbstractConnectCommand.class.getClassLoader(), DEFAULTS_RESOURCE))
+                .withFallback(ConfigFactory.defaultReference(CqlSession.class.getClassLoader()))
+                .resolve();
+    }
+
+    /**
+     * The application.conf of an installation is read from its etc directory
+     * by path, keeping it off the class path, where a non-empty directory
+     * would disable class data sharing. An explicit config.file,
+     * config.resource or config.url takes precedence, as does the class path
+     * if not run from an installation.
+     *
+     * @return the unresolved application config
+     */
+    private static Config applicationConfig() {
+        String home = System.getProperty("app.home");
+        if (home == null
+                || System.getProperty("config.file") != null
+                || System.getProperty("config.resource") != null
+                || System.getProperty("config.url") != null)
+            return ConfigFactory.defaultApplication();
+        return ConfigFactory.parseFileAnySyntax(new File(new File(home, "etc"), "application"));
+    }
+    
+    /**
+     * Configuration of a cluster profile: the profile is moved to the root of
+     * the driver configuration, falling back to the application.conf, the
+     * settings of the tool and the driver defaults for everything not set by
+     * the profile.
+     */
+    private static Supplier<Config> profileConfig(String cluster) {
+        String path = CLUSTERS_PATH + "." + cluster;
+        return () -> {
+            Config config = loadConfig();
+            if (!config.hasPath(path))
+                throw new IllegalArgumentException("Cluster profile " + path + " not found in application.conf");
+            return config.getConfig(path)
+                    .atPath(DriverConfigLoaders.ROOT_PATH)
+                    .withFallback(config);
+        };
+    }
+    
+    /**
+     * Start reporting the progress of a run as requested by command line
+     * options. The returned reporter has to be closed when the run finished.
+     * 
+     * @param tracker progress counters of the run
+     * @param taskUnit name of the tasks being counted
+     * @param itemUnit name of the items produced by the tasks
+     * @return a started progress reporter
+     */
+    protected ProgressReporter startProgressReporter(ProgressTracker tracker, String taskUnit, String itemUnit) {
+        return new ProgressReporter(tracker, progressFormat, progressInterval,
+                System.err, taskUnit, itemUnit);
+    }
+    
+    /**
+     * Start diagnosing virtual thread pinning if requested by command line
+     * options. The returned object has to be closed when the run finished.
+     * 
+     * @return the started diagnostics, or disabled ones if not requested
+     */
+    protected PinningDiagnostics startPinningDiagnostics() {
+        if (!diagnosePinning)
+            return PinningDiagnostics.disabled();
+        return PinningDiagnostics.start(pinningThreshold, System.err);
+    }
+    
+    /**
+     * Start monitoring a run with fresh progress counters, reporting progress
+     * and diagnosing pinning as requested by command line options. The
+     * returned monitor has to be closed when the run finished.
+     * 
+     * @param taskUnit name of the tasks being counted
+     * @param itemUnit name of the items produced by the tasks
+     * @return a started run monitor
+     */
+    protected RunMonitor startMonitoring(String taskUnit, String itemUnit) {
+        var progress = new ProgressTracker();
+        var pinning = startPinningDiagnostics();
+        return new RunMonitor(progress, pinning, startProgressReporter(progress, taskUnit, itemUnit));
+    }
+    
+    /**
+     * Open the run report as requested by command line options. If no report
+     * was requested, a report discarding everything is returned.
+     * 
+     * @return the run report to be closed when the run finished
+     * @throws IOException if the report file cannot be created
+     */
+    protected IRunReport openRunReport() throws IOException {
+        return openRunReport(null);
+    }
+    
+    /**
+     * Open the run report of a cluster, see {@link #clusterFile}.
+     * 
+     * @param cluster name of the cluster profile
+     * @return the run report to be closed when the run finished
+     * @throws IOException if the report file cannot be created
+     */
+    protected IRunReport openRunReport(String cluster) throws IOException {
+        if (reportFile == null)
+            return IRunReport.NONE;
+        return AbstractRunReport.open(clusterFile(reportFile, cluster), reportFormat);
+    }
+    
+    /**
+     * Task run against a cluster.
+     */
+    @FunctionalInterface
+    protected interface ClusterTask {
+        /**
+         * @param cluster name of the cluster profile, null for the cluster
+         * given by command line options
+         * @throws Exception if the run failed
+         */
+        void run(String cluster) throws Exception;
+    }
 }
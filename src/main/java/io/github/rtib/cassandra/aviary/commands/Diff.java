@@ -0,0 +1,393 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.commands;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import static com.datastax.oss.driver.api.querybuilder.QueryBuilder.bindMarker;
+import com.datastax.oss.driver.api.querybuilder.select.Select;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import io.github.rtib.cassandra.aviary.model.IOrigin;
+import io.github.rtib.cassandra.aviary.report.IRunReport;
+import io.github.rtib.cassandra.aviary.report.IRunReport.CanaryStatus;
+import io.github.rtib.cassandra.aviary.storage.AviaryReader;
+import io.github.rtib.cassandra.aviary.storage.AviaryWriter;
+import io.github.rtib.cassandra.aviary.storage.ICanaryWriter;
+import io.github.rtib.cassandra.aviary.storage.OriginArray;
+import io.github.rtib.cassandra.aviary.utils.AsyncPaging;
+import io.github.rtib.cassandra.aviary.utils.CanaryValues;
+import io.github.rtib.cassandra.aviary.utils.CassandraMetadataHelper;
+import io.github.rtib.cassandra.aviary.utils.ExecutionProfiles;
+import io.github.rtib.cassandra.aviary.utils.ProgressTracker;
+import io.github.rtib.cassandra.aviary.utils.StatementCache;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+
+/**
+ *
+ * @author repasi
+ */
+@Command(
+        name = "diff",
+        description = """
+                      Read the canaries of an Aviary file from a source and a
+                      target cluster and compare their rows column by column.
+                      """
+)
+public class Diff extends AbstractConnectCommand {
+
+    private static final Logger LOG = Logger.getLogger(Diff.class.getName());
+
+    /**
+     * Outcome of comparing a canary.
+     */
+    public enum Outcome {
+        /** The rows are equal on both sides. */
+        EQUAL,
+        /** The rows differ in some columns. */
+        DIFFERENT,
+        /** The row exists on the target only. */
+        MISSING_SOURCE,
+        /** The row exists on the source only. */
+        MISSING_TARGET,
+        /** The row exists on neither side. */
+        MISSING_BOTH,
+        /** Reading the row failed. */
+        ERROR;
+
+        private String label() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    @Option(
+            names = "--source",
+            description = """
+                          Cluster profile of the source, see --cluster
+                          (default: the cluster given by the connection options).
+                          """
+    )
+    private String source;
+
+    @Option(
+            names = "--target",
+            required = true,
+            description = "Cluster profile of the target, see --cluster."
+    )
+    private String target;
+
+    @Mixin
+    private OriginFilterOptions filterOptions;
+
+    @Option(
+            names = {"-i", "--input"},
+            description = "Input file storing the canaries to be compared."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private File inFile = new File("aviary.json");
+
+    @Option(
+            names = {"-o", "--output"},
+            description = "File to write the canaries not equal on both sides to."
+    )
+    private File outFile;
+
+    @Option(
+            names = "--source-max-in-flight",
+            description = "Maximum number of queries in flight to the source (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int sourceMaxInFlight = 128;
+
+    @Option(
+            names = "--target-max-in-flight",
+            description = "Maximum number of queries in flight to the target (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int targetMaxInFlight = 128;
+
+    @Option(
+            names = "--samples",
+            description = "Number of differing canaries printed per table (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int samples = 10;
+
+    @Override
+    protected int execute() {
+        if (Objects.equals(source, target)) {
+            LOG.log(Level.SEVERE, "Source and target have to be different clusters.");
+            return -1;
+        }
+        try (var report = openRunReport();
+                var monitor = startMonitoring("canaries", "equal");
+                var writer = outFile == null ? null : new AviaryWriter(outFile)) {
+            Side sourceSide = new Side(getCqlSession(source), sourceMaxInFlight);
+            Side targetSide = new Side(getCqlSession(target), targetMaxInFlight);
+            diff(sourceSide, targetSide, filterOptions.toFilterSet(), monitor.progress(), report, writer);
+        } catch (IOException ex) {
+            LOG.log(Level.SEVERE, "Failed to initialize AviaryReader, AviaryWriter or run report.", ex);
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * Compare the canaries read from the input. Canaries are compared
+     * concurrently, both sides are queried in parallel. The number of
+     * canaries pending is bounded, so the input is streamed.
+     */
+    private void diff(Side sourceSide, Side targetSide, Predicate<IOrigin> filter,
+            ProgressTracker progress, IRunReport report, ICanaryWriter writer) throws IOException {
+        long start = System.nanoTime();
+        report.begin("diff", sourceSide.session.getMetadata());
+        int window = 2 * Math.max(1, Math.max(sourceMaxInFlight, targetMaxInFlight));
+        OriginArray<Counters> results = new OriginArray<>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletionService<Compared> tasks = new ExecutorCompletionService<>(executor);
+            int pending = 0;
+            for (ICanary canary : new AviaryReader(inFile)) {
+                if (canary == null || !filter.test(canary.getOrigin()))
+                    continue;
+                progress.addTotal(1);
+                tasks.submit(() -> compare(canary, sourceSide, targetSide, progress));
+                pending++;
+                for (Future<Compared> f; (f = tasks.poll()) != null; pending--)
+                    collect(f, results, report, writer);
+                for (; pending >= window; pending--)
+                    collect(tasks.take(), results, report, writer);
+            }
+            for (; pending > 0; pending--)
+                collect(tasks.take(), results, report, writer);
+        } catch (InterruptedException ex) {
+            LOG.log(Level.SEVERE, "Interrupted while waiting for comparisons.", ex);
+            Thread.currentThread().interrupt();
+        }
+
+        results.forEach((origin, counters) -> report.originSummary(origin, counters.toMap()));
+        report.end(System.nanoTime() - start);
+        results.forEach((origin, counters) -> {
+            System.out.println(String.format("%s: %s", origin, counters));
+            counters.samples.forEach(sample -> System.out.println("  " + sample));
+        });
+    }
+
+    /**
+     * Account the result of a completed comparison. Canaries not equal on
+     * both sides are reported individually and written to the output.
+     */
+    private void collect(Future<Compared> f, OriginArray<Counters> results, IRunReport report, ICanaryWriter writer) {
+        try {
+            Compared compared = f.get();
+            ICanary canary = compared.canary();
+            Counters counters = results.computeIfAbsent(canary.getOrigin(), o -> new Counters());
+            counters.add(compared);
+            if (compared.outcome() != Outcome.EQUAL) {
+                String detail = compared.detail();
+                report.canaryResult(canary, switch (compared.outcome()) {
+                    case DIFFERENT -> CanaryStatus.CHANGED;
+                    case ERROR -> CanaryStatus.ERROR;
+                    default -> CanaryStatus.MISSING;
+                }, compared.nanos(), detail);
+                if (counters.samples.size() < samples)
+                    counters.samples.add(canary.getIdentifier() + " " + detail);
+                if (writer != null)
+                    writer.write(canary);
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            LOG.log(Level.SEVERE, "Failed to process results of: " + f, ex);
+        }
+    }
+
+    /**
+     * Read a canary from both sides and compare the rows column by column.
+     */
+    private Compared compare(ICanary canary, Side sourceSide, Side targetSide, ProgressTracker progress) {
+        progress.started();
+        long start = System.nanoTime();
+        try {
+            CompletableFuture<Row> sourceRow = sourceSide.read(canary);
+            CompletableFuture<Row> targetRow = targetSide.read(canary);
+            Row s = AsyncPaging.await(sourceRow);
+            Row t = AsyncPaging.await(targetRow);
+            Compared compared;
+            if (s == null || t == null) {
+                Outcome outcome = s != null ? Outcome.MISSING_TARGET
+                        : t != null ? Outcome.MISSING_SOURCE : Outcome.MISSING_BOTH;
+                compared = new Compared(canary, outcome, java.util.List.of(), System.nanoTime() - start, null);
+            } else {
+                var columns = compareColumns(s, t);
+                compared = new Compared(canary, columns.isEmpty() ? Outcome.EQUAL : Outcome.DIFFERENT,
+                        columns, System.nanoTime() - start, null);
+            }
+            progress.finished(compared.outcome() == Outcome.EQUAL ? 1 : 0);
+            return compared;
+        } catch (RuntimeException ex) {
+            LOG.log(Level.SEVERE, "Failed to compare " + canary, ex);
+            progress.failed();
+            return new Compared(canary, Outcome.ERROR, java.util.List.of(), System.nanoTime() - start, ex);
+        }
+    }
+
+    /**
+     * Compare the columns of two rows by name, as the columns of both sides
+     * are in the order of their own schema. Columns present on one side only
+     * are marked as such.
+     * @return the columns differing
+     */
+    private static java.util.List<String> compareColumns(Row s, Row t) {
+        ColumnDefinitions sourceColumns = s.getColumnDefinitions();
+        ColumnDefinitions targetColumns = t.getColumnDefinitions();
+        var columns = new ArrayList<String>();
+        for (int i = 0; i < sourceColumns.size(); i++) {
+            CqlIdentifier name = sourceColumns.get(i).getName();
+            int j = targetColumns.firstIndexOf(name);
+            if (j < 0)
+                columns.add(name.asCql(true) + " (source only)");
+            else if (!Objects.equals(s.getBytesUnsafe(i), t.getBytesUnsafe(j)))
+                columns.add(name.asCql(true));
+        }
+        for (int j = 0; j < targetColumns.size(); j++) {
+            CqlIdentifier name = targetColumns.get(j).getName();
+            if (!sourceColumns.contains(name))
+                columns.add(name.asCql(true) + " (target only)");
+        }
+        return columns;
+    }
+
+    /**
+     * One side of the comparison, with its own statements and its own bound
+     * of queries in flight. All columns of the canary row are queried,
+     * primary key columns first, regular columns ordered by name, as defined
+     * by the schema of the side.
+     */
+    private static final class Side extends StatementCache<IOrigin> {
+        private final CqlSession session;
+        private final CassandraMetadataHelper helper;
+        private final CanaryValues values;
+        private final Semaphore permits;
+
+        private Side(CqlSession session, int maxInFlight) {
+            this.session = session;
+            this.helper = new CassandraMetadataHelper(session);
+            this.values = new CanaryValues(session);
+            this.permits = new Semaphore(Math.max(1, maxInFlight), true);
+        }
+
+        /**
+         * Start reading the row of a canary, waiting for a permit first.
+         */
+        private CompletableFuture<Row> read(ICanary canary) {
+            var stmt = values.bind(getStatement(canary.getOrigin()), canary)
+                    .setIdempotent(true);
+            permits.acquireUninterruptibly();
+            return session.executeAsync(stmt)
+                    .thenApply(AsyncResultSet::one)
+                    .whenComplete((row, ex) -> permits.release())
+                    .toCompletableFuture();
+        }
+
+        @Override
+        public PreparedStatement prepareStatementFor(IOrigin key) {
+            Select query = QueryBuilder
+                    .selectFrom(key.getKeyspace(), key.getTable())
+                    .columns(helper.getPrimaryKey(key))
+                    .columnsIds(helper.getRegularColumns(key));
+            for (var pkField : helper.getPrimaryKey(key))
+                query = query
+                        .whereColumn(pkField)
+                        .isEqualTo(bindMarker());
+            LOG.log(Level.FINE, "Preparing for {0} statement {1}", new Object[]{key, query});
+            return session.prepare(ExecutionProfiles.apply(session, query.build(), ExecutionProfiles.POINT_READ));
+        }
+    }
+
+    /**
+     * Count the outcomes of the comparisons of an origin, the differing
+     * columns and keep samples of canaries not equal on both sides.
+     */
+    private static final class Counters {
+        private final Map<Outcome, Integer> outcomes = new EnumMap<>(Outcome.class);
+        private final Map<String, Integer> columns = new LinkedHashMap<>();
+        private final java.util.List<String> samples = new ArrayList<>();
+        private int compared;
+
+        private void add(Compared result) {
+            compared++;
+            outcomes.merge(result.outcome(), 1, Integer::sum);
+            for (String column : result.columns())
+                columns.merge(column, 1, Integer::sum);
+        }
+
+        private Map<String, Integer> toMap() {
+            Map<String, Integer> map = new LinkedHashMap<>();
+            map.put("compared", compared);
+            for (Outcome outcome : Outcome.values())
+                map.put(outcome.label(), outcomes.getOrDefault(outcome, 0));
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            String counts = toMap().entrySet().stream()
+                    .map(e -> e.getKey() + "=" + e.getValue())
+                    .collect(Collectors.joining(", "));
+            if (columns.isEmpty())
+                return counts;
+            return counts + " " + columns.entrySet().stream()
+                    .map(e -> e.getKey() + "=" + e.getValue())
+                    .collect(Collectors.joining(", ", "(columns: ", ")"));
+        }
+    }
+
+    /**
+     * Represents the result of comparing a canary.
+     */
+    private record Compared(ICanary canary, Outcome outcome, java.util.List<String> columns, long nanos, Throwable error) {
+
+        private String detail() {
+            if (error != null)
+                return error.toString();
+            if (outcome == Outcome.DIFFERENT)
+                return "different: " + String.join(", ", columns);
+            return outcome.label();
+        }
+    };
+}
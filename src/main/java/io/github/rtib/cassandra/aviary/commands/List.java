@@ -15,12 +15,33 @@
  */
 package io.github.rtib.cassandra.aviary.commands;
 
+import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.metadata.token.TokenRange;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import io.github.rtib.cassandra.aviary.model.IOrigin;
 import io.github.rtib.cassandra.aviary.storage.AviaryReader;
+import io.github.rtib.cassandra.aviary.storage.AviarySorter;
+import io.github.rtib.cassandra.aviary.storage.CanaryFormat;
+import io.github.rtib.cassandra.aviary.utils.CanaryStatements;
+import io.github.rtib.cassandra.aviary.utils.TokenCalculator;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
 
 /**
@@ -34,7 +55,10 @@ import picocli.CommandLine.Option;
                       standard output.
                       """
 )
-public class List extends AbstractCommand {
+public class List extends AbstractConnectCommand {
+
+    private static final Logger LOG = Logger.getLogger(List.class.getName());
+    private static final int BUFFER_SIZE = 1 << 16;
 
     @Option(
             names = {"-i", "--input"},
@@ -43,15 +67,152 @@ public class List extends AbstractCommand {
     @SuppressWarnings("FieldMayBeFinal")
     private File inFile = new File("aviary.json");
     
+    @Option(
+            names = {"-o", "--output"},
+            description = "Output file to write the listing to (default: standard output)."
+    )
+    private File outFile;
+    
+    @Mixin
+    private OriginFilterOptions filterOptions;
+    
+    @Option(
+            names = "--token-range",
+            paramLabel = "START:END",
+            description = """
+                          List only canaries having a token in the range
+                          (START, END]. May be repeated, canaries in any of the
+                          ranges are listed. Connects the cluster to calculate
+                          the tokens of the canaries.
+                          """
+    )
+    private String[] tokenRanges;
+    
+    @Option(
+            names = "--format",
+            description = """
+                          Output format of the canaries.
+                          Valid values: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).
+                          CQL connects the cluster to format the primary key
+                          values by the types of their columns.
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private CanaryFormat format = CanaryFormat.TEXT;
+    
+    @Option(
+            names = "--count",
+            description = "Print the number of canaries instead of listing them."
+    )
+    private boolean count;
+    
+    @Option(
+            names = "--group-by-origin",
+            description = """
+                          List canaries grouped by origin, or count them by
+                          origin together with --count.
+                          """
+    )
+    private boolean groupByOrigin;
+    
+    @Option(
+            names = "--max-in-memory",
+            description = """
+                          Number of canaries grouped in memory, more canaries
+                          are spilled to temporary files (default: ${DEFAULT-VALUE}).
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int maxInMemory = 1_000_000;
 
     @Override
-    protected void execute() {
-        try {
-            AviaryReader.getReader(inFile).forEach(System.out::println);
-        } catch (IOException ex) {
-            Logger.getLogger(List.class.getName()).log(Level.SEVERE, null, ex);
+    protected int execute() {
+        Predicate<ICanary> filter = canaryFilter();
+        Function<ICanary, String> statements = format == CanaryFormat.CQL ?
+                new CanaryStatements(getCqlSession())::select : null;
+        try (Writer out = openOutput()) {
+            if (count) {
+                Map<IOrigin, Long> counts = new TreeMap<>((a, b) -> a.toString().compareTo(b.toString()));
+                long total = 0;
+                for (ICanary canary : AviaryReader.getReader(inFile))
+                    if (canary != null && filter.test(canary)) {
+                        total++;
+                        if (groupByOrigin)
+                            counts.merge(canary.getOrigin(), 1L, Long::sum);
+                    }
+                for (var entry : counts.entrySet())
+                    out.append(entry.getKey().toString()).append(": ").append(entry.getValue().toString()).append('\n');
+                if (!groupByOrigin)
+                    out.append(Long.toString(total)).append('\n');
+            } else {
+                if (format.header() != null)
+                    out.append(format.header()).append('\n');
+                if (groupByOrigin)
+                    listGrouped(filter, statements, out);
+                else
+                    for (ICanary canary : AviaryReader.getReader(inFile))
+                        if (canary != null && filter.test(canary))
+                            out.append(format.format(canary, statements)).append('\n');
+            }
+        } catch (IOException | UncheckedIOException | IllegalArgumentException ex) {
+            LOG.log(Level.SEVERE, "Failed to list aviary file.", ex);
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * List canaries grouped by origin, keeping the order of the aviary file
+     * within each origin. The grouping is a stable external sort by origin,
+     * so it works for files larger than memory.
+     */
+    private void listGrouped(Predicate<ICanary> filter, Function<ICanary, String> statements, Writer out) throws IOException {
+        try (var sorter = new AviarySorter(canary -> canary.getOrigin().toString(), maxInMemory, null, false)) {
+            for (ICanary canary : AviaryReader.getReader(inFile))
+                if (canary != null && filter.test(canary))
+                    sorter.write(canary);
+            sorter.merge((key, canary) -> out.append(format.format(canary, statements)).append('\n'));
         }
-            
+    }
+
+    /**
+     * Combine the origin filters and token ranges given into a single
+     * predicate of canaries.
+     */
+    private Predicate<ICanary> canaryFilter() {
+        Predicate<IOrigin> origins = filterOptions.toFilterSet();
+        if (tokenRanges == null)
+            return canary -> origins.test(canary.getOrigin());
+        TokenCalculator calculator = new TokenCalculator(getCqlSession());
+        TokenMap tokenMap = calculator.getTokenMap();
+        java.util.List<TokenRange> ranges = new ArrayList<>();
+        for (String range : tokenRanges) {
+            String[] bounds = range.split(":", 2);
+            if (bounds.length != 2)
+                throw new IllegalArgumentException("Token range is not of the form START:END: " + range);
+            ranges.add(tokenMap.newTokenRange(tokenMap.parse(bounds[0]), tokenMap.parse(bounds[1])));
+        }
+        return canary -> {
+            if (!origins.test(canary.getOrigin()))
+                return false;
+            try {
+                var token = calculator.tokenOf(canary);
+                return ranges.stream().anyMatch(r -> r.contains(token));
+            } catch (RuntimeException ex) {
+                LOG.log(Level.WARNING, "Failed to calculate the token of " + canary, ex);
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Open a large buffered writer, so listing is bound by I/O rather than
+     * by flushing each line.
+     */
+    private Writer openOutput() throws IOException {
+        var stream = outFile == null ?
+                new FileOutputStream(FileDescriptor.out) : new FileOutputStream(outFile);
+        return new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
     }
     
 }
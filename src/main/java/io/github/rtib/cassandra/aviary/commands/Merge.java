@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.commands;
+
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import io.github.rtib.cassandra.aviary.storage.AviaryReader;
+import io.github.rtib.cassandra.aviary.storage.AviarySorter;
+import io.github.rtib.cassandra.aviary.storage.AviaryWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+/**
+ *
+ * @author repasi
+ */
+@Command(
+        name = "merge",
+        description = """
+                      Merge Aviary files into a single one, dropping duplicate
+                      canaries of the same origin and primary key. The output
+                      is grouped by origin.
+                      """
+)
+public class Merge extends AbstractCommand {
+
+    private static final Logger LOG = Logger.getLogger(Merge.class.getName());
+
+    @Parameters(
+            arity = "1..*",
+            paramLabel = "FILE",
+            description = "Aviary files to merge, the first of duplicate canaries is kept."
+    )
+    private File[] inFiles;
+    
+    @Option(
+            names = {"-o", "--output"},
+            description = "Output file to store the merged canaries."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private File outFile = new File("aviary.json");
+    
+    @Option(
+            names = "--max-in-memory",
+            description = """
+                          Number of canaries sorted in memory, more canaries
+                          are spilled to temporary files (default: ${DEFAULT-VALUE}).
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int maxInMemory = 1_000_000;
+    
+    @Option(
+            names = "--tmp-dir",
+            description = "Directory of temporary spill files (default: system temporary directory)."
+    )
+    private File tmpDir;
+
+    @Override
+    protected int execute() {
+        try (var sorter = new AviarySorter(AviarySorter::canonicalKey, maxInMemory, tmpDir)) {
+            for (File inFile : inFiles)
+                for (ICanary canary : AviaryReader.getReader(inFile))
+                    if (canary != null)
+                        sorter.write(canary);
+            long merged;
+            try (var writer = new AviaryWriter(outFile)) {
+                sorter.merge((key, canary) -> writer.write(canary));
+                merged = sorter.written() - sorter.duplicates();
+            }
+            System.out.println(String.format("%s: %d canaries from %d files, %d duplicates dropped",
+                    outFile, merged, inFiles.length, sorter.duplicates()));
+        } catch (IOException | UncheckedIOException ex) {
+            LOG.log(Level.SEVERE, "Failed to merge aviary files.", ex);
+            return -1;
+        }
+        return 0;
+    }
+    
+}
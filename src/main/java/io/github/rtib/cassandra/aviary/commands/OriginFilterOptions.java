@@ -0,0 +1,78 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.commands;
+
+import io.github.rtib.cassandra.aviary.utils.OriginFilter;
+import io.github.rtib.cassandra.aviary.utils.OriginFilterConverter;
+import io.github.rtib.cassandra.aviary.utils.OriginFilterSet;
+import java.util.List;
+import picocli.CommandLine.Option;
+
+/**
+ * Origin filter options shared by the commands processing canaries by origin.
+ * A filter is denoted as "&lt;keyspace filter&gt;:&lt;table filter&gt;" where
+ * both keyspace and table filters are regex, compiled case insensitive.
+ * 
+ * @author repasi
+ */
+public class OriginFilterOptions {
+
+    @Option(
+            names = {"-f", "--filter"},
+            description = """
+                          Pattern of origins to be processed, every filter given
+                          has to match. Note, that a filter is denoted as
+                          "<keyspace filter>:<table filter>" where both keyspace
+                          and table filters are regex, delimited by a colon (:).
+                          Filter regex are compiled case insensitive.
+                          Example: -f "test:.*"
+                          """,
+            converter = OriginFilterConverter.class
+    )
+    private OriginFilter[] filters;
+    
+    @Option(
+            names = "--include",
+            description = """
+                          Pattern of origins to be processed, any of the include
+                          patterns given has to match. Example: --include "test:.*"
+                          """,
+            converter = OriginFilterConverter.class
+    )
+    private OriginFilter[] includes;
+    
+    @Option(
+            names = "--exclude",
+            description = """
+                          Pattern of origins not to be processed, even if matching
+                          the filters and includes. Example: --exclude "test:tmp_.*"
+                          """,
+            converter = OriginFilterConverter.class
+    )
+    private OriginFilter[] excludes;
+
+    /**
+     * Compile the filter options given into a filter set.
+     * @return the filter set, passing every origin if no filter was given
+     */
+    public OriginFilterSet toFilterSet() {
+        return new OriginFilterSet(asList(filters), asList(includes), asList(excludes));
+    }
+
+    private static List<OriginFilter> asList(OriginFilter[] filters) {
+        return filters == null ? List.of() : List.of(filters);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.commands;
+
+import com.datastax.oss.driver.api.core.metadata.Metadata;
+import io.github.rtib.cassandra.aviary.utils.RangeOwnership;
+import java.net.InetAddress;
+import java.util.List;
+import picocli.CommandLine.Option;
+
+/**
+ * Range ownership options shared by the commands selecting and verifying
+ * canaries, restricting a run to the token ranges owned by some nodes.
+ * 
+ * @author repasi
+ */
+public class RangeOwnershipOptions {
+
+    @Option(
+            names = "--ranges",
+            description = """
+                          Token ranges to be processed: ALL ranges, the ranges
+                          having a replica in the local datacenter (LOCAL), or
+                          the ranges having their primary replica in the local
+                          datacenter (PRIMARY). Runners of each datacenter
+                          restricted to PRIMARY ranges share the work of a
+                          cluster (default: ${DEFAULT-VALUE}).
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private RangeOwnership.Scope scope = RangeOwnership.Scope.ALL;
+    
+    @Option(
+            names = "--primary-of",
+            description = """
+                          Address of a node, only the ranges having their
+                          primary replica on one of the given nodes are
+                          processed. May be repeated, overrides --ranges.
+                          """
+    )
+    private InetAddress[] primaryOf;
+
+    /**
+     * Create the range ownership requested by the options given.
+     * @param metadata metadata of the connected cluster
+     * @param localDc the local datacenter of the connection, may be null
+     * @return the range ownership, owning every range if no option was given
+     * @throws IllegalArgumentException if the datacenter or a node requested is not known
+     */
+    public RangeOwnership toOwnership(Metadata metadata, String localDc) {
+        if (primaryOf != null && primaryOf.length > 0)
+            return RangeOwnership.primaryOf(metadata, List.of(primaryOf));
+        return RangeOwnership.of(metadata, scope, localDc);
+    }
+}
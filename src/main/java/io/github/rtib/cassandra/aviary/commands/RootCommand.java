@@ -17,7 +17,6 @@ package io.github.rtib.cassandra.aviary.commands;
 
 import java.io.IOException;
 import static java.lang.System.out;
-import java.lang.invoke.MethodHandles;
 import java.util.Properties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,11 +41,14 @@ import picocli.CommandLine.Spec;
             CommandLine.HelpCommand.class,
             Select.class,
             List.class,
-            Verify.class
+            Verify.class,
+            Merge.class,
+            Split.class,
+            Diff.class,
+            Stats.class
         }
 )
 public class RootCommand extends AbstractCommand {
-    private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
     @Spec
     CommandSpec spec;
@@ -62,17 +64,27 @@ public class RootCommand extends AbstractCommand {
                 .getLogger(Logger.ROOT_LOGGER_NAME);
         if (verbose.length > 1) {
             logger.setLevel(ch.qos.logback.classic.Level.DEBUG);
-            LOGGER.debug("Debug logging enabled.");
+            Log.LOGGER.debug("Debug logging enabled.");
         } else if (verbose.length > 0) {
             logger.setLevel(ch.qos.logback.classic.Level.INFO);
-            LOGGER.info("Verbose logging enabled.");
+            Log.LOGGER.info("Verbose logging enabled.");
         }
     }
     
     @Override
-    protected void execute() {
-        LOGGER.debug("Print usage.");
+    protected int execute() {
+        Log.LOGGER.debug("Print usage.");
         spec.commandLine().usage(out);
+        return 0;
+    }
+    
+    /**
+     * Holder of the logger, logback is initialized on first use only, so
+     * printing the usage or running commands not using the driver does not
+     * pay for it.
+     */
+    private static final class Log {
+        private static final Logger LOGGER = LoggerFactory.getLogger(RootCommand.class);
     }
     
     /**
@@ -82,11 +94,11 @@ public class RootCommand extends AbstractCommand {
         @Override
         public String[] getVersion() throws Exception {
             Properties properties = new Properties();
-            LOGGER.info("Loading properties.");
+            Log.LOGGER.info("Loading properties.");
             try {
                 properties.load(this.getClass().getClassLoader().getResourceAsStream("project.properties"));
             } catch (IOException ex) {
-                LOGGER.error("Failed to load properties", ex);
+                Log.LOGGER.error("Failed to load properties", ex);
             }
             return new String[] {
                 properties.getProperty("application-name") + " version " + properties.getProperty("version"),
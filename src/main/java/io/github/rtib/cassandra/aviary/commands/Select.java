@@ -18,13 +18,17 @@ package io.github.rtib.cassandra.aviary.commands;
 import io.github.rtib.cassandra.aviary.selector.AbstractSelector;
 import io.github.rtib.cassandra.aviary.selector.ICanarySelector;
 import io.github.rtib.cassandra.aviary.storage.AviaryWriter;
-import io.github.rtib.cassandra.aviary.utils.OriginFilter;
-import io.github.rtib.cassandra.aviary.utils.OriginFilterConverter;
+import io.github.rtib.cassandra.aviary.utils.DurationConverter;
+import io.github.rtib.cassandra.aviary.utils.ExecutionProfiles;
+import io.github.rtib.cassandra.aviary.utils.RetryPolicy;
+import io.github.rtib.cassandra.aviary.utils.SchedulingPolicy;
+import io.github.rtib.cassandra.aviary.utils.WorkerPartition;
+import io.github.rtib.cassandra.aviary.utils.WorkerPartitionConverter;
 import java.io.File;
-import java.io.IOException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.time.Duration;
+import java.util.Map;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
 
 /**
@@ -40,8 +44,6 @@ import picocli.CommandLine.Option;
 )
 public class Select extends AbstractConnectCommand {
 
-    private static final Logger LOG = Logger.getLogger(Select.class.getName());
-    
     @Option(
             names = "--selector",
             description = "Class name of the Selector to use."
@@ -50,17 +52,19 @@ public class Select extends AbstractConnectCommand {
     private String selectorClassName = "io.github.rtib.cassandra.aviary.selector.RangeSelector";
     
     @Option(
-            names = {"-f", "--filter"},
+            names = {"-O", "--selector-option"},
             description = """
-                          Pattern of origins to exclude from processing. Note, that
-                          a filter is denoted as "<keyspace filter>:<table filter>"
-                          where both keyspace and table filters are regex, delimited
-                          by a colon (:). Filter regex are compiled case insensitive.
-                          Example: -f "test:.*"
-                          """,
-            converter = OriginFilterConverter.class
+                          Selector specific option as key=value pair. May be
+                          given multiple times.
+                          """
     )
-    private OriginFilter[] filters;
+    private Map<String, String> selectorOptions;
+    
+    @Mixin
+    private OriginFilterOptions filterOptions;
+    
+    @Mixin
+    private RangeOwnershipOptions rangeOptions;
     
     @Option(
             names = {"-o", "--output"},
@@ -69,22 +73,156 @@ public class Select extends AbstractConnectCommand {
     @SuppressWarnings("FieldMayBeFinal")
     private File outFile = new File("aviary.json");
     
+    @Option(
+            names = "--limit",
+            description = "Number of canaries to select from each token range (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int limit = 1;
+    
+    @Option(
+            names = "--page-size",
+            description = """
+                          Number of rows fetched per page of a range query. Rows
+                          are processed page by page, so memory usage does not
+                          depend on the limit. Zero uses the page size of the
+                          execution profile.
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int pageSize = 0;
+    
+    @Option(
+            names = "--execution-profile",
+            description = """
+                          Driver execution profile of the range queries
+                          (default: ${DEFAULT-VALUE}). The built-in profile
+                          can be changed in the application.conf below
+                          datastax-java-driver.profiles.
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private String executionProfile = ExecutionProfiles.BULK_SCAN;
+    
+    @Option(
+            names = "--retries",
+            description = """
+                          Number of times a range query failed by timeout or
+                          unavailability is repeated (default: ${DEFAULT-VALUE}).
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int retries = 2;
+    
+    @Option(
+            names = "--retry-backoff",
+            description = """
+                          Wait time before the first retry of a range query,
+                          doubled on every further retry (default: 500ms).
+                          """,
+            converter = DurationConverter.class
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private Duration retryBackoff = Duration.ofMillis(500);
+    
+    @Option(
+            names = "--max-retry-backoff",
+            description = "Upper limit of the wait time between retries (default: 10s).",
+            converter = DurationConverter.class
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private Duration maxRetryBackoff = Duration.ofSeconds(10);
+    
+    @Option(
+            names = "--split-on-timeout",
+            description = """
+                          Number of sub-ranges a range still timing out after
+                          all retries is split into. Less than 2 disables
+                          splitting (default: ${DEFAULT-VALUE}).
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int splitOnTimeout = 8;
+    
+    @Option(
+            names = "--max-in-flight-per-node",
+            description = """
+                          Number of range queries running concurrently against
+                          each node. Zero or less disables the bound
+                          (default: ${DEFAULT-VALUE}).
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int maxInFlightPerNode = 8;
+    
+    @Option(
+            names = "--table-priority",
+            description = """
+                          Order of tables taking turns in querying the ranges of
+                          a node: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private SchedulingPolicy.Priority tablePriority = SchedulingPolicy.Priority.SIZE;
+    
+    @Option(
+            names = "--worker",
+            description = """
+                          Share of the work taken by this process, given as i/N
+                          for the i-th of N workers. Every worker selects from
+                          its share of the token ranges of each origin, no
+                          coordination is needed. Each worker writes its own
+                          shard of the output, e.g. aviary-1of4.json, merge the
+                          shards when all workers finished.
+                          """,
+            converter = WorkerPartitionConverter.class
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private WorkerPartition worker = WorkerPartition.SINGLE;
+    
+    @Option(
+            names = "--seed",
+            description = """
+                          Seed of selectors choosing canaries randomly. The same
+                          seed reproduces the same canaries from unchanged data
+                          (default: random).
+                          """
+    )
+    private Long seed;
+    
+    @Override
+    protected WorkerPartition getWorker() {
+        return worker;
+    }
+    
     @Override
-    protected void execute() {
-        try (var writer = new AviaryWriter(outFile)) {
-            ICanarySelector selector = AbstractSelector.builder()
-                    .forName(selectorClassName)
-                    .withCqlSession(getCqlSession())
-                    .withOriginFilters(filters)
-                    .withCanaryWriter(writer)
-                    .build();
-            selector.selectCanaries();
-        } catch (IOException ex) {
-            LOG.log(Level.SEVERE, "Failed to initialize AviaryWriter.", ex);
-            System.exit(-1);
-        } catch (AbstractSelector.SelectorBuilderException ex) {
-            LOG.log(Level.SEVERE, "Failed to initialize canary selector.", ex);
-            System.exit(-1);
+    protected int execute() {
+        try (var monitor = startMonitoring("ranges", "canaries")) {
+            return forEachCluster(cluster -> {
+                try (var writer = new AviaryWriter(clusterFile(outFile, cluster));
+                        var report = openRunReport(cluster)) {
+                    ICanarySelector selector = AbstractSelector.builder()
+                            .forName(selectorClassName)
+                            .withCqlSession(getCqlSession(cluster))
+                            .withOriginFilter(filterOptions.toFilterSet())
+                            .withCanaryWriter(writer)
+                            .withProgressTracker(monitor.progress())
+                            .withRunReport(report)
+                            .withRetryPolicy(new RetryPolicy(retries, retryBackoff, maxRetryBackoff, splitOnTimeout))
+                            .withSchedulingPolicy(new SchedulingPolicy(maxInFlightPerNode, tablePriority))
+                            .withLimit(limit)
+                            .withPageSize(pageSize)
+                            .withExecutionProfile(executionProfile)
+                            .withRangeOwnership(rangeOptions.toOwnership(
+                                    getCqlSession(cluster).getMetadata(), getLocalDatacenter(cluster)))
+                            .withWorkerPartition(worker)
+                            .withOptions(selectorOptions)
+                            .withSeed(seed)
+                            .withOutput(clusterOutput(cluster))
+                            .build();
+                    selector.selectCanaries();
+                }
+            });
         }
     }
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.commands;
+
+import com.datastax.oss.driver.api.core.metadata.token.Token;
+import com.datastax.oss.driver.api.core.metadata.token.TokenRange;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import io.github.rtib.cassandra.aviary.storage.AviaryReader;
+import io.github.rtib.cassandra.aviary.storage.AviarySorter;
+import io.github.rtib.cassandra.aviary.storage.AviaryWriter;
+import io.github.rtib.cassandra.aviary.utils.TokenCalculator;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+/**
+ *
+ * @author repasi
+ */
+@Command(
+        name = "split",
+        description = """
+                      Split an Aviary file into shards by keyspace, by origin or
+                      by token range, dropping duplicate canaries. Splitting by
+                      token range connects the cluster to calculate the tokens
+                      of the canaries.
+                      """
+)
+public class Split extends AbstractConnectCommand {
+
+    private static final Logger LOG = Logger.getLogger(Split.class.getName());
+
+    /**
+     * Criteria of assigning canaries to shards.
+     */
+    public enum Criteria {
+        /** One shard per keyspace. */
+        KEYSPACE,
+        /** One shard per keyspace and table. */
+        ORIGIN,
+        /** A number of shards of consecutive token ranges of the cluster. */
+        TOKEN_RANGE
+    }
+
+    @Option(
+            names = {"-i", "--input"},
+            description = "Input file storing the canaries to split."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private File inFile = new File("aviary.json");
+    
+    @Option(
+            names = "--by",
+            description = """
+                          Criteria of splitting.
+                          Valid values: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private Criteria criteria = Criteria.ORIGIN;
+    
+    @Option(
+            names = "--shards",
+            description = "Number of shards when splitting by token range (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int shards = 4;
+    
+    @Option(
+            names = {"-d", "--output-dir"},
+            description = "Directory to write the shards to (default: current directory)."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private File outDir = new File(".");
+    
+    @Option(
+            names = "--prefix",
+            description = "Prefix of the shard file names, followed by the shard name (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private String prefix = "aviary-";
+    
+    @Option(
+            names = "--max-in-memory",
+            description = """
+                          Number of canaries sorted in memory, more canaries
+                          are spilled to temporary files (default: ${DEFAULT-VALUE}).
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int maxInMemory = 1_000_000;
+    
+    @Option(
+            names = "--tmp-dir",
+            description = "Directory of temporary spill files (default: system temporary directory)."
+    )
+    private File tmpDir;
+
+    @Override
+    protected int execute() {
+        Function<ICanary, String> shardOf = switch (criteria) {
+            case KEYSPACE -> canary -> canary.getOrigin().getKeyspace();
+            case ORIGIN -> canary -> canary.getOrigin().toString();
+            case TOKEN_RANGE -> tokenRangeShards();
+        };
+        // canaries are sorted by shard, so shards are written one after the other
+        Function<ICanary, String> key = canary -> shardOf.apply(canary) + "\u0000" + AviarySorter.canonicalKey(canary);
+        Map<String, Long> written = new LinkedHashMap<>();
+        long skipped = 0;
+        try (var sorter = new AviarySorter(key, maxInMemory, tmpDir)) {
+            for (ICanary canary : AviaryReader.getReader(inFile)) {
+                if (canary == null)
+                    continue;
+                try {
+                    shardOf.apply(canary);
+                } catch (RuntimeException ex) {
+                    LOG.log(Level.WARNING, "Skipping " + canary, ex);
+                    skipped++;
+                    continue;
+                }
+                sorter.write(canary);
+            }
+            var shard = new Object() {
+                String name;
+                AviaryWriter writer;
+            };
+            try {
+                sorter.merge((k, canary) -> {
+                    String name = k.substring(0, k.indexOf('\u0000'));
+                    if (!name.equals(shard.name)) {
+                        if (shard.writer != null)
+                            shard.writer.close();
+                        shard.name = name;
+                        shard.writer = new AviaryWriter(new File(outDir, prefix + name + ".json"));
+                    }
+                    shard.writer.write(canary);
+                    written.merge(name, 1L, Long::sum);
+                });
+            } finally {
+                if (shard.writer != null)
+                    shard.writer.close();
+            }
+        } catch (IOException | UncheckedIOException ex) {
+            LOG.log(Level.SEVERE, "Failed to split aviary file.", ex);
+            return -1;
+        }
+        written.forEach((name, count) -> System.out.println(String.format("%s%s: %d", prefix, name, count)));
+        if (skipped > 0)
+            System.out.println(String.format("skipped: %d", skipped));
+        return 0;
+    }
+
+    /**
+     * Assign canaries to shards of consecutive token ranges of the cluster,
+     * each shard having the same number of ranges. Shard names are zero padded
+     * numbers, so they sort in ring order.
+     */
+    private Function<ICanary, String> tokenRangeShards() {
+        TokenCalculator calculator = new TokenCalculator(getCqlSession());
+        List<TokenRange> ranges = new ArrayList<>(calculator.getTokenMap().getTokenRanges());
+        ranges.sort(Comparator.comparing(TokenRange::getEnd));
+        int count = Math.max(1, Math.min(shards, ranges.size()));
+        TreeMap<Token, String> shardByEnd = new TreeMap<>();
+        for (int i = 0; i < ranges.size(); i++)
+            shardByEnd.put(ranges.get(i).getEnd(), String.format("%05d", (long) i * count / ranges.size()));
+        return canary -> {
+            // tokens beyond the last end belong to the range wrapping around the ring
+            var shard = shardByEnd.ceilingEntry(calculator.tokenOf(canary));
+            return (shard == null ? shardByEnd.firstEntry() : shard).getValue();
+        };
+    }
+    
+}
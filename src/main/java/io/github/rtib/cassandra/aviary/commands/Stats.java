@@ -0,0 +1,255 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.commands;
+
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import io.github.rtib.cassandra.aviary.storage.AviaryReader;
+import io.github.rtib.cassandra.aviary.storage.Origin;
+import io.github.rtib.cassandra.aviary.storage.OriginArray;
+import io.github.rtib.cassandra.aviary.utils.RingSnapshot;
+import io.github.rtib.cassandra.aviary.utils.XxHash64;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+/**
+ *
+ * @author repasi
+ */
+@Command(
+        name = "stats",
+        description = """
+                      Show how the canaries of an Aviary file are distributed
+                      over the token ranges and nodes of a cluster: canaries
+                      per table, histograms of canaries per range, coverage of
+                      the nodes, ranges without canaries and duplicates. Tokens
+                      are calculated from the ring of the connected cluster,
+                      or from a ring stored before.
+                      """
+)
+public class Stats extends AbstractConnectCommand {
+
+    private static final Logger LOG = Logger.getLogger(Stats.class.getName());
+
+    @Option(
+            names = {"-i", "--input"},
+            description = "Input file storing the canaries to analyse."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private File inFile = new File("aviary.json");
+
+    @Option(
+            names = "--ring",
+            description = """
+                          Ring file stored by --save-ring, used instead of
+                          connecting the cluster.
+                          """
+    )
+    private File ringFile;
+
+    @Option(
+            names = "--save-ring",
+            description = """
+                          File to store the ring of the connected cluster to,
+                          i.e. its token ranges, replicas and partition keys.
+                          """
+    )
+    private File saveRingFile;
+
+    @Option(
+            names = "--gaps",
+            description = "Number of the longest gaps listed per table (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int gaps = 3;
+
+    @Override
+    protected int execute() {
+        try {
+            RingSnapshot ring = ringFile != null ? RingSnapshot.read(ringFile) : RingSnapshot.of(getCqlSession());
+            if (saveRingFile != null) {
+                ring.write(saveRingFile);
+                System.out.println("Ring stored to " + saveRingFile);
+            }
+            analyse(ring);
+        } catch (IOException | UncheckedIOException ex) {
+            LOG.log(Level.SEVERE, "Failed to analyse aviary file.", ex);
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * Stream the canaries, counting them per table and range, then print the
+     * statistics of each table and node.
+     */
+    private void analyse(RingSnapshot ring) throws IOException {
+        OriginArray<TableStats> tables = new OriginArray<>();
+        XxHash64 hash = new XxHash64();
+        StringBuilder key = new StringBuilder();
+        long skipped = 0;
+        for (ICanary canary : AviaryReader.getReader(inFile)) {
+            if (canary == null)
+                continue;
+            int range;
+            try {
+                range = ring.rangeOf(ring.tokenOf(canary));
+            } catch (RuntimeException ex) {
+                LOG.log(Level.FINE, "Skipping " + canary, ex);
+                skipped++;
+                continue;
+            }
+            TableStats table = tables.computeIfAbsent(canary.getOrigin(), origin -> new TableStats(ring.ranges()));
+            table.perRange[range]++;
+            table.add(keyHash(hash, key, canary));
+        }
+
+        long[] nodeCanaries = new long[ring.nodes()];
+        long[] nodeRanges = new long[ring.nodes()];
+        long[] nodeCovered = new long[ring.nodes()];
+        tables.forEach((origin, table) -> {
+            print(ring, origin, table);
+            int[][] replicas = ring.replicas(origin.getKeyspace());
+            if (replicas == null)
+                return;
+            for (int r = 0; r < replicas.length; r++)
+                for (int node : replicas[r]) {
+                    nodeRanges[node]++;
+                    nodeCanaries[node] += table.perRange[r];
+                    if (table.perRange[r] > 0)
+                        nodeCovered[node]++;
+                }
+        });
+        for (int n = 0; n < ring.nodes(); n++)
+            System.out.println(String.format("%s %s: %d canaries, %d/%d ranges covered (%.1f%%)",
+                    ring.node(n).endpoint(), ring.node(n).datacenter(), nodeCanaries[n],
+                    nodeCovered[n], nodeRanges[n], nodeRanges[n] == 0 ? 0.0 : 100.0 * nodeCovered[n] / nodeRanges[n]));
+        if (skipped > 0)
+            System.out.println(String.format("skipped: %d", skipped));
+    }
+
+    /**
+     * Hash the primary key of a canary, its fields in order of their names.
+     * Strings are told apart from other values of the same text, as JSON
+     * does, so equal hashes are the duplicates found by merge.
+     */
+    private static long keyHash(XxHash64 hash, StringBuilder key, ICanary canary) {
+        Map<String, Object> identifier = canary.getIdentifier();
+        String[] names = identifier.keySet().toArray(String[]::new);
+        Arrays.sort(names);
+        key.setLength(0);
+        for (String name : names) {
+            Object value = identifier.get(name);
+            key.append(name).append(value instanceof String ? '\u0001' : '\u0002').append(value).append('\u0000');
+        }
+        return hash.reset().update(ByteBuffer.wrap(key.toString().getBytes(StandardCharsets.UTF_8))).digest();
+    }
+
+    private void print(RingSnapshot ring, Origin origin, TableStats table) {
+        int[] perRange = table.perRange;
+        long canaries = 0;
+        int covered = 0;
+        // bucket 0 counts ranges without canaries, bucket b ranges having 2^(b-1) to 2^b-1
+        long[] histogram = new long[Integer.SIZE + 1];
+        for (int count : perRange) {
+            canaries += count;
+            if (count > 0)
+                covered++;
+            histogram[Integer.SIZE - Integer.numberOfLeadingZeros(count)]++;
+        }
+        System.out.println(String.format("%s: %d canaries, %d/%d ranges covered, %d duplicates",
+                origin, canaries, covered, perRange.length, table.duplicates()));
+        StringJoiner buckets = new StringJoiner(", ", "  canaries per range: ", "");
+        for (int b = 0; b < histogram.length; b++) {
+            if (histogram[b] == 0)
+                continue;
+            long low = b == 0 ? 0 : 1L << (b - 1);
+            long high = b == 0 ? 0 : (1L << b) - 1;
+            buckets.add((low == high ? Long.toString(low) : low + "-" + high) + ": " + histogram[b]);
+        }
+        System.out.println(buckets);
+        if (covered == 0 || covered == perRange.length)
+            return;
+        // runs of consecutive ranges without canaries, starting after a covered range
+        // so a run wrapping around the ring is found as one; encoded as length << 32 | start
+        long[] runs = new long[perRange.length - covered];
+        int count = 0;
+        int first = 0;
+        while (perRange[first] == 0)
+            first++;
+        int start = -1;
+        for (int i = 1; i <= perRange.length; i++) {
+            int r = (first + i) % perRange.length;
+            if (perRange[r] == 0) {
+                if (start < 0)
+                    start = r;
+            } else if (start >= 0) {
+                runs[count++] = (long) Math.floorMod(r - start, perRange.length) << 32 | start;
+                start = -1;
+            }
+        }
+        Arrays.sort(runs, 0, count);
+        for (int i = count - 1; i >= Math.max(0, count - gaps); i--) {
+            int length = (int) (runs[i] >>> 32);
+            int from = (int) runs[i];
+            int to = (from + length - 1) % perRange.length;
+            System.out.println(String.format("  gap: %d ranges (%s, %s]",
+                    length, ring.format(ring.start(from)), ring.format(ring.end(to))));
+        }
+    }
+
+    /**
+     * Counters of a table: canaries per range, and the hashes of the primary
+     * keys to find duplicates.
+     */
+    private static final class TableStats {
+        private final int[] perRange;
+        private long[] keys = new long[64];
+        private int size;
+
+        TableStats(int ranges) {
+            this.perRange = new int[ranges];
+        }
+
+        void add(long key) {
+            if (size == keys.length)
+                keys = Arrays.copyOf(keys, size * 2);
+            keys[size++] = key;
+        }
+
+        /**
+         * Count canaries having the same primary key as a canary before, by
+         * sorting the 64 bit hashes of their keys.
+         */
+        long duplicates() {
+            Arrays.sort(keys, 0, size);
+            long duplicates = 0;
+            for (int i = 1; i < size; i++)
+                if (keys[i] == keys[i - 1])
+                    duplicates++;
+            return duplicates;
+        }
+    }
+}
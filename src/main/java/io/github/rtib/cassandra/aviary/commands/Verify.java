@@ -16,15 +16,14 @@
 package io.github.rtib.cassandra.aviary.commands;
 
 import io.github.rtib.cassandra.aviary.storage.AviaryReader;
-import io.github.rtib.cassandra.aviary.utils.OriginFilter;
-import io.github.rtib.cassandra.aviary.utils.OriginFilterConverter;
+import io.github.rtib.cassandra.aviary.utils.ExecutionProfiles;
+import io.github.rtib.cassandra.aviary.utils.WorkerPartition;
+import io.github.rtib.cassandra.aviary.utils.WorkerPartitionConverter;
 import io.github.rtib.cassandra.aviary.verifier.AbstractVerifier;
 import io.github.rtib.cassandra.aviary.verifier.ICanaryVerifier;
 import java.io.File;
-import java.io.IOException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
 
 /**
@@ -40,8 +39,6 @@ import picocli.CommandLine.Option;
 )
 public class Verify extends AbstractConnectCommand {
 
-    private static final Logger LOG = Logger.getLogger(Verify.class.getName());
-
     @Option(
             names = "--verifier",
             description = "Class name of the Verifier to use."
@@ -49,42 +46,83 @@ public class Verify extends AbstractConnectCommand {
     @SuppressWarnings("FieldMayBeFinal")
     private String verifierClassName = "io.github.rtib.cassandra.aviary.verifier.SimpleVerifier";
     
+    @Mixin
+    private OriginFilterOptions filterOptions;
+    
+    @Mixin
+    private RangeOwnershipOptions rangeOptions;
+    
+    @Option(
+            names = {"-i", "--input"},
+            description = "Input file store the canaries to be verify."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private File inFile = new File("aviary.json");
+    
     @Option(
-            names = {"-f", "--filter"},
+            names = "--execution-profile",
             description = """
-                          Pattern of origins to exclude from processing. Note, that
-                          a filter is denoted as "<keyspace filter>:<table filter>"
-                          where both keyspace and table filters are regex, delimited
-                          by a colon (:). Filter regex are compiled case insensitive.
-                          Example: -f "test:.*"
+                          Driver execution profile of the canary queries
+                          (default: ${DEFAULT-VALUE}). The built-in profile
+                          can be changed in the application.conf below
+                          datastax-java-driver.profiles.
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private String executionProfile = ExecutionProfiles.POINT_READ;
+    
+    @Option(
+            names = "--worker",
+            description = """
+                          Share of the work taken by this process, given as i/N
+                          for the i-th of N workers. Every worker reads the whole
+                          input and verifies its share of the canaries, no
+                          coordination is needed. Each worker writes its own
+                          report, e.g. verify-1of4.json.
                           """,
-            converter = OriginFilterConverter.class
+            converter = WorkerPartitionConverter.class
     )
-    private OriginFilter[] filters;
+    @SuppressWarnings("FieldMayBeFinal")
+    private WorkerPartition worker = WorkerPartition.SINGLE;
     
     @Option(
-            names = {"-i", "--input"},
-            description = "Input file store the canaries to be verify."
+            names = "--max-in-flight-per-node",
+            description = """
+                          Maximum number of queries in flight to a single node,
+                          for verifiers querying each replica directly
+                          (default: ${DEFAULT-VALUE}).
+                          """
     )
     @SuppressWarnings("FieldMayBeFinal")
-    private File inFile = new File("aviary.json");
+    private int maxInFlightPerNode = 4;
+    
+    @Override
+    protected WorkerPartition getWorker() {
+        return worker;
+    }
     
     @Override
-    protected void execute() {
-        try {
-            ICanaryVerifier verifier = AbstractVerifier.builder()
-                    .forName(verifierClassName)
-                    .withAviaryReader(new AviaryReader(inFile))
-                    .withCqlSession(getCqlSession())
-                    .withOriginFilters(filters)
-                    .build();
-            verifier.verifyCanaries();
-        } catch (IOException ex) {
-            LOG.log(Level.SEVERE, "Failed to initialize AviaryReader.", ex);
-            System.exit(-1);
-        } catch (AbstractVerifier.VerifierBuilderException ex) {
-            LOG.log(Level.SEVERE, "Failed to initialize canary verifier.", ex);
-            System.exit(-1);
+    protected int execute() {
+        try (var monitor = startMonitoring("canaries", "verified")) {
+            return forEachCluster(cluster -> {
+                try (var report = openRunReport(cluster)) {
+                    ICanaryVerifier verifier = AbstractVerifier.builder()
+                            .forName(verifierClassName)
+                            .withAviaryReader(new AviaryReader(inFile))
+                            .withCqlSession(getCqlSession(cluster))
+                            .withOriginFilter(filterOptions.toFilterSet())
+                            .withProgressTracker(monitor.progress())
+                            .withRunReport(report)
+                            .withOutput(clusterOutput(cluster))
+                            .withMaxInFlightPerNode(maxInFlightPerNode)
+                            .withExecutionProfile(executionProfile)
+                            .withRangeOwnership(rangeOptions.toOwnership(
+                                    getCqlSession(cluster).getMetadata(), getLocalDatacenter(cluster)))
+                            .withWorkerPartition(worker)
+                            .build();
+                    verifier.verifyCanaries();
+                }
+            });
         }
     }
     
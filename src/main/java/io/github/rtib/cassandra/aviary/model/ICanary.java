@@ -40,4 +40,34 @@ public interface ICanary {
      */
     // TODO: SequencedMap could be better here, but lacks support with Jackson < 2.16.
     Map<String,Object> getIdentifier();
+    
+    /**
+     * Optional marker of canaries selected to probe a specific read path,
+     * e.g. the middle or the end of a wide partition.
+     * 
+     * @return name of the probe, null for ordinary canaries
+     */
+    default String getProbe() {
+        return null;
+    }
+    
+    /**
+     * Optional number of rows of the partition the canary belongs to, as
+     * counted while selecting it.
+     * 
+     * @return row count of the partition, null if not counted
+     */
+    default Long getRowCount() {
+        return null;
+    }
+    
+    /**
+     * Optional checksum of the regular columns of the canary row, as read
+     * while selecting it.
+     * 
+     * @return checksum as hex digits, null if not computed
+     */
+    default String getChecksum() {
+        return null;
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.report;
+
+import com.datastax.oss.driver.api.core.metadata.Metadata;
+import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.metadata.token.Token;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Abstract run report and factory. Implementations write to a buffered
+ * writer guarded by a lock, which is held only for formatting a single record.
+ * 
+ * @author repasi
+ */
+public abstract class AbstractRunReport implements IRunReport {
+
+    /**
+     * Supported report formats.
+     */
+    public enum Format {
+        /** One JSON object per line. */
+        JSON,
+        /** Comma separated values with a header line. */
+        CSV
+    }
+
+    protected final Writer out;
+    protected final ReentrantLock lock = new ReentrantLock();
+    private volatile TokenMap tokenMap;
+
+    protected AbstractRunReport(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Create a report file of the given format. The file is overwritten if it
+     * exists.
+     * @param file the report file
+     * @param format the report format
+     * @return a new report writing to the given file
+     * @throws IOException if the file cannot be created
+     */
+    public static IRunReport open(File file, Format format) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+        return switch (format) {
+            case JSON -> new JsonRunReport(writer);
+            case CSV -> new CsvRunReport(writer);
+        };
+    }
+
+    @Override
+    public void begin(String command, Metadata metadata) {
+        this.tokenMap = metadata.getTokenMap().orElse(null);
+    }
+
+    /**
+     * Format a token the way CQL represents it.
+     * @param token the token
+     * @return string representation of the token
+     */
+    protected String format(Token token) {
+        TokenMap tm = tokenMap;
+        return tm == null ? token.toString() : tm.format(token);
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            out.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.report;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.datastax.oss.driver.api.core.metadata.Metadata;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.token.TokenRange;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import io.github.rtib.cassandra.aviary.model.IOrigin;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Run report writing comma separated values. Every record has the same
+ * columns, the first column denotes the record type as in JsonRunReport, the
+ * meaning of the remaining columns depends on the type. The primary key of a
+ * canary and the counters of a summary are written JSON encoded into the
+ * columns key and counters.
+ * 
+ * @author repasi
+ */
+public class CsvRunReport extends AbstractRunReport {
+
+    private static final String HEADER = "type,origin,start,end,key,count,micros,status,detail,counters";
+    private static final ObjectMapper JSON = new ObjectMapper().registerModule(new Jdk8Module());
+
+    public CsvRunReport(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void begin(String command, Metadata metadata) {
+        super.begin(command, metadata);
+        StringBuilder sb = new StringBuilder(HEADER).append('\n');
+        sb.append(record("run", "", "", "", "", "", "", command, metadata.getClusterName().orElse(""), ""));
+        for (Node node : metadata.getNodes().values()) {
+            int tokens = metadata.getTokenMap().map(tm -> tm.getTokens(node).size()).orElse(0);
+            sb.append(record("node", "", "", "", "", Integer.toString(tokens), "", node.getState().name(),
+                    node.getEndPoint() + " " + node.getDatacenter() + " " + node.getRack(), ""));
+        }
+        write(sb);
+    }
+
+    @Override
+    public void rangeResult(IOrigin origin, TokenRange range, long count, long nanos, String error) {
+        write(record("range", origin.toString(), format(range.getStart()), format(range.getEnd()), "",
+                Long.toString(count), Long.toString(TimeUnit.NANOSECONDS.toMicros(nanos)),
+                error == null ? "ok" : "error", error == null ? "" : error, ""));
+    }
+
+    @Override
+    public void canaryResult(ICanary canary, CanaryStatus status, long nanos, String detail) {
+        write(record("canary", canary.getOrigin().toString(), "", "", json(new TreeMap<>(canary.getIdentifier())),
+                "", Long.toString(TimeUnit.NANOSECONDS.toMicros(nanos)),
+                status.label(), detail == null ? "" : detail, ""));
+    }
+
+    @Override
+    public void originSummary(IOrigin origin, Map<String, ? extends Number> counters) {
+        write(record("origin", origin.toString(), "", "", "", "", "", "", "", json(counters)));
+    }
+
+    @Override
+    public void nodeSummary(Node node, Map<String, ? extends Number> counters) {
+        write(record("replica", "", "", "", "", "", "", "", node.getEndPoint() + " " + node.getDatacenter(), json(counters)));
+    }
+
+    @Override
+    public void rangeSummary(IOrigin origin, TokenRange range, Map<String, ? extends Number> counters) {
+        write(record("range-summary", origin.toString(), format(range.getStart()), format(range.getEnd()),
+                "", "", "", "", "", json(counters)));
+    }
+
+    @Override
+    public void end(long elapsedNanos) {
+        write(record("end", "", "", "", "", "", Long.toString(TimeUnit.NANOSECONDS.toMicros(elapsedNanos)), "", "", ""));
+    }
+
+    private void write(CharSequence s) {
+        lock.lock();
+        try {
+            out.append(s);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static String json(Object value) {
+        try {
+            return JSON.writeValueAsString(value);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static String record(String... fields) {
+        return Arrays.stream(fields)
+                .map(CsvRunReport::escape)
+                .collect(Collectors.joining(",", "", "\n"));
+    }
+
+    private static String escape(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0)
+            return field;
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.report;
+
+import com.datastax.oss.driver.api.core.metadata.Metadata;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.token.TokenRange;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import io.github.rtib.cassandra.aviary.model.IOrigin;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Interface of machine-readable run reports. A report is written streamingly
+ * while a selection or verification is running, so implementations must not
+ * buffer the reported results and need to be thread safe. All methods are
+ * no-ops by default.
+ * 
+ * @author repasi
+ */
+public interface IRunReport extends Closeable {
+
+    /**
+     * A report discarding everything.
+     */
+    IRunReport NONE = new IRunReport() {};
+
+    /**
+     * Status of a canary reported individually.
+     */
+    enum CanaryStatus {
+        /** The canary was not found. */
+        MISSING,
+        /** The canary was found, but its row differs from the one expected. */
+        CHANGED,
+        /** The canary was found on some of its replicas only. */
+        INCONSISTENT,
+        /** The canary could not be checked. */
+        ERROR;
+
+        /**
+         * @return the status as written to reports
+         */
+        public String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * Start the report of a run and record a snapshot of the cluster topology.
+     * @param command name of the command being run, e.g. select or verify
+     * @param metadata metadata of the connected cluster
+     */
+    default void begin(String command, Metadata metadata) {};
+
+    /**
+     * Report the result of selecting canaries from a token range.
+     * @param origin the origin the range was queried from
+     * @param range the token range queried
+     * @param count number of canaries selected
+     * @param nanos time taken in nanoseconds
+     * @param error description of the error if the range failed, otherwise null
+     */
+    default void rangeResult(IOrigin origin, TokenRange range, long count, long nanos, String error) {};
+
+    /**
+     * Report the result of verifying a single canary.
+     * @param canary the canary verified
+     * @param status the status of the canary
+     * @param nanos time taken in nanoseconds
+     * @param detail description of the status or error, may be null
+     */
+    default void canaryResult(ICanary canary, CanaryStatus status, long nanos, String detail) {};
+
+    /**
+     * Report the aggregated counters of an origin.
+     * @param origin the origin the counters belong to
+     * @param counters named counter values
+     */
+    default void originSummary(IOrigin origin, Map<String, ? extends Number> counters) {};
+
+    /**
+     * Report the aggregated counters of a node, for commands querying nodes
+     * individually.
+     * @param node the node the counters belong to
+     * @param counters named counter values
+     */
+    default void nodeSummary(Node node, Map<String, ? extends Number> counters) {};
+
+    /**
+     * Report the aggregated counters of a token range, for commands
+     * accounting results by the range they belong to.
+     * @param origin the origin the counters belong to
+     * @param range the token range the counters belong to
+     * @param counters named counter values
+     */
+    default void rangeSummary(IOrigin origin, TokenRange range, Map<String, ? extends Number> counters) {};
+
+    /**
+     * Finish the report of a run.
+     * @param elapsedNanos total run time in nanoseconds
+     */
+    default void end(long elapsedNanos) {};
+
+    @Override
+    default void close() throws IOException {};
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.report;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.datastax.oss.driver.api.core.metadata.Metadata;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.token.TokenRange;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import io.github.rtib.cassandra.aviary.model.IOrigin;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run report writing one JSON object per line. Each object has a "type"
+ * field, which is one of run, node, range, canary, origin, replica,
+ * range-summary or end.
+ * 
+ * @author repasi
+ */
+public class JsonRunReport extends AbstractRunReport {
+
+    private final JsonGenerator json;
+
+    public JsonRunReport(Writer out) throws IOException {
+        super(out);
+        this.json = new ObjectMapper()
+                .registerModule(new Jdk8Module())
+                .getFactory()
+                .createGenerator(out)
+                .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        this.json.setRootValueSeparator(new SerializedString(System.lineSeparator()));
+    }
+
+    @Override
+    public void begin(String command, Metadata metadata) {
+        super.begin(command, metadata);
+        lock.lock();
+        try {
+            json.writeStartObject();
+            json.writeStringField("type", "run");
+            json.writeStringField("command", command);
+            json.writeStringField("cluster", metadata.getClusterName().orElse(null));
+            json.writeNumberField("timestamp", System.currentTimeMillis());
+            json.writeEndObject();
+            for (Node node : metadata.getNodes().values()) {
+                json.writeStartObject();
+                json.writeStringField("type", "node");
+                json.writeStringField("endpoint", node.getEndPoint().toString());
+                json.writeStringField("hostId", String.valueOf(node.getHostId()));
+                json.writeStringField("datacenter", node.getDatacenter());
+                json.writeStringField("rack", node.getRack());
+                json.writeStringField("state", node.getState().name());
+                json.writeStringField("version", String.valueOf(node.getCassandraVersion()));
+                json.writeNumberField("tokens", metadata.getTokenMap().map(tm -> tm.getTokens(node).size()).orElse(0));
+                json.writeEndObject();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void rangeResult(IOrigin origin, TokenRange range, long count, long nanos, String error) {
+        lock.lock();
+        try {
+            json.writeStartObject();
+            json.writeStringField("type", "range");
+            json.writeStringField("origin", origin.toString());
+            json.writeStringField("start", format(range.getStart()));
+            json.writeStringField("end", format(range.getEnd()));
+            json.writeNumberField("count", count);
+            json.writeNumberField("micros", TimeUnit.NANOSECONDS.toMicros(nanos));
+            if (error != null)
+                json.writeStringField("error", error);
+            json.writeEndObject();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void canaryResult(ICanary canary, CanaryStatus status, long nanos, String detail) {
+        lock.lock();
+        try {
+            json.writeStartObject();
+            json.writeStringField("type", "canary");
+            json.writeStringField("origin", canary.getOrigin().toString());
+            json.writeObjectField("primaryKey", canary.getIdentifier());
+            json.writeStringField("status", status.label());
+            json.writeNumberField("micros", TimeUnit.NANOSECONDS.toMicros(nanos));
+            if (detail != null)
+                json.writeStringField("detail", detail);
+            json.writeEndObject();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void originSummary(IOrigin origin, Map<String, ? extends Number> counters) {
+        lock.lock();
+        try {
+            json.writeStartObject();
+            json.writeStringField("type", "origin");
+            json.writeStringField("origin", origin.toString());
+            for (var e : counters.entrySet())
+                json.writeNumberField(e.getKey(), e.getValue().longValue());
+            json.writeEndObject();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void nodeSummary(Node node, Map<String, ? extends Number> counters) {
+        lock.lock();
+        try {
+            json.writeStartObject();
+            json.writeStringField("type", "replica");
+            json.writeStringField("endpoint", node.getEndPoint().toString());
+            json.writeStringField("datacenter", node.getDatacenter());
+            for (var e : counters.entrySet())
+                json.writeNumberField(e.getKey(), e.getValue().longValue());
+            json.writeEndObject();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void rangeSummary(IOrigin origin, TokenRange range, Map<String, ? extends Number> counters) {
+        lock.lock();
+        try {
+            json.writeStartObject();
+            json.writeStringField("type", "range-summary");
+            json.writeStringField("origin", origin.toString());
+            json.writeStringField("start", format(range.getStart()));
+            json.writeStringField("end", format(range.getEnd()));
+            for (var e : counters.entrySet())
+                json.writeNumberField(e.getKey(), e.getValue().longValue());
+            json.writeEndObject();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void end(long elapsedNanos) {
+        lock.lock();
+        try {
+            json.writeStartObject();
+            json.writeStringField("type", "end");
+            json.writeNumberField("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            json.writeEndObject();
+            json.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            json.writeRaw(System.lineSeparator());
+            json.close();
+        } finally {
+            lock.unlock();
+        }
+        super.close();
+    }
+}
@@ -17,20 +17,41 @@ package io.github.rtib.cassandra.aviary.selector;
 
 import com.datastax.oss.driver.api.core.CqlIdentifier;
 import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
 import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.metadata.token.TokenRange;
 import io.github.rtib.cassandra.aviary.model.IOrigin;
+import io.github.rtib.cassandra.aviary.report.IRunReport;
 import io.github.rtib.cassandra.aviary.storage.ICanaryWriter;
 import io.github.rtib.cassandra.aviary.storage.Origin;
 import io.github.rtib.cassandra.aviary.utils.CassandraMetadataHelper;
+import io.github.rtib.cassandra.aviary.utils.ExecutionProfiles;
+import io.github.rtib.cassandra.aviary.utils.ProgressTracker;
+import io.github.rtib.cassandra.aviary.utils.RangeOwnership;
+import io.github.rtib.cassandra.aviary.utils.AsyncPaging;
+import io.github.rtib.cassandra.aviary.utils.RetryPolicy;
+import io.github.rtib.cassandra.aviary.utils.SchedulingPolicy;
 import io.github.rtib.cassandra.aviary.utils.StatementCache;
+import io.github.rtib.cassandra.aviary.utils.WorkerPartition;
+import java.io.PrintStream;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Predicate;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import org.apache.commons.lang3.ClassUtils;
@@ -47,6 +68,18 @@ public abstract class AbstractSelector extends StatementCache<IOrigin> implement
     protected final ICanaryWriter canaryWriter;
     protected final ExecutorService executor;
     protected final CassandraMetadataHelper helper;
+    protected ProgressTracker progress;
+    protected IRunReport report;
+    protected RetryPolicy retryPolicy;
+    protected SchedulingPolicy schedulingPolicy;
+    protected int limit;
+    protected int pageSize;
+    protected String executionProfile;
+    protected RangeOwnership rangeOwnership;
+    protected WorkerPartition worker;
+    protected Map<String, String> options;
+    protected long seed;
+    protected PrintStream out;
     private Predicate<IOrigin> originFilter;
 
     /**
@@ -59,6 +92,18 @@ public abstract class AbstractSelector extends StatementCache<IOrigin> implement
         this.canaryWriter = writer;
         this.executor = Executors.newVirtualThreadPerTaskExecutor();
         this.helper = new CassandraMetadataHelper(cqlSession);
+        this.progress = new ProgressTracker();
+        this.report = IRunReport.NONE;
+        this.retryPolicy = RetryPolicy.NONE;
+        this.schedulingPolicy = SchedulingPolicy.UNBOUNDED;
+        this.limit = 1;
+        this.pageSize = 0;
+        this.executionProfile = ExecutionProfiles.BULK_SCAN;
+        this.rangeOwnership = RangeOwnership.ALL;
+        this.worker = WorkerPartition.SINGLE;
+        this.options = Map.of();
+        this.seed = ThreadLocalRandom.current().nextLong();
+        this.out = System.out;
     }
 
     /**
@@ -71,13 +116,98 @@ public abstract class AbstractSelector extends StatementCache<IOrigin> implement
     
     @Override
     public void selectCanaries() {
+        long start = System.nanoTime();
+        report.begin("select", cqlSession.getMetadata());
         executeSelectCanaries();
+        report.end(System.nanoTime() - start);
     }
 
     @Override
     public void setOriginFilter(Predicate<IOrigin> filter) {
         this.originFilter = filter;
     }
+
+    @Override
+    public void setProgressTracker(ProgressTracker tracker) {
+        this.progress = tracker;
+    }
+
+    @Override
+    public void setRunReport(IRunReport report) {
+        this.report = report;
+    }
+
+    @Override
+    public void setRetryPolicy(RetryPolicy policy) {
+        this.retryPolicy = policy;
+    }
+
+    @Override
+    public void setSchedulingPolicy(SchedulingPolicy policy) {
+        this.schedulingPolicy = policy;
+    }
+
+    @Override
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    @Override
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public void setExecutionProfile(String profile) {
+        this.executionProfile = profile;
+    }
+
+    @Override
+    public void setRangeOwnership(RangeOwnership ownership) {
+        this.rangeOwnership = ownership;
+    }
+
+    @Override
+    public void setWorkerPartition(WorkerPartition worker) {
+        this.worker = worker;
+    }
+
+    @Override
+    public void setOptions(Map<String, String> options) {
+        this.options = Map.copyOf(options);
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public void setOutput(PrintStream out) {
+        this.out = out;
+    }
+    
+    /**
+     * Get a selector specific integer option.
+     * @param name name of the option
+     * @param defaultValue value to use if the option is not set
+     * @return the option value
+     */
+    protected int getIntOption(String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+    
+    /**
+     * Get a selector specific boolean option.
+     * @param name name of the option
+     * @param defaultValue value to use if the option is not set
+     * @return the option value
+     */
+    protected boolean getBooleanOption(String name, boolean defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
     
     /**
      * Here the actual canary selection needs to be implemented.
@@ -94,12 +224,85 @@ public abstract class AbstractSelector extends StatementCache<IOrigin> implement
                 .parallel()
                 .<IOrigin> mapMulti((keyspace, consumer) -> {
                     for (CqlIdentifier table : keyspace.getTables().keySet())
-                        consumer.accept(new Origin(keyspace.getName().asCql(true), table.asCql(true)));
+                        consumer.accept(Origin.of(keyspace.getName().asCql(true), table.asCql(true)));
                 })
                 .filter(originFilter)
                 .collect(Collectors.toSet());
     }
 
+    /**
+     * Get the token ranges of an origin to select canaries from, i.e. the
+     * ranges of the ring owned as restricted by the range ownership, and
+     * taken by this worker. The worker of a range is given by the origin and
+     * the end token of the range.
+     * @param origin the origin
+     * @return set of token ranges in ring order
+     */
+    protected Set<TokenRange> getTokenRanges(IOrigin origin) {
+        TokenMap tokenMap = getTokenMap();
+        Set<TokenRange> ranges = rangeOwnership.filter(origin.getKeyspace(), tokenMap.getTokenRanges());
+        if (worker.isSingle())
+            return ranges;
+        Set<TokenRange> taken = new LinkedHashSet<>();
+        for (TokenRange range : ranges)
+            if (worker.owns(origin + ":" + tokenMap.format(range.getEnd())))
+                taken.add(range);
+        return taken;
+    }
+
+    /**
+     * Schedule the range queries of the given work according to the
+     * scheduling policy.
+     * @param work the ranges to query by origin
+     * @return scheduler dispatching the range queries
+     */
+    protected RangeScheduler schedule(Map<IOrigin, ? extends Collection<TokenRange>> work) {
+        Map<IOrigin, Collection<TokenRange>> prioritized = new LinkedHashMap<>();
+        for (IOrigin origin : prioritize(work.keySet()))
+            prioritized.put(origin, work.get(origin));
+        return new RangeScheduler(getTokenMap(), prioritized, schedulingPolicy.maxInFlightPerNode());
+    }
+
+    /**
+     * Order origins by the table priority of the scheduling policy. Origins
+     * are ordered by name, which is kept for equally sized tables.
+     * @param origins the origins to order
+     * @return list of origins in order of priority
+     */
+    protected List<IOrigin> prioritize(Collection<IOrigin> origins) {
+        List<IOrigin> ordered = new ArrayList<>(origins);
+        ordered.sort(Comparator.comparing(IOrigin::toString));
+        if (schedulingPolicy.priority() == SchedulingPolicy.Priority.SIZE) {
+            Map<String, Long> sizes = estimateTableSizes();
+            ordered.sort(Comparator.comparing((IOrigin o) -> sizes.getOrDefault(o.toString(), 0L)).reversed());
+        }
+        return ordered;
+    }
+
+    /**
+     * Estimate the size of the tables from the size estimates of the node
+     * answering the query. The estimates of a single node are sufficient to
+     * tell large tables from small ones.
+     * @return estimated bytes by origin name, empty if estimates are not available
+     */
+    private Map<String, Long> estimateTableSizes() {
+        Map<String, Long> sizes = new HashMap<>();
+        try {
+            AsyncPaging.forEachRow(cqlSession, SimpleStatement.newInstance(
+                    "SELECT keyspace_name, table_name, mean_partition_size, partitions_count FROM system.size_estimates"),
+                    (Row r) -> {
+                        var origin = Origin.of(
+                                CqlIdentifier.fromInternal(r.getString("keyspace_name")).asCql(true),
+                                CqlIdentifier.fromInternal(r.getString("table_name")).asCql(true));
+                        sizes.merge(origin.toString(), r.getLong("mean_partition_size") * r.getLong("partitions_count"), Long::sum);
+                        return true;
+                    });
+        } catch (RuntimeException ex) {
+            LOG.log(Level.WARNING, "Failed to read size estimates, ordering tables by name.", ex);
+        }
+        return sizes;
+    }
+
     /**
      * Acquire the token map of the connected Cassandra cluster.
      * @return token map object
@@ -117,6 +320,18 @@ public abstract class AbstractSelector extends StatementCache<IOrigin> implement
         private CqlSession session;
         private ICanaryWriter writer;
         private List<Predicate<IOrigin>> filters = Collections.EMPTY_LIST;
+        private ProgressTracker progress;
+        private IRunReport report;
+        private RetryPolicy retryPolicy;
+        private SchedulingPolicy schedulingPolicy;
+        private int limit = 1;
+        private int pageSize = 0;
+        private String executionProfile = ExecutionProfiles.BULK_SCAN;
+        private RangeOwnership rangeOwnership;
+        private WorkerPartition worker;
+        private Map<String, String> options = Map.of();
+        private Long seed;
+        private PrintStream out;
 
         public Builder() {
         }
@@ -168,6 +383,18 @@ public abstract class AbstractSelector extends StatementCache<IOrigin> implement
             return this;
         }
 
+        /**
+         * Set a single filter of origins, e.g. an OriginFilterSet combining
+         * the filter options. Unlike the varargs variant, this does not
+         * create a generic array.
+         * @param filter the predicate of origins to be processed
+         * @return this builder instance
+         */
+        public Builder withOriginFilter(final Predicate<IOrigin> filter) {
+            this.filters = List.of(filter);
+            return this;
+        }
+
         /**
          * Setup builder with an ICanaryWriter to be used for storing selected canaries.
          * @param writer an instance of an ICanaryWriter
@@ -178,6 +405,129 @@ public abstract class AbstractSelector extends StatementCache<IOrigin> implement
             return this;
         }
         
+        /**
+         * Setup builder with a ProgressTracker the selection progress is
+         * accounted to. If not set, the selector uses a private tracker.
+         * @param progress progress counters to be updated by the selector
+         * @return this builder instance
+         */
+        public Builder withProgressTracker(final ProgressTracker progress) {
+            this.progress = progress;
+            return this;
+        }
+        
+        /**
+         * Setup builder with a report the selection results are streamed to.
+         * @param report a machine-readable run report
+         * @return this builder instance
+         */
+        public Builder withRunReport(final IRunReport report) {
+            this.report = report;
+            return this;
+        }
+        
+        /**
+         * Setup builder with a policy of repeating failed range queries.
+         * @param policy the retry policy
+         * @return this builder instance
+         */
+        public Builder withRetryPolicy(final RetryPolicy policy) {
+            this.retryPolicy = policy;
+            return this;
+        }
+        
+        /**
+         * Setup builder with a policy of scheduling range queries.
+         * @param policy the scheduling policy
+         * @return this builder instance
+         */
+        public Builder withSchedulingPolicy(final SchedulingPolicy policy) {
+            this.schedulingPolicy = policy;
+            return this;
+        }
+        
+        /**
+         * Setup builder with the maximum number of canaries to be selected
+         * from each token range.
+         * @param limit canaries per token range
+         * @return this builder instance
+         */
+        public Builder withLimit(final int limit) {
+            this.limit = limit;
+            return this;
+        }
+        
+        /**
+         * Setup builder with the number of rows fetched per page of a range
+         * query.
+         * @param pageSize rows per page, zero or less to use the driver default
+         * @return this builder instance
+         */
+        public Builder withPageSize(final int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+        
+        /**
+         * Setup builder with the driver execution profile of the queries.
+         * @param profile name of the execution profile, null for the default profile
+         * @return this builder instance
+         */
+        public Builder withExecutionProfile(final String profile) {
+            this.executionProfile = profile;
+            return this;
+        }
+        
+        /**
+         * Setup builder with the token ranges to select canaries from.
+         * @param ownership the range ownership, null for all ranges
+         * @return this builder instance
+         */
+        public Builder withRangeOwnership(final RangeOwnership ownership) {
+            this.rangeOwnership = ownership;
+            return this;
+        }
+        
+        /**
+         * Setup builder with the share of the work taken by this worker.
+         * @param worker the partition of the worker, null for a single worker
+         * @return this builder instance
+         */
+        public Builder withWorkerPartition(final WorkerPartition worker) {
+            this.worker = worker;
+            return this;
+        }
+        
+        /**
+         * Setup builder with selector specific options.
+         * @param options map of option names to values, may be null
+         * @return this builder instance
+         */
+        public Builder withOptions(final Map<String, String> options) {
+            this.options = options == null ? Map.of() : options;
+            return this;
+        }
+        
+        /**
+         * Setup builder with the seed of random canary selection.
+         * @param seed seed of the random generator, null for a random seed
+         * @return this builder instance
+         */
+        public Builder withSeed(final Long seed) {
+            this.seed = seed;
+            return this;
+        }
+        
+        /**
+         * Setup builder with the stream results are printed to.
+         * @param out stream of human-readable results, null for the standard output
+         * @return this builder instance
+         */
+        public Builder withOutput(final PrintStream out) {
+            this.out = out;
+            return this;
+        }
+        
         /**
          * Instantiate the selected ICanarySelector class and set up with
          * parameter provided to this builder.
@@ -188,7 +538,27 @@ public abstract class AbstractSelector extends StatementCache<IOrigin> implement
             ICanarySelector inst;
             try {
                 inst = (ICanarySelector) selectorClass.getConstructor(CqlSession.class, ICanaryWriter.class).newInstance(session, writer);
-                inst.setOriginFilter(filters.stream().reduce(x->true, Predicate::and));
+                inst.setOriginFilter(filters.size() == 1 ? filters.get(0) : filters.stream().reduce(x->true, Predicate::and));
+                if (progress != null)
+                    inst.setProgressTracker(progress);
+                if (report != null)
+                    inst.setRunReport(report);
+                if (retryPolicy != null)
+                    inst.setRetryPolicy(retryPolicy);
+                if (schedulingPolicy != null)
+                    inst.setSchedulingPolicy(schedulingPolicy);
+                inst.setLimit(limit);
+                inst.setPageSize(pageSize);
+                inst.setExecutionProfile(executionProfile);
+                if (rangeOwnership != null)
+                    inst.setRangeOwnership(rangeOwnership);
+                if (worker != null)
+                    inst.setWorkerPartition(worker);
+                inst.setOptions(options);
+                if (seed != null)
+                    inst.setSeed(seed);
+                if (out != null)
+                    inst.setOutput(out);
                 return inst;
             } catch (NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
                 throw new SelectorBuilderException("Failed to build selector instance.", ex);
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.selector;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.BoundStatementBuilder;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.metadata.schema.ClusteringOrder;
+import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import static com.datastax.oss.driver.api.querybuilder.QueryBuilder.bindMarker;
+import com.datastax.oss.driver.api.querybuilder.select.Select;
+import io.github.rtib.cassandra.aviary.model.IOrigin;
+import io.github.rtib.cassandra.aviary.storage.Canary;
+import io.github.rtib.cassandra.aviary.storage.ICanaryWriter;
+import io.github.rtib.cassandra.aviary.utils.AsyncPaging;
+import io.github.rtib.cassandra.aviary.utils.ExecutionProfiles;
+import io.github.rtib.cassandra.aviary.utils.StatementCache;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Canary selector exercising deep-slice reads of wide partitions. For tables
+ * having clustering columns, every partition selected from a token range is
+ * additionally sampled at the middle and at the end of its clustering order.
+ * The canaries are marked with the probes slice-start, slice-middle and
+ * slice-end. Tables without clustering columns are handled like RangeSelector
+ * does.
+ * 
+ * A bounded slice query streams up to max-slice-rows rows (selector option,
+ * default 10000) of the partition counting them, without holding them. The
+ * middle row is then read by a second slice query limited to half of the
+ * rows counted, while the end is read by a reversed query if the slice was
+ * capped. For partitions exceeding max-slice-rows the middle is approximated
+ * by the row at max-slice-rows / 2, as the partition is not counted fully.
+ * 
+ * @author repasi
+ */
+public class DeepSliceSelector extends RangeSelector {
+
+    private static final Logger LOG = Logger.getLogger(DeepSliceSelector.class.getName());
+
+    /**
+     * Name of the option limiting the rows read to find the middle of a partition.
+     */
+    public static final String MAX_SLICE_ROWS_OPTION = "max-slice-rows";
+    public static final String PROBE_START = "slice-start";
+    public static final String PROBE_MIDDLE = "slice-middle";
+    public static final String PROBE_END = "slice-end";
+
+    private final StatementCache<IOrigin> sliceStatements;
+    private final StatementCache<IOrigin> tailStatements;
+
+    public DeepSliceSelector(CqlSession cqlSession, ICanaryWriter writer) {
+        super(cqlSession, writer);
+        this.sliceStatements = new StatementCache<>() {
+            @Override
+            public PreparedStatement prepareStatementFor(IOrigin origin) {
+                return prepareSliceStatement(origin, false);
+            }
+        };
+        this.tailStatements = new StatementCache<>() {
+            @Override
+            public PreparedStatement prepareStatementFor(IOrigin origin) {
+                return prepareSliceStatement(origin, true);
+            }
+        };
+    }
+
+    /**
+     * Select at most one row per partition, as every row spawns slice queries.
+     * The query builder renders PER PARTITION LIMIT after LIMIT, which
+     * Cassandra rejects, so the LIMIT of the range query is appended to the
+     * rendered query.
+     */
+    @Override
+    public PreparedStatement prepareStatementFor(IOrigin origin) {
+        Select query = withChecksumColumns(QueryBuilder
+                .selectFrom(origin.getKeyspace(), origin.getTable())
+                .columns(helper.getPrimaryKey(origin))
+                .whereTokenFromIds(helper.getPartitionKey(origin))
+                    .isGreaterThan(bindMarker())
+                .whereTokenFromIds(helper.getPartitionKey(origin))
+                    .isLessThanOrEqualTo(bindMarker()), origin)
+                .perPartitionLimit(1);
+        SimpleStatement stmt = SimpleStatement.newInstance(query.asCql() + " LIMIT ?");
+        LOG.log(Level.FINE, "Preparing for {0} statement {1}", new Object[]{origin, stmt.getQuery()});
+        return cqlSession.prepare(ExecutionProfiles.apply(cqlSession, stmt, executionProfile));
+    }
+
+    @Override
+    protected int selectCanariesFromRow(IOrigin origin, Row row, Canary.CanaryBuilder builder) {
+        if (helper.getClusteringColumns(origin).isEmpty())
+            return super.selectCanariesFromRow(origin, row, builder);
+
+        int count = writeCanary(row, builder.withProbe(PROBE_START)) ? 1 : 0;
+        try {
+            int maxRows = getIntOption(MAX_SLICE_ROWS_OPTION, 10000);
+            LastRow slice = new LastRow(maxRows);
+            long rows = AsyncPaging.forEachRow(cqlSession, bindSlice(origin, row, maxRows), slice);
+            if (rows > 2) {
+                LastRow middle = new LastRow((int) (rows - 1) / 2 + 1);
+                AsyncPaging.forEachRow(cqlSession, bindSlice(origin, row, middle.limit), middle);
+                if (middle.row != null && writeCanary(middle.row, builder.withProbe(PROBE_MIDDLE)))
+                    count++;
+            }
+            Row last = rows < maxRows ?
+                    (rows > 1 ? slice.row : null) :
+                    cqlSession.execute(bindPartition(tailStatements.getStatement(origin), origin, row).build()).one();
+            if (last != null && writeCanary(last, builder.withProbe(PROBE_END)))
+                count++;
+        } catch (RuntimeException ex) {
+            LOG.log(Level.WARNING, "Failed to sample deep slices of a partition of " + origin, ex);
+        }
+        return count;
+    }
+
+    /**
+     * Bind a slice query of the partition of a row, reading up to limit rows
+     * in clustering order.
+     */
+    private BoundStatement bindSlice(IOrigin origin, Row row, int limit) {
+        return bindPartition(sliceStatements.getStatement(origin), origin, row)
+                .setInt(helper.getPartitionKey(origin).size(), limit)
+                .build();
+    }
+
+    /**
+     * Bind the partition key values of a row to a slice statement.
+     */
+    private BoundStatementBuilder bindPartition(PreparedStatement statement, IOrigin origin, Row row) {
+        BoundStatementBuilder stmt = statement.boundStatementBuilder()
+                .setIdempotence(true);
+        if (pageSize > 0)
+            stmt = stmt.setPageSize(pageSize);
+        int i = 0;
+        for (CqlIdentifier column : helper.getPartitionKey(origin))
+            stmt = stmt.setBytesUnsafe(i++, row.getBytesUnsafe(column));
+        return stmt;
+    }
+
+    /**
+     * Prepare a query of the primary key columns of a single partition, either
+     * in clustering order bounded by a limit bind marker, or reversed reading
+     * the last row only.
+     */
+    private PreparedStatement prepareSliceStatement(IOrigin origin, boolean reversed) {
+        Select query = withChecksumColumns(QueryBuilder
+                .selectFrom(origin.getKeyspace(), origin.getTable())
+                .columns(helper.getPrimaryKey(origin)), origin);
+        for (CqlIdentifier column : helper.getPartitionKey(origin))
+            query = query.whereColumn(column).isEqualTo(bindMarker());
+        if (reversed) {
+            Map<CqlIdentifier, ClusteringOrder> order = new LinkedHashMap<>();
+            helper.getClusteringColumns(origin).forEach((column, o) ->
+                    order.put(column, o == ClusteringOrder.ASC ? ClusteringOrder.DESC : ClusteringOrder.ASC));
+            query = query.orderByIds(order).limit(1);
+        } else {
+            query = query.limit(bindMarker());
+        }
+        LOG.log(Level.FINE, "Preparing for {0} statement {1}", new Object[]{origin, query});
+        return cqlSession.prepare(ExecutionProfiles.apply(cqlSession, query.build(), executionProfile));
+    }
+
+    /**
+     * Row consumer keeping only the last of up to limit rows, so a slice is
+     * streamed in constant memory.
+     */
+    private static final class LastRow implements Predicate<Row> {
+        private final int limit;
+        private int seen;
+        private Row row;
+
+        private LastRow(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean test(Row r) {
+            row = r;
+            return ++seen < limit;
+        }
+    }
+}
@@ -16,6 +16,14 @@
 package io.github.rtib.cassandra.aviary.selector;
 
 import io.github.rtib.cassandra.aviary.model.IOrigin;
+import io.github.rtib.cassandra.aviary.report.IRunReport;
+import io.github.rtib.cassandra.aviary.utils.ProgressTracker;
+import io.github.rtib.cassandra.aviary.utils.RangeOwnership;
+import io.github.rtib.cassandra.aviary.utils.RetryPolicy;
+import io.github.rtib.cassandra.aviary.utils.SchedulingPolicy;
+import io.github.rtib.cassandra.aviary.utils.WorkerPartition;
+import java.io.PrintStream;
+import java.util.Map;
 import java.util.function.Predicate;
 
 /**
@@ -36,4 +44,79 @@ public interface ICanarySelector {
      * @param filter a stream predicate that apply to IOrigin entries
      */
     default void setOriginFilter(Predicate<IOrigin> filter) {};
+
+    /**
+     * Set the tracker the progress of the selection is accounted to.
+     * @param tracker progress counters to update while selecting
+     */
+    default void setProgressTracker(ProgressTracker tracker) {};
+
+    /**
+     * Set the report the results of the selection are streamed to.
+     * @param report a machine-readable run report
+     */
+    default void setRunReport(IRunReport report) {};
+
+    /**
+     * Set the policy of repeating failed range queries.
+     * @param policy the retry policy
+     */
+    default void setRetryPolicy(RetryPolicy policy) {};
+
+    /**
+     * Set the policy of scheduling range queries across nodes and tables.
+     * @param policy the scheduling policy
+     */
+    default void setSchedulingPolicy(SchedulingPolicy policy) {};
+
+    /**
+     * Set the maximum number of canaries to be selected from each token range.
+     * @param limit canaries per token range
+     */
+    default void setLimit(int limit) {};
+
+    /**
+     * Set the number of rows fetched per page of a range query.
+     * @param pageSize rows per page, zero or less to use the driver default
+     */
+    default void setPageSize(int pageSize) {};
+
+    /**
+     * Set the driver execution profile of the queries of the selector.
+     * @param profile name of the execution profile, null for the default profile
+     */
+    default void setExecutionProfile(String profile) {};
+
+    /**
+     * Restrict the selection to the token ranges owned by some nodes.
+     * @param ownership the ranges to select canaries from
+     */
+    default void setRangeOwnership(RangeOwnership ownership) {};
+
+    /**
+     * Set the share of the token ranges of each origin taken by this worker,
+     * if the selection is partitioned across several workers.
+     * @param worker the partition of the worker
+     */
+    default void setWorkerPartition(WorkerPartition worker) {};
+
+    /**
+     * Set selector specific options. Options not known by a selector are
+     * ignored.
+     * @param options map of option names to values
+     */
+    default void setOptions(Map<String, String> options) {};
+
+    /**
+     * Set the seed of selectors choosing canaries randomly. Using the same
+     * seed on an unchanged data set reproduces the same canaries.
+     * @param seed seed of the random generator
+     */
+    default void setSeed(long seed) {};
+
+    /**
+     * Set the stream the results of the selection are printed to.
+     * @param out stream of human-readable results
+     */
+    default void setOutput(PrintStream out) {};
 }
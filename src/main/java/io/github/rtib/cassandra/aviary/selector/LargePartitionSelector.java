@@ -0,0 +1,319 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.selector;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.metadata.token.Token;
+import com.datastax.oss.driver.api.core.metadata.token.TokenRange;
+import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import static com.datastax.oss.driver.api.querybuilder.QueryBuilder.bindMarker;
+import com.datastax.oss.driver.api.querybuilder.select.Select;
+import com.datastax.oss.driver.api.querybuilder.select.Selector;
+import io.github.rtib.cassandra.aviary.model.IOrigin;
+import io.github.rtib.cassandra.aviary.storage.Canary;
+import io.github.rtib.cassandra.aviary.storage.ICanaryWriter;
+import io.github.rtib.cassandra.aviary.storage.OriginArray;
+import io.github.rtib.cassandra.aviary.utils.AsyncPaging;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Canary selector flagging the largest partitions of each table. Token ranges
+ * are scanned row by row, counting the rows of each partition up to
+ * max-partition-rows (selector option, default 10000). A partition reaching
+ * the cap is skipped by restarting the scan after its token. The top
+ * (selector option, default 10) partitions of each table with most rows are
+ * written as canaries, each being the primary key of the first row of the
+ * partition, marked with the probe large-partition and carrying the counted
+ * number of rows.
+ *
+ * Scanning a whole table can be expensive. The number of rows scanned per
+ * range can be bounded by max-scan-rows (default 0, unbounded), and the
+ * number of ranges scanned per table by max-ranges (default 0, all). If
+ * max-ranges is set, ranges are prioritized by the mean partition size the
+ * nodes are estimating in system.size_estimates.
+ *
+ * @author repasi
+ */
+public class LargePartitionSelector extends RangeSelector {
+
+    private static final Logger LOG = Logger.getLogger(LargePartitionSelector.class.getName());
+
+    public static final String TOP_OPTION = "top";
+    public static final String MAX_PARTITION_ROWS_OPTION = "max-partition-rows";
+    public static final String MAX_SCAN_ROWS_OPTION = "max-scan-rows";
+    public static final String MAX_RANGES_OPTION = "max-ranges";
+    public static final String PROBE = "large-partition";
+
+    private static final String SIZE_ESTIMATES_QUERY =
+            "SELECT range_start, range_end, mean_partition_size FROM system.size_estimates WHERE keyspace_name = ? AND table_name = ?";
+
+    private final Map<IOrigin, TopPartitions> tops = new ConcurrentHashMap<>();
+
+    public LargePartitionSelector(CqlSession cqlSession, ICanaryWriter writer) {
+        super(cqlSession, writer);
+    }
+
+    @Override
+    public void executeSelectCanaries() {
+        int maxRanges = getIntOption(MAX_RANGES_OPTION, 0);
+        Map<IOrigin, Collection<TokenRange>> work = new HashMap<>();
+        for (var origin : getOrigins()) {
+            Set<TokenRange> ranges = getTokenRanges(origin);
+            work.put(origin, maxRanges > 0 && maxRanges < ranges.size() ?
+                    largestRanges(origin, ranges, maxRanges) : ranges);
+            tops.put(origin, new TopPartitions(getIntOption(TOP_OPTION, 10)));
+        }
+
+        // the limit does not apply, every sub-range of a split range needs to be scanned
+        OriginArray<Counters> results = selectRanges(work, Integer.MAX_VALUE);
+
+        results.forEach((origin, counters) -> {
+            var builder = Canary.builder()
+                    .withOrigin(origin)
+                    .withPrimaryKeyFields(helper.getPrimaryKey(origin));
+            List<Partition> largest = tops.get(origin).sorted();
+            int written = 0;
+            for (Partition partition : largest)
+                if (writeCanary(partition.first(), builder.withProbe(PROBE).withRowCount(partition.rows())))
+                    written++;
+            Map<String, Number> summary = new LinkedHashMap<>(counters.toMap());
+            summary.put("partitions", summary.remove("canaries"));
+            summary.put("canaries", written);
+            summary.put("largest", largest.isEmpty() ? 0 : largest.get(0).rows());
+            report.originSummary(origin, summary);
+            out.println(String.format("%s: %d canaries, largest %s rows, %d partitions in %d ranges",
+                    origin, written, largest.isEmpty() ? "-" : largest.get(0).rows(),
+                    counters.canaries(), counters.ranges()));
+        });
+    }
+
+    /**
+     * Scan a token range counting the rows of each partition. The limit is
+     * ignored, as scans are bounded by max-scan-rows.
+     * @return number of partitions scanned
+     */
+    @Override
+    protected int selectCanaryForRange(IOrigin origin, TokenRange range, int limit) {
+        Scan scan = new Scan(
+                helper.getPartitionKey(origin).size(),
+                tops.get(origin).size,
+                getIntOption(MAX_PARTITION_ROWS_OPTION, 10000),
+                getIntOption(MAX_SCAN_ROWS_OPTION, 0));
+        for (TokenRange subRange : range.unwrap()) {
+            Token start = subRange.getStart();
+            while (start != null && !scan.exhausted) {
+                BoundStatement stmt = route(getStatement(origin)
+                        .bind(start, subRange.getEnd())
+                        .setIdempotent(true), subRange);
+                if (pageSize > 0)
+                    stmt = stmt.setPageSize(pageSize);
+                LOG.fine(stmt.toString());
+                scan.restart = null;
+                AsyncPaging.forEachRow(cqlSession, stmt, scan::accept);
+                scan.close();
+                start = scan.restart;
+            }
+        }
+        tops.get(origin).merge(scan.top);
+        return scan.partitions;
+    }
+
+    /**
+     * Query the token of the partition key along with the primary key
+     * columns, the scan is not limited.
+     */
+    @Override
+    protected Select rangeQuery(IOrigin origin) {
+        List<Selector> partitionKey = new ArrayList<>();
+        for (CqlIdentifier column : helper.getPartitionKey(origin))
+            partitionKey.add(Selector.column(column));
+        return QueryBuilder
+                .selectFrom(origin.getKeyspace(), origin.getTable())
+                .function("token", partitionKey)
+                .columns(helper.getPrimaryKey(origin))
+                .whereTokenFromIds(helper.getPartitionKey(origin))
+                    .isGreaterThan(bindMarker())
+                .whereTokenFromIds(helper.getPartitionKey(origin))
+                    .isLessThanOrEqualTo(bindMarker());
+    }
+
+    /**
+     * Pick the ranges overlapping the largest mean partition sizes estimated
+     * by any node. Ranges without estimates are appended as least likely, so
+     * a cluster not providing estimates is scanned in ring order.
+     */
+    private List<TokenRange> largestRanges(IOrigin origin, Set<TokenRange> ranges, int maxRanges) {
+        TokenMap tokenMap = getTokenMap();
+        Map<TokenRange, Long> estimates = new HashMap<>();
+        for (Node node : cqlSession.getMetadata().getNodes().values()) {
+            try {
+                SimpleStatement stmt = SimpleStatement.newInstance(SIZE_ESTIMATES_QUERY,
+                        CqlIdentifier.fromCql(origin.getKeyspace()).asInternal(),
+                        CqlIdentifier.fromCql(origin.getTable()).asInternal())
+                        .setNode(node);
+                AsyncPaging.forEachRow(cqlSession, stmt, r -> {
+                    estimates.merge(tokenMap.newTokenRange(
+                                    tokenMap.parse(r.getString("range_start")),
+                                    tokenMap.parse(r.getString("range_end"))),
+                            r.getLong("mean_partition_size"), Math::max);
+                    return true;
+                });
+            } catch (RuntimeException ex) {
+                LOG.log(Level.WARNING, "Failed to read size estimates of " + origin + " from " + node, ex);
+            }
+        }
+        List<TokenRange> sorted = new ArrayList<>(ranges);
+        Map<TokenRange, Long> score = new HashMap<>();
+        for (TokenRange range : sorted)
+            score.put(range, estimates.entrySet().stream()
+                    .filter(e -> e.getKey().intersects(range))
+                    .mapToLong(Map.Entry::getValue)
+                    .max().orElse(-1));
+        sorted.sort(Comparator.comparing(score::get, Comparator.reverseOrder()));
+        LOG.log(Level.FINE, "Scanning {0} of {1} ranges of {2}", new Object[]{maxRanges, sorted.size(), origin});
+        return sorted.subList(0, maxRanges);
+    }
+
+    /**
+     * A partition represented by its first row and its number of rows.
+     */
+    private record Partition(Row first, long rows) {};
+
+    /**
+     * State of scanning a range. Rows are returned in token order, so the
+     * rows of a partition are consecutive.
+     */
+    private static final class Scan {
+        private final int partitionKeySize;
+        private final int size;
+        private final int maxPartitionRows;
+        private final int maxScanRows;
+        private final PriorityQueue<Partition> top = new PriorityQueue<>(Comparator.comparingLong(Partition::rows));
+        private List<ByteBuffer> key;
+        private Row first;
+        private long rows;
+        private long scanned;
+        private int partitions;
+        private Token restart;
+        private boolean exhausted;
+
+        private Scan(int partitionKeySize, int size, int maxPartitionRows, int maxScanRows) {
+            this.partitionKeySize = partitionKeySize;
+            this.size = size;
+            this.maxPartitionRows = maxPartitionRows;
+            this.maxScanRows = maxScanRows;
+        }
+
+        private boolean accept(Row row) {
+            // column 0 is the token, followed by the partition key columns
+            List<ByteBuffer> rowKey = new ArrayList<>(partitionKeySize);
+            for (int i = 1; i <= partitionKeySize; i++)
+                rowKey.add(row.getBytesUnsafe(i));
+            if (!rowKey.equals(key)) {
+                close();
+                key = rowKey;
+                first = row;
+            }
+            rows++;
+            scanned++;
+            if (maxScanRows > 0 && scanned >= maxScanRows) {
+                exhausted = true;
+                return false;
+            }
+            if (rows >= maxPartitionRows) {
+                restart = row.getToken(0);
+                close();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Account the partition being counted and keep it, if it is among
+         * the largest partitions seen.
+         */
+        private void close() {
+            if (first == null)
+                return;
+            partitions++;
+            if (top.size() < size) {
+                top.add(new Partition(first, rows));
+            } else if (top.peek().rows() < rows) {
+                top.poll();
+                top.add(new Partition(first, rows));
+            }
+            key = null;
+            first = null;
+            rows = 0;
+        }
+    }
+
+    /**
+     * The largest partitions found in any range of an origin.
+     */
+    private static final class TopPartitions {
+        private final int size;
+        private final PriorityQueue<Partition> top = new PriorityQueue<>(Comparator.comparingLong(Partition::rows));
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private TopPartitions(int size) {
+            this.size = size;
+        }
+
+        private void merge(Collection<Partition> partitions) {
+            lock.lock();
+            try {
+                for (Partition partition : partitions) {
+                    top.add(partition);
+                    if (top.size() > size)
+                        top.poll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private List<Partition> sorted() {
+            lock.lock();
+            try {
+                List<Partition> sorted = new ArrayList<>(top);
+                sorted.sort(Comparator.comparingLong(Partition::rows).reversed());
+                return sorted;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.selector;
+
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.metadata.token.TokenRange;
+import io.github.rtib.cassandra.aviary.model.IOrigin;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Dispatch order of range queries keeping the nodes of a cluster evenly
+ * loaded. Every range is assigned to the least loaded of its replicas, and
+ * each node has its own queue, where the tables take turns: in every turn,
+ * each table having ranges left on the node gets one, in the order of table
+ * priority. Nodes are served round-robin, skipping nodes having reached their
+ * maximum of queries in flight.
+ *
+ * The scheduler is thread-safe, tasks are dispatched by a single thread
+ * calling next, while the tasks themselves call done when finished.
+ *
+ * @author repasi
+ */
+public final class RangeScheduler {
+
+    /**
+     * A range query scheduled to a node, the node is null for ranges without
+     * known replicas.
+     */
+    public record Task(IOrigin origin, TokenRange range, Node node) {};
+
+    private final List<NodeQueue> queues;
+    private final Map<Node, NodeQueue> byNode;
+    private final int maxInFlightPerNode;
+    private final int size;
+    private final ReentrantLock lock = new ReentrantLock();
+    private int cursor;
+
+    /**
+     * Build the queues of the given work.
+     * @param tokenMap token map to look up replicas
+     * @param work ranges to query by origin, iterated in order of priority
+     * @param maxInFlightPerNode concurrent tasks per node, zero or less for unbounded
+     */
+    public RangeScheduler(TokenMap tokenMap, Map<IOrigin, ? extends Collection<TokenRange>> work, int maxInFlightPerNode) {
+        this.maxInFlightPerNode = maxInFlightPerNode;
+        Map<Node, Map<IOrigin, ArrayDeque<Task>>> assigned = new LinkedHashMap<>();
+        Map<Node, Integer> load = new HashMap<>();
+        int count = 0;
+        for (var entry : work.entrySet()) {
+            IOrigin origin = entry.getKey();
+            for (TokenRange range : entry.getValue()) {
+                Node node = leastLoaded(tokenMap.getReplicas(origin.getKeyspace(), range), load);
+                load.merge(node, 1, Integer::sum);
+                assigned.computeIfAbsent(node, n -> new LinkedHashMap<>())
+                        .computeIfAbsent(origin, o -> new ArrayDeque<>())
+                        .add(new Task(origin, range, node));
+                count++;
+            }
+        }
+        this.size = count;
+        this.queues = new ArrayList<>(assigned.size());
+        this.byNode = new HashMap<>();
+        assigned.forEach((node, tables) -> {
+            NodeQueue queue = new NodeQueue(interleave(tables.values()));
+            queues.add(queue);
+            byNode.put(node, queue);
+        });
+    }
+
+    /**
+     * @return total number of tasks scheduled
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the next task to dispatch, taking nodes round-robin.
+     * @return the next task, null if all tasks are dispatched or all nodes
+     * having tasks left are at their maximum of tasks in flight
+     */
+    public Task next() {
+        lock.lock();
+        try {
+            for (int i = 0; i < queues.size(); i++) {
+                NodeQueue queue = queues.get(cursor);
+                cursor = (cursor + 1) % queues.size();
+                if (!queue.tasks.isEmpty() && (maxInFlightPerNode <= 0 || queue.inFlight < maxInFlightPerNode)) {
+                    queue.inFlight++;
+                    return queue.tasks.poll();
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Release the node of a finished task.
+     * @param task the task finished
+     */
+    public void done(Task task) {
+        lock.lock();
+        try {
+            byNode.get(task.node()).inFlight--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Node leastLoaded(Set<Node> replicas, Map<Node, Integer> load) {
+        Node best = null;
+        for (Node replica : replicas)
+            if (best == null || load.getOrDefault(replica, 0) < load.getOrDefault(best, 0))
+                best = replica;
+        return best;
+    }
+
+    /**
+     * Merge the queues of the tables, taking one task of each in turn.
+     */
+    private static ArrayDeque<Task> interleave(Collection<ArrayDeque<Task>> tables) {
+        ArrayDeque<Task> merged = new ArrayDeque<>();
+        List<ArrayDeque<Task>> left = new ArrayList<>(tables);
+        while (!left.isEmpty()) {
+            left.removeIf(ArrayDeque::isEmpty);
+            for (ArrayDeque<Task> table : left)
+                merged.add(table.poll());
+        }
+        return merged;
+    }
+
+    private static final class NodeQueue {
+        private final ArrayDeque<Task> tasks;
+        private int inFlight;
+
+        private NodeQueue(ArrayDeque<Task> tasks) {
+            this.tasks = tasks;
+        }
+    }
+}
@@ -19,9 +19,11 @@ import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
-import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.NodeState;
 import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.metadata.token.Token;
 import com.datastax.oss.driver.api.core.metadata.token.TokenRange;
 import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
 import static com.datastax.oss.driver.api.querybuilder.QueryBuilder.bindMarker;
@@ -30,15 +32,27 @@ import io.github.rtib.cassandra.aviary.model.IOrigin;
 import io.github.rtib.cassandra.aviary.storage.Canary;
 import io.github.rtib.cassandra.aviary.storage.Canary.IncompletePrimaryKeyException;
 import io.github.rtib.cassandra.aviary.storage.ICanaryWriter;
+import io.github.rtib.cassandra.aviary.storage.Origin;
+import io.github.rtib.cassandra.aviary.storage.OriginArray;
+import io.github.rtib.cassandra.aviary.utils.AsyncPaging;
+import io.github.rtib.cassandra.aviary.utils.ExecutionProfiles;
+import io.github.rtib.cassandra.aviary.utils.Failure;
+import io.github.rtib.cassandra.aviary.utils.RowChecksum;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 /**
  * Canary selector acquiring canaries from each token range of a Cassandra
@@ -50,75 +64,357 @@ public class RangeSelector extends AbstractSelector {
 
     private static final Logger LOG = Logger.getLogger(RangeSelector.class.getName());
 
+    /**
+     * Name of the option enabling checksums of the regular columns of the
+     * canary rows.
+     */
+    public static final String CHECKSUM_OPTION = "checksum";
+
+    /**
+     * Selection of the range running on the current thread, tracking the
+     * canaries written so far across its attempts.
+     */
+    private final ThreadLocal<Selection> selection = new ThreadLocal<>();
+    private final ThreadLocal<Node> scheduledNode = new ThreadLocal<>();
+
     public RangeSelector(CqlSession cqlSession, ICanaryWriter writer) {
         super(cqlSession, writer);
     }
 
     @Override
     public void executeSelectCanaries() {
-        Queue<Future<Result>> tasks = new ConcurrentLinkedQueue<>();
-        Map<IOrigin, Counters> results = new ConcurrentHashMap<>();
-
-        TokenMap tm = getTokenMap();
-        int limit = 1;
+        Map<IOrigin, Collection<TokenRange>> work = new HashMap<>();
+        for (var origin : getOrigins())
+            work.put(origin, getTokenRanges(origin));
         
-        for (var origin : getOrigins()) {
-            int ranges = 0;
-            for (TokenRange range : tm.getTokenRanges()) {
-                Callable<Result> task = () -> {
-                    return selectCanaryForRange(origin, range, limit);
-                };
-                ranges++;
-                tasks.add(executor.submit(task));
-            }
-            results.put(origin, new Counters(ranges, 0));
-        }
+        OriginArray<Counters> results = selectRanges(work, limit);
         
-        while (!tasks.isEmpty()) {
-            tasks.stream()
-                    .filter(f -> f.isDone())
-                    .forEach((Future<Result> f) -> {
+        results.forEach((origin, counters) -> report.originSummary(origin, counters.toMap()));
+        results.forEach((origin, counters) -> out.println(String.format("%s: %s", origin, counters)));
+    }
+
+    /**
+     * Select canaries from the given ranges of each origin. A task is
+     * submitted for each range of each origin in the order and at the pace
+     * of the scheduler, results are collected and reported as soon as they
+     * complete.
+     * @param work the ranges to query by origin
+     * @param limit maximum number of canaries to select per range
+     * @return counters of the selection by origin
+     */
+    protected OriginArray<Counters> selectRanges(Map<IOrigin, ? extends Collection<TokenRange>> work, int limit) {
+        CompletionService<Result> tasks = new ExecutorCompletionService<>(executor);
+        OriginArray<Counters> results = new OriginArray<>();
+        for (var entry : work.entrySet())
+            results.put(entry.getKey(), new Counters(entry.getValue().size(), 0));
+        RangeScheduler scheduler = schedule(work);
+        progress.addTotal(scheduler.size());
+        int pending = 0;
+        
+        try {
+            while (true) {
+                for (RangeScheduler.Task task; (task = scheduler.next()) != null; pending++) {
+                    var t = task;
+                    tasks.submit(() -> {
+                        scheduledNode.set(t.node());
                         try {
-                            results.get(f.get().origin()).addCanaries(f.get().count());
-                        } catch (InterruptedException | ExecutionException ex) {
-                            LOG.log(Level.SEVERE, null, ex);
+                            return selectRange(t.origin(), t.range(), limit);
                         } finally {
-                            tasks.remove(f);
+                            scheduledNode.remove();
+                            scheduler.done(t);
                         }
                     });
+                }
+                if (pending == 0)
+                    break;
+                collect(tasks.take(), results);
+                pending--;
+                for (Future<Result> f; (f = tasks.poll()) != null; pending--)
+                    collect(f, results);
+            }
+        } catch (InterruptedException ex) {
+            LOG.log(Level.SEVERE, "Interrupted while waiting for range selections.", ex);
+            Thread.currentThread().interrupt();
         }
-        
-        results.entrySet().stream()
-                .map(e -> String.format("%s: %s", e.getKey(), e.getValue()))
-                .forEach(System.out::println);
+        return results;
     }
-    
-    private Result selectCanaryForRange(IOrigin origin, TokenRange range, int limit) {
-        var builder = Canary.builder()
-                .withOrigin(origin)
-                .withPrimaryKeyFields(helper.getPrimaryKey(origin));
-        BoundStatement stmt = getStatement(origin).bind(range.getStart(), range.getEnd(), limit);
-        LOG.fine(stmt.toString());
-        ResultSet rs = cqlSession.execute(stmt);
-        int count = 0;
-        for (Row r : rs.all()) {
-            count++;
-            for (ColumnDefinition column : r.getColumnDefinitions()) {
-                builder.withField(column.getName().asCql(true), r.getObject(column.getName()));
+
+    /**
+     * Account and report the result of a completed range selection.
+     */
+    private void collect(Future<Result> f, OriginArray<Counters> results) {
+        try {
+            Result result = f.get();
+            results.get(result.origin()).add(result);
+            report.rangeResult(result.origin(), result.range(), result.count(), result.nanos(),
+                    result.failure() == null ? null : result.failure().label() + ": " + result.error());
+        } catch (InterruptedException | ExecutionException ex) {
+            LOG.log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Select canaries from a range keeping track of progress, timing and errors.
+     * Failed queries are repeated or split into sub-ranges as permitted by
+     * the retry policy. Canaries are written as the rows arrive, a repeated
+     * or split query resumes after the partition of the canary written last.
+     */
+    protected Result selectRange(IOrigin origin, TokenRange range, int limit) {
+        progress.started();
+        long start = System.nanoTime();
+        int attempts = 0;
+        Selection current = new Selection(range);
+        selection.set(current);
+        try {
+            while (true) {
+                attempts++;
+                try {
+                    int count = attempt(origin, current, limit);
+                    progress.finished(count);
+                    return new Result(origin, range, count, System.nanoTime() - start, attempts, null, null);
+                } catch (RuntimeException ex) {
+                    Failure failure = Failure.classify(ex);
+                    RuntimeException error = ex;
+                    if (retryPolicy.shouldRetry(failure, attempts)) {
+                        LOG.log(Level.FINE, "Retrying range {0} of {1} after {2}", new Object[]{range, origin, failure});
+                        try {
+                            retryPolicy.backoff(attempts);
+                            continue;
+                        } catch (InterruptedException iex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    } else if (retryPolicy.shouldSplit(failure)) {
+                        LOG.log(Level.FINE, "Splitting range {0} of {1} after {2}", new Object[]{range, origin, failure});
+                        try {
+                            int count = split(origin, current, limit);
+                            progress.finished(count);
+                            return new Result(origin, range, count, System.nanoTime() - start, attempts, null, null);
+                        } catch (RuntimeException sex) {
+                            failure = Failure.classify(sex);
+                            error = sex;
+                        }
+                    }
+                    LOG.log(Level.SEVERE, "Failed to select canaries of " + origin + " from range " + range, error);
+                    progress.failed(current.written);
+                    return new Result(origin, range, current.written, System.nanoTime() - start, attempts, failure, error);
+                }
             }
+        } finally {
+            selection.remove();
+        }
+    }
+
+    /**
+     * Run a single attempt of selecting canaries from the part of a range
+     * not yet queried successfully.
+     * @return number of canaries of the range, including those written by
+     * previous attempts
+     */
+    private int attempt(IOrigin origin, Selection current, int limit) {
+        int written = current.written;
+        TokenRange rest = current.remaining(getTokenMap());
+        if (rest == null || written >= limit)
+            return written;
+        return written + selectCanaryForRange(origin, rest, limit - written);
+    }
+
+    /**
+     * Split the part of a range not yet queried successfully into
+     * sub-ranges, and select the remaining canaries from them.
+     * @return number of canaries of the range, including those written by
+     * previous attempts
+     */
+    private int split(IOrigin origin, Selection current, int limit) {
+        int written = current.written;
+        TokenRange rest = current.remaining(getTokenMap());
+        if (rest == null || written >= limit)
+            return written;
+        return written + selectCanaryFromSubRanges(origin, rest.splitEvenly(retryPolicy.splitOnTimeout()), limit - written);
+    }
+
+    /**
+     * Query the sub-ranges of a split range one by one until limit canaries
+     * are selected. Fails only if no canary could be selected and any of the
+     * sub-ranges failed.
+     * @param origin the origin to query
+     * @param subRanges the sub-ranges in ring order
+     * @param limit maximum number of canaries to select
+     * @return number of canaries written
+     */
+    protected int selectCanaryFromSubRanges(IOrigin origin, List<TokenRange> subRanges, int limit) {
+        Selection current = selection.get();
+        int count = 0;
+        RuntimeException error = null;
+        for (TokenRange subRange : subRanges) {
+            if (count >= limit)
+                break;
+            int written = current == null ? 0 : current.written;
             try {
-                canaryWriter.write(builder.build());
-            } catch (IncompletePrimaryKeyException ex) {
-                LOG.log(Level.SEVERE, null, ex);
+                count += selectCanaryForRange(origin, subRange, limit - count);
+            } catch (RuntimeException ex) {
+                if (current != null)
+                    count += current.written - written;
+                error = ex;
             }
+        }
+        if (count == 0 && error != null)
+            throw error;
+        return count;
+    }
+
+    /**
+     * The range a range query belongs to, as scheduled before being resumed
+     * or split on failures.
+     * @param range the token range queried
+     * @return the range scheduled, or the range queried if not run by
+     * selectRange
+     */
+    protected TokenRange scheduledRange(TokenRange range) {
+        Selection current = selection.get();
+        return current == null ? range : current.range;
+    }
+
+    /**
+     * Query a token range and write the canaries selected from its rows. The
+     * range wrapping around the ring is queried in two parts, as Cassandra
+     * returns no rows for a token restriction starting above its end.
+     * @param origin the origin to query
+     * @param range the token range to query
+     * @param limit maximum number of rows to select
+     * @return number of canaries written
+     */
+    protected int selectCanaryForRange(IOrigin origin, TokenRange range, int limit) {
+        var builder = Canary.builder()
+                .withOrigin(origin)
+                .withPrimaryKeyFields(helper.getPrimaryKey(origin));
+        var count = new AtomicInteger();
+        for (TokenRange part : range.unwrap()) {
+            if (count.get() >= limit)
+                break;
+            BoundStatement stmt = getStatement(origin)
+                    .bind(part.getStart(), part.getEnd(), limit - count.get())
+                    .setIdempotent(true);
+            stmt = route(stmt, range);
+            if (pageSize > 0)
+                stmt = stmt.setPageSize(pageSize);
+            LOG.fine(stmt.toString());
+            AsyncPaging.forEachRow(cqlSession, stmt, r -> {
+                count.addAndGet(selectCanariesFromRow(origin, r, builder));
+                return true;
+            });
+        }
+        return count.get();
+    }
+
+    /**
+     * Route a range query to the node the range was scheduled to, so the
+     * queries in flight per node are as accounted by the scheduler. Queries
+     * of ranges not scheduled by selectRanges, or scheduled to a node not up,
+     * are routed by the token of the range to any of its replicas.
+     * @param stmt the range query
+     * @param range the token range queried
+     * @return the routed query
+     */
+    protected BoundStatement route(BoundStatement stmt, TokenRange range) {
+        Node node = scheduledNode.get();
+        return node != null && node.getState() == NodeState.UP ?
+                stmt.setNode(node) :
+                stmt.setRoutingToken(range.getEnd());
+    }
+
+    /**
+     * Select the canaries of a row returned by a range query. By default, the
+     * row itself is written as canary. Override this to derive further
+     * canaries from the partition the row belongs to.
+     * @param origin the origin the row was selected from
+     * @param row a row holding the primary key columns
+     * @param builder canary builder set up with origin and primary key fields
+     * @return number of canaries written
+     */
+    protected int selectCanariesFromRow(IOrigin origin, Row row, Canary.CanaryBuilder builder) {
+        return writeCanary(row, builder) ? 1 : 0;
+    }
+
+    /**
+     * Build a canary from the columns of a row and write it. Within a range
+     * selection, the token of its partition is recorded for a failed query
+     * to be resumed after it.
+     * @param row a row holding the primary key columns
+     * @param builder canary builder set up with origin and primary key fields
+     * @return true if the canary was written
+     */
+    protected boolean writeCanary(Row row, Canary.CanaryBuilder builder) {
+        for (ColumnDefinition column : row.getColumnDefinitions()) {
+            builder.withField(column.getName().asCql(true), row.getObject(column.getName()));
+        }
+        if (isChecksumEnabled())
+            builder.withChecksum(RowChecksum.of(row, helper.getRegularColumns(originOf(row))));
+        try {
+            canaryWriter.write(builder.build());
+            Selection current = selection.get();
+            if (current != null)
+                current.wrote(tokenOf(row));
+            return true;
+        } catch (IncompletePrimaryKeyException ex) {
+            LOG.log(Level.SEVERE, null, ex);
+            return false;
+        } finally {
             builder.resetFieldValues();
         }
-        return new Result(origin, range, count);
+    }
+
+    /**
+     * @return true if canaries are to be written with checksums
+     */
+    protected boolean isChecksumEnabled() {
+        return getBooleanOption(CHECKSUM_OPTION, false);
+    }
+
+    /**
+     * Add the regular columns of an origin to a query, if checksums are
+     * enabled. All queries of rows passed to writeCanary need them.
+     * @param query a query selecting from the origin
+     * @param origin the origin queried
+     * @return the query selecting the regular columns too
+     */
+    protected Select withChecksumColumns(Select query, IOrigin origin) {
+        return isChecksumEnabled() ? query.columnsIds(helper.getRegularColumns(origin)) : query;
+    }
+
+    /**
+     * The origin a row was read from, as given by the result metadata.
+     */
+    private static IOrigin originOf(Row row) {
+        ColumnDefinition column = row.getColumnDefinitions().get(0);
+        return Origin.of(column.getKeyspace().asCql(true), column.getTable().asCql(true));
+    }
+
+    /**
+     * The token of the partition a row belongs to.
+     */
+    private Token tokenOf(Row row) {
+        var partitionKey = helper.getPartitionKey(originOf(row));
+        ByteBuffer[] values = new ByteBuffer[partitionKey.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = row.getBytesUnsafe(partitionKey.get(i));
+        return getTokenMap().newToken(values);
     }
 
     @Override
     public PreparedStatement prepareStatementFor(IOrigin origin) {
-        Select query = QueryBuilder
+        Select query = withChecksumColumns(rangeQuery(origin), origin);
+        LOG.log(Level.FINE, "Preparing for {0} statement {1}", new Object[]{origin, query});
+        return cqlSession.prepare(ExecutionProfiles.apply(cqlSession, query.build(), executionProfile));
+    }
+
+    /**
+     * Build the range query of an origin. The query selects the primary key
+     * columns and has bind markers for range start, range end and limit.
+     * @param origin the origin to query
+     * @return the range query
+     */
+    protected Select rangeQuery(IOrigin origin) {
+        return QueryBuilder
                 .selectFrom(origin.getKeyspace(), origin.getTable())
                 .columns(helper.getPrimaryKey(origin))
                 .whereTokenFromIds(helper.getPartitionKey(origin))
@@ -126,15 +422,52 @@ public class RangeSelector extends AbstractSelector {
                 .whereTokenFromIds(helper.getPartitionKey(origin))
                     .isLessThanOrEqualTo(bindMarker())
                 .limit(bindMarker());
-        LOG.log(Level.FINE, "Preparing for {0} statement {1}", new Object[]{origin, query});
-        return cqlSession.prepare(query.build());
     }
 
-    public record Result(IOrigin origin, TokenRange range, int count) {};
+    /**
+     * Represents the result of selecting canaries from a token range.
+     */
+    /**
+     * The selection of a scheduled range: the token of the partition written
+     * last and the number of canaries written by the attempts so far. Range
+     * queries return rows in ring order, so the canaries of the range not
+     * yet written follow that token.
+     */
+    private static final class Selection {
+        private final TokenRange range;
+        private Token last;
+        private int written;
+
+        Selection(TokenRange range) {
+            this.range = range;
+        }
+
+        void wrote(Token token) {
+            last = token;
+            written++;
+        }
+
+        /**
+         * @return the part of the range following the partition written
+         * last, null if nothing is left
+         */
+        TokenRange remaining(TokenMap tokenMap) {
+            if (last == null)
+                return range;
+            if (last.equals(range.getEnd()))
+                return null;
+            return tokenMap.newTokenRange(last, range.getEnd());
+        }
+    };
+
+    public record Result(IOrigin origin, TokenRange range, int count, long nanos, int attempts, Failure failure, Throwable error) {};
 
     public final class Counters {
         private final int ranges;
         private int canaries;
+        private int errors;
+        private int retries;
+        private final Map<Failure, Integer> failures = new EnumMap<>(Failure.class);
         
         public Counters(int ranges, int canaries) {
             this.ranges = ranges;
@@ -145,6 +478,15 @@ public class RangeSelector extends AbstractSelector {
             this.canaries += count;
         }
         
+        public void add(Result result) {
+            this.canaries += result.count();
+            this.retries += result.attempts() - 1;
+            if (result.failure() != null) {
+                this.errors++;
+                this.failures.merge(result.failure(), 1, Integer::sum);
+            }
+        }
+        
         public int ranges() {
             return this.ranges;
         }
@@ -152,10 +494,29 @@ public class RangeSelector extends AbstractSelector {
         public int canaries() {
             return this.canaries;
         }
+        
+        public int errors() {
+            return this.errors;
+        }
+        
+        public Map<String, Integer> toMap() {
+            Map<String, Integer> map = new LinkedHashMap<>();
+            map.put("ranges", ranges);
+            map.put("canaries", canaries);
+            map.put("errors", errors);
+            map.put("retries", retries);
+            for (Failure failure : Failure.values())
+                map.put(failure.label(), failures.getOrDefault(failure, 0));
+            return map;
+        }
 
         @Override
         public String toString() {
-            return canaries + "/" + ranges;
+            if (failures.isEmpty())
+                return canaries + "/" + ranges;
+            return canaries + "/" + ranges + " " + failures.entrySet().stream()
+                    .map(e -> e.getKey().label() + "=" + e.getValue())
+                    .collect(Collectors.joining(", ", "(", ")"));
         }
         
     };
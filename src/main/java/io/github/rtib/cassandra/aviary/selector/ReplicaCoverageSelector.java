@@ -0,0 +1,214 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.selector;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.metadata.token.TokenRange;
+import io.github.rtib.cassandra.aviary.model.IOrigin;
+import io.github.rtib.cassandra.aviary.storage.ICanaryWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Canary selector guaranteeing that every node holds replicas of at least a
+ * minimum number of canaries of each table. Instead of querying every token
+ * range, ranges are queried in rounds. Each round greedily picks the ranges
+ * whose replicas cover most of the nodes still lacking canaries, so full node
+ * coverage is reached with as few range queries as possible. Rounds are
+ * repeated until every node is covered or no range is left to query.
+ * 
+ * The minimum number of canaries per node is set by the selector option
+ * min-canaries-per-node, which defaults to 1.
+ * 
+ * @author repasi
+ */
+public class ReplicaCoverageSelector extends RangeSelector {
+
+    private static final Logger LOG = Logger.getLogger(ReplicaCoverageSelector.class.getName());
+
+    /**
+     * Name of the option setting the minimum number of canaries per node.
+     */
+    public static final String MIN_CANARIES_OPTION = "min-canaries-per-node";
+
+    public ReplicaCoverageSelector(CqlSession cqlSession, ICanaryWriter writer) {
+        super(cqlSession, writer);
+    }
+
+    @Override
+    public void executeSelectCanaries() {
+        TokenMap tm = getTokenMap();
+        int minCanaries = getIntOption(MIN_CANARIES_OPTION, 1);
+
+        Map<IOrigin, Future<Coverage>> coverages = new LinkedHashMap<>();
+        for (var origin : getOrigins())
+            coverages.put(origin, executor.submit(() -> cover(tm, origin, minCanaries)));
+
+        for (var e : coverages.entrySet()) {
+            try {
+                Coverage coverage = e.getValue().get();
+                report.originSummary(e.getKey(), coverage.toMap());
+                out.println(String.format("%s: %s", e.getKey(), coverage));
+            } catch (InterruptedException | ExecutionException ex) {
+                LOG.log(Level.SEVERE, "Failed to select canaries of " + e.getKey(), ex);
+            }
+        }
+    }
+
+    /**
+     * Select canaries of an origin until every replica node is covered.
+     */
+    private Coverage cover(TokenMap tm, IOrigin origin, int minCanaries) throws InterruptedException, ExecutionException {
+        CqlIdentifier keyspace = CqlIdentifier.fromCql(origin.getKeyspace());
+        Map<TokenRange, Set<Node>> replicas = new HashMap<>();
+        List<TokenRange> remaining = new ArrayList<>();
+        for (TokenRange range : getTokenRanges(origin)) {
+            replicas.put(range, tm.getReplicas(keyspace, range));
+            remaining.add(range);
+        }
+        Coverage coverage = new Coverage(replicas, minCanaries);
+
+        while (!coverage.isComplete() && !remaining.isEmpty()) {
+            List<TokenRange> batch = planRound(remaining, replicas, coverage.missing());
+            if (batch.isEmpty())
+                break;
+            remaining.removeAll(batch);
+            progress.addTotal(batch.size());
+            List<Future<Result>> results = new ArrayList<>(batch.size());
+            for (TokenRange range : batch)
+                results.add(executor.submit(() -> selectRange(origin, range, limit)));
+            for (Future<Result> f : results) {
+                Result result = f.get();
+                coverage.add(result, replicas.get(result.range()));
+                report.rangeResult(origin, result.range(), result.count(), result.nanos(),
+                        result.failure() == null ? null : result.failure().label() + ": " + result.error());
+            }
+            LOG.log(Level.FINE, "{0} after round of {1} ranges: {2}", new Object[]{origin, batch.size(), coverage});
+        }
+        return coverage;
+    }
+
+    /**
+     * Greedily pick ranges covering the missing canaries of nodes, assuming
+     * each range query will succeed. Ranges are considered in ring order, so
+     * the plan is deterministic.
+     */
+    private List<TokenRange> planRound(List<TokenRange> remaining, Map<TokenRange, Set<Node>> replicas, Map<Node, Integer> missing) {
+        List<TokenRange> batch = new ArrayList<>();
+        List<TokenRange> available = new ArrayList<>(remaining);
+        while (!missing.isEmpty()) {
+            int bestIndex = -1;
+            int bestGain = 0;
+            for (int i = 0; i < available.size(); i++) {
+                int gain = 0;
+                for (Node node : replicas.get(available.get(i)))
+                    gain += Math.min(limit, missing.getOrDefault(node, 0));
+                if (gain > bestGain) {
+                    bestIndex = i;
+                    bestGain = gain;
+                }
+            }
+            if (bestIndex < 0)
+                break;
+            TokenRange best = available.remove(bestIndex);
+            batch.add(best);
+            for (Node node : replicas.get(best))
+                missing.computeIfPresent(node, (n, m) -> m > limit ? m - limit : null);
+        }
+        return batch;
+    }
+
+    /**
+     * Number of canaries each node holds replicas of.
+     */
+    private static final class Coverage {
+        private final Map<Node, Integer> canaries = new HashMap<>();
+        private final int minCanaries;
+        private final int ranges;
+        private int queried;
+        private int selected;
+        private int errors;
+
+        private Coverage(Map<TokenRange, Set<Node>> replicas, int minCanaries) {
+            this.minCanaries = minCanaries;
+            this.ranges = replicas.size();
+            for (Set<Node> nodes : replicas.values())
+                for (Node node : nodes)
+                    canaries.put(node, 0);
+        }
+
+        private void add(Result result, Set<Node> replicas) {
+            queried++;
+            selected += result.count();
+            if (result.failure() != null)
+                errors++;
+            for (Node node : replicas)
+                canaries.merge(node, result.count(), Integer::sum);
+        }
+
+        private boolean isComplete() {
+            return canaries.values().stream().allMatch(c -> c >= minCanaries);
+        }
+
+        private Map<Node, Integer> missing() {
+            Map<Node, Integer> missing = new HashMap<>();
+            canaries.forEach((node, count) -> {
+                if (count < minCanaries)
+                    missing.put(node, minCanaries - count);
+            });
+            return missing;
+        }
+
+        private long covered(Set<Node> nodes) {
+            return nodes.stream().filter(n -> canaries.get(n) >= minCanaries).count();
+        }
+
+        public Map<String, Integer> toMap() {
+            Map<String, Integer> map = new LinkedHashMap<>();
+            map.put("ranges", ranges);
+            map.put("queried", queried);
+            map.put("canaries", selected);
+            map.put("errors", errors);
+            map.put("nodes", canaries.size());
+            map.put("coveredNodes", (int) covered(canaries.keySet()));
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            Map<String, Set<Node>> byDc = canaries.keySet().stream()
+                    .collect(Collectors.groupingBy(n -> String.valueOf(n.getDatacenter()), TreeMap::new, Collectors.toSet()));
+            return selected + "/" + queried + " of " + ranges + " ranges, nodes "
+                    + covered(canaries.keySet()) + "/" + canaries.size()
+                    + byDc.entrySet().stream()
+                            .map(e -> e.getKey() + " " + covered(e.getValue()) + "/" + e.getValue().size())
+                            .collect(Collectors.joining(", ", " (", ")"));
+        }
+    }
+}
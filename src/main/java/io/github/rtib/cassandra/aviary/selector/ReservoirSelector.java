@@ -0,0 +1,173 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.selector;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.metadata.token.TokenRange;
+import io.github.rtib.cassandra.aviary.model.IOrigin;
+import io.github.rtib.cassandra.aviary.storage.Canary;
+import io.github.rtib.cassandra.aviary.storage.ICanaryWriter;
+import io.github.rtib.cassandra.aviary.utils.AsyncPaging;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Canary selector sampling the rows of each token range uniformly. Up to
+ * max-scan-rows rows (selector option, default 1000) of a range are scanned
+ * page by page, and limit of them are kept by reservoir sampling, i.e. every
+ * row scanned has the same chance to become a canary.
+ *
+ * The random generator of each range is derived from the seed, the origin
+ * and the range as scheduled, so the same seed selects the same canaries
+ * from unchanged data, independent of the order ranges are processed in and
+ * of ranges split on timeouts.
+ *
+ * @author repasi
+ */
+public class ReservoirSelector extends RangeSelector {
+
+    private static final Logger LOG = Logger.getLogger(ReservoirSelector.class.getName());
+
+    /**
+     * Name of the option limiting the rows scanned per range.
+     */
+    public static final String MAX_SCAN_ROWS_OPTION = "max-scan-rows";
+
+    public ReservoirSelector(CqlSession cqlSession, ICanaryWriter writer) {
+        super(cqlSession, writer);
+    }
+
+    @Override
+    public void executeSelectCanaries() {
+        LOG.log(Level.INFO, "Sampling canaries with seed {0}", Long.toString(seed));
+        super.executeSelectCanaries();
+    }
+
+    @Override
+    protected int selectCanaryForRange(IOrigin origin, TokenRange range, int limit) {
+        Reservoir reservoir = new Reservoir(origin, scheduledRange(range), limit);
+        // the range wrapping around the ring is scanned in two parts
+        for (TokenRange part : range.unwrap())
+            reservoir.scan(range, part);
+        return reservoir.select();
+    }
+
+    /**
+     * Sample the sub-ranges of a split range by a single reservoir, seeded by
+     * the range as scheduled. The rows are scanned in the same order as by
+     * an unsplit range query, so splitting does not change the canaries
+     * selected. Sub-ranges failing are skipped, the selection fails only if
+     * no row could be scanned.
+     */
+    @Override
+    protected int selectCanaryFromSubRanges(IOrigin origin, List<TokenRange> subRanges, int limit) {
+        Reservoir reservoir = new Reservoir(origin, scheduledRange(subRanges.get(0)), limit);
+        RuntimeException error = null;
+        for (TokenRange subRange : subRanges) {
+            for (TokenRange part : subRange.unwrap()) {
+                try {
+                    reservoir.scan(subRange, part);
+                } catch (RuntimeException ex) {
+                    error = ex;
+                }
+            }
+        }
+        if (reservoir.seen == 0 && error != null)
+            throw error;
+        return reservoir.select();
+    }
+
+    /**
+     * Derive the seed of a range from the selector seed. Only stable values
+     * are mixed in, hash codes of strings are specified, the hash codes of
+     * driver objects are not.
+     */
+    private long rangeSeed(IOrigin origin, TokenRange range) {
+        long h = seed;
+        h = h * 31 + origin.getKeyspace().hashCode();
+        h = h * 31 + origin.getTable().hashCode();
+        h = h * 31 + getTokenMap().format(range.getStart()).hashCode();
+        h = h * 31 + getTokenMap().format(range.getEnd()).hashCode();
+        return h;
+    }
+
+    /**
+     * The rows of a range sampled so far, keeping limit of up to
+     * max-scan-rows rows scanned.
+     */
+    private final class Reservoir {
+        private final IOrigin origin;
+        private final int limit;
+        private final int budget;
+        private final SplittableRandom random;
+        private final List<Row> rows;
+        private long seen = 0;
+
+        Reservoir(IOrigin origin, TokenRange range, int limit) {
+            this.origin = origin;
+            this.limit = limit;
+            this.budget = Math.max(limit, getIntOption(MAX_SCAN_ROWS_OPTION, 1000));
+            this.random = new SplittableRandom(rangeSeed(origin, range));
+            this.rows = new ArrayList<>(limit);
+        }
+
+        /**
+         * Scan the rows of a part of a token range not wrapping around the
+         * ring, until the budget is exhausted.
+         */
+        void scan(TokenRange range, TokenRange part) {
+            if (seen >= budget)
+                return;
+            BoundStatement stmt = getStatement(origin)
+                    .bind(part.getStart(), part.getEnd(), (int) (budget - seen))
+                    .setIdempotent(true);
+            stmt = route(stmt, range);
+            if (pageSize > 0)
+                stmt = stmt.setPageSize(pageSize);
+            LOG.fine(stmt.toString());
+            AsyncPaging.forEachRow(cqlSession, stmt, r -> {
+                long i = seen++;
+                if (i < limit) {
+                    rows.add(r);
+                } else {
+                    long j = random.nextLong(i + 1);
+                    if (j < limit)
+                        rows.set((int) j, r);
+                }
+                return true;
+            });
+        }
+
+        /**
+         * Write the canaries of the rows kept.
+         * @return number of canaries written
+         */
+        int select() {
+            var builder = Canary.builder()
+                    .withOrigin(origin)
+                    .withPrimaryKeyFields(helper.getPrimaryKey(origin));
+            int count = 0;
+            for (Row row : rows)
+                count += selectCanariesFromRow(origin, row, builder);
+            return count;
+        }
+    }
+}
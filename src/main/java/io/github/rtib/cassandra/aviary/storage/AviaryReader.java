@@ -18,6 +18,7 @@ package io.github.rtib.cassandra.aviary.storage;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.rtib.cassandra.aviary.model.ICanary;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
@@ -36,6 +37,12 @@ public final class AviaryReader implements Iterable<ICanary> {
     private final ObjectMapper mapper;
     private final File aviaryFile;
 
+    /**
+     * Iterator over the canaries of an aviary, holding the file open until
+     * it is closed.
+     */
+    public interface Cursor extends Iterator<ICanary>, Closeable {}
+
     /**
      * Construct a reader object. The aviaryFile is a JSON file containing a
      * stream of ICanary objects.
@@ -58,19 +65,28 @@ public final class AviaryReader implements Iterable<ICanary> {
         return new AviaryReader(aviaryFile);
     }
 
+    /**
+     * Open the aviary for iterating over its canaries.
+     * @return a cursor over the canaries, to be closed by the caller
+     * @throws IOException if the file cannot be opened
+     */
+    public Cursor open() throws IOException {
+        var parser = mapper.getFactory().createParser(aviaryFile)
+                .configure(JsonParser.Feature.ALLOW_COMMENTS, true);
+        return new CanaryIterator(mapper, parser);
+    }
+
     @Override
     public Iterator<ICanary> iterator() {
         try {
-            var parser = mapper.getFactory().createParser(aviaryFile)
-                    .configure(JsonParser.Feature.ALLOW_COMMENTS, true);
-            return new CanaryIterator(mapper, parser);
+            return open();
         } catch (IOException ex) {
             Logger.getLogger(AviaryReader.class.getName()).log(Level.SEVERE, null, ex);
             return null;
         }
     }
 
-    private static class CanaryIterator implements Iterator<ICanary> {
+    private static class CanaryIterator implements Cursor {
 
         private final JsonParser parser;
         private final ObjectMapper mapper;
@@ -97,5 +113,10 @@ public final class AviaryReader implements Iterable<ICanary> {
             }
             return canary;
         }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
     }
 }
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.storage;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * External sort of canaries by a string key. Canaries written to the sorter
+ * are buffered in memory up to a maximum number, then sorted and spilled to a
+ * temporary aviary file. Finally, the spilled files and the buffer are merged
+ * in key order, so any number of canaries can be sorted with bounded memory.
+ * At most a maximum number of files are merged at once, more spilled files are
+ * merged in passes of consecutive files before.
+ *
+ * Canaries with equal keys are kept in order of writing. Unless the sorter
+ * keeps duplicates, they are passed to the sink only once, keeping the canary
+ * written first.
+ * @see AviaryWriter
+ * @see AviaryReader
+ * @author repasi
+ */
+public final class AviarySorter implements ICanaryWriter, Closeable, AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(AviarySorter.class.getName());
+
+    /**
+     * Default of the maximum number of files merged at once.
+     */
+    public static final int DEFAULT_MAX_FAN_IN = 64;
+    private static final ObjectWriter KEY_WRITER = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+            .writer();
+
+    /**
+     * Receiver of the sorted canaries.
+     */
+    @FunctionalInterface
+    public interface Sink {
+        /**
+         * Receive the next canary in key order.
+         * @param key the key of the canary
+         * @param canary the canary
+         * @throws IOException if the canary cannot be stored
+         */
+        void accept(String key, ICanary canary) throws IOException;
+    }
+
+    private final Function<ICanary, String> key;
+    private final int maxInMemory;
+    private final File tmpDir;
+    private final boolean distinct;
+    private final int maxFanIn;
+    private final List<Entry> buffer;
+    private final List<File> spills = new ArrayList<>();
+    private long written;
+    private long duplicates;
+
+    /**
+     * Create a sorter dropping duplicate keys.
+     * @param key function computing the sort key of a canary
+     * @param maxInMemory maximum number of canaries kept in memory
+     * @param tmpDir directory of the spill files, null for the system default
+     */
+    public AviarySorter(Function<ICanary, String> key, int maxInMemory, File tmpDir) {
+        this(key, maxInMemory, tmpDir, true);
+    }
+
+    /**
+     * Create a sorter.
+     * @param key function computing the sort key of a canary, it has to
+     * return the same key for a canary read back from a spill file
+     * @param maxInMemory maximum number of canaries kept in memory
+     * @param tmpDir directory of the spill files, null for the system default
+     * @param distinct true to drop canaries of duplicate keys
+     */
+    public AviarySorter(Function<ICanary, String> key, int maxInMemory, File tmpDir, boolean distinct) {
+        this(key, maxInMemory, tmpDir, distinct, DEFAULT_MAX_FAN_IN);
+    }
+
+    /**
+     * Create a sorter merging a given maximum number of files at once.
+     * @param key function computing the sort key of a canary, it has to
+     * return the same key for a canary read back from a spill file
+     * @param maxInMemory maximum number of canaries kept in memory
+     * @param tmpDir directory of the spill files, null for the system default
+     * @param distinct true to drop canaries of duplicate keys
+     * @param maxFanIn maximum number of files open while merging, at least 2
+     */
+    public AviarySorter(Function<ICanary, String> key, int maxInMemory, File tmpDir, boolean distinct, int maxFanIn) {
+        this.key = key;
+        this.maxInMemory = Math.max(1, maxInMemory);
+        this.tmpDir = tmpDir;
+        this.distinct = distinct;
+        this.maxFanIn = Math.max(2, maxFanIn);
+        this.buffer = new ArrayList<>(Math.min(this.maxInMemory, 1 << 16));
+    }
+
+    /**
+     * The key identifying a canary: its origin and its primary key values
+     * in order of the primary key field names.
+     * @param canary the canary
+     * @return the identifying key
+     */
+    public static String canonicalKey(ICanary canary) {
+        try {
+            return canary.getOrigin() + "\u0000" + KEY_WRITER.writeValueAsString(canary.getIdentifier());
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void write(ICanary canary) {
+        buffer.add(new Entry(key.apply(canary), canary, 0));
+        written++;
+        if (buffer.size() >= maxInMemory) {
+            try {
+                spill();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /**
+     * Pass all canaries written to the sink in key order, dropping duplicate
+     * keys if the sorter is distinct.
+     * @param sink receiver of the sorted canaries
+     * @throws IOException if reading a spill file or storing a canary fails
+     */
+    public void merge(Sink sink) throws IOException {
+        buffer.sort(Comparator.comparing(Entry::key));
+        // the buffer takes one of the sources of the final merge
+        while (spills.size() >= maxFanIn)
+            mergeSpills();
+        merge(spills, buffer.stream().map(Entry::canary).iterator(), sink);
+    }
+
+    /**
+     * @return number of canaries written to the sorter
+     */
+    public long written() {
+        return written;
+    }
+
+    /**
+     * @return number of canaries dropped by merge as duplicates
+     */
+    public long duplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Delete the spill files.
+     */
+    @Override
+    public void close() {
+        buffer.clear();
+        delete(spills);
+        spills.clear();
+    }
+
+    private static void delete(List<File> files) {
+        for (File file : files)
+            if (!file.delete())
+                LOG.log(Level.WARNING, "Failed to delete spill file {0}", file);
+    }
+
+    /**
+     * Merge runs of up to maxFanIn consecutive spill files into one file
+     * each. A merged file takes the place of its run, so the spill files stay
+     * in order of writing and every file is deleted on close.
+     */
+    private void mergeSpills() throws IOException {
+        for (int first = 0; first < spills.size() - 1; first++) {
+            List<File> run = new ArrayList<>(spills.subList(first, Math.min(first + maxFanIn, spills.size())));
+            File merged = newSpillFile();
+            spills.add(first, merged);
+            LOG.log(Level.FINE, "Merging {0} spill files to {1}", new Object[]{run.size(), merged});
+            try (var writer = new AviaryWriter(merged)) {
+                merge(run, null, (k, canary) -> writer.write(canary));
+            }
+            spills.subList(first + 1, first + 1 + run.size()).clear();
+            delete(run);
+        }
+    }
+
+    /**
+     * Merge spill files and canaries in memory, both sorted by key, to the
+     * sink. The spill files are open until the merge ends.
+     * @param files the spill files in order of writing
+     * @param memory canaries sorted in memory, written after the files, or null
+     * @param sink receiver of the sorted canaries
+     */
+    private void merge(List<File> files, Iterator<ICanary> memory, Sink sink) throws IOException {
+        List<Iterator<ICanary>> sources = new ArrayList<>();
+        try {
+            for (File file : files)
+                sources.add(new AviaryReader(file).open());
+            if (memory != null)
+                sources.add(memory);
+
+            // ties are broken by source, spills are in order of writing
+            PriorityQueue<Entry> heads = new PriorityQueue<>(
+                    Comparator.comparing(Entry::key).thenComparingInt(Entry::source));
+            for (int i = 0; i < sources.size(); i++)
+                advance(sources, i, heads);
+            String last = null;
+            while (!heads.isEmpty()) {
+                Entry head = heads.poll();
+                if (distinct && head.key().equals(last))
+                    duplicates++;
+                else
+                    sink.accept(head.key(), head.canary());
+                last = head.key();
+                advance(sources, head.source(), heads);
+            }
+        } finally {
+            for (Iterator<ICanary> source : sources)
+                if (source instanceof AviaryReader.Cursor cursor)
+                    cursor.close();
+        }
+    }
+
+    private void advance(List<Iterator<ICanary>> sources, int source, PriorityQueue<Entry> heads) {
+        Iterator<ICanary> it = sources.get(source);
+        while (it.hasNext()) {
+            ICanary canary = it.next();
+            if (canary != null) {
+                heads.add(new Entry(key.apply(canary), canary, source));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sort the buffer and write it to a new spill file. The sort is stable,
+     * so the first of equal keys stays first.
+     */
+    private void spill() throws IOException {
+        buffer.sort(Comparator.comparing(Entry::key));
+        File spill = newSpillFile();
+        spills.add(spill);
+        LOG.log(Level.FINE, "Spilling {0} canaries to {1}", new Object[]{buffer.size(), spill});
+        try (var writer = new AviaryWriter(spill)) {
+            for (Entry entry : buffer)
+                writer.write(entry.canary());
+        }
+        buffer.clear();
+    }
+
+    private File newSpillFile() throws IOException {
+        File spill = File.createTempFile("aviary-", ".spill", tmpDir);
+        spill.deleteOnExit();
+        return spill;
+    }
+
+    private record Entry(String key, ICanary canary, int source) {};
+}
@@ -26,13 +26,15 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.Flushable;
 import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * An implementation of ICanaryWriter storing canaries in an aviary. An
  * aviary is considered a file storing a stream of Canary objects serialized
- * as JSON. This writer is thread safe.
+ * as JSON. This writer is thread safe, canaries are serialized concurrently
+ * and only writing the serialized bytes is guarded by a lock.
  * @author repasi
  */
 public class AviaryWriter implements ICanaryWriter, Flushable, Closeable, AutoCloseable {
@@ -41,6 +43,7 @@ public class AviaryWriter implements ICanaryWriter, Flushable, Closeable, AutoCl
 
     private final BufferedOutputStream out;
     private final ObjectWriter writer;
+    private final ReentrantLock lock = new ReentrantLock();
 
     /**
      * Create of rewrite a file to which Canary objects can be written.
@@ -57,9 +60,15 @@ public class AviaryWriter implements ICanaryWriter, Flushable, Closeable, AutoCl
     }
     
     @Override
-    public synchronized void write(ICanary canary) {
+    public void write(ICanary canary) {
         try {
-            writer.writeValue(out, canary);
+            byte[] bytes = writer.writeValueAsBytes(canary);
+            lock.lock();
+            try {
+                out.write(bytes);
+            } finally {
+                lock.unlock();
+            }
         } catch (IOException ex) {
             LOG.log(Level.SEVERE, "Failed to store canary", ex);
         }
@@ -67,11 +76,21 @@ public class AviaryWriter implements ICanaryWriter, Flushable, Closeable, AutoCl
 
     @Override
     public void flush() throws IOException {
-        out.flush();
+        lock.lock();
+        try {
+            out.flush();
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void close() throws IOException {
-        out.close();
+        lock.lock();
+        try {
+            out.close();
+        } finally {
+            lock.unlock();
+        }
     }
 }
@@ -15,6 +15,7 @@
  */
 package io.github.rtib.cassandra.aviary.storage;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.github.rtib.cassandra.aviary.model.ICanary;
 import io.github.rtib.cassandra.aviary.model.IOrigin;
 import java.util.HashMap;
@@ -31,10 +32,27 @@ import java.util.Set;
 public final class Canary implements ICanary {
     private final Origin origin;
     private final Map<String,Object> identifier;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final String probe;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final Long rowCount;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final String checksum;
 
     public Canary(final String keyspace, final String table, final Map<String,Object> identifier) {
-        this.origin = new Origin(keyspace, table);
+        this(keyspace, table, identifier, null, null, null);
+    }
+
+    public Canary(final String keyspace, final String table, final Map<String,Object> identifier, final String probe, final Long rowCount) {
+        this(keyspace, table, identifier, probe, rowCount, null);
+    }
+
+    public Canary(final String keyspace, final String table, final Map<String,Object> identifier, final String probe, final Long rowCount, final String checksum) {
+        this.origin = Origin.of(keyspace, table);
         this.identifier = Map.copyOf(identifier);
+        this.probe = probe;
+        this.rowCount = rowCount;
+        this.checksum = checksum;
     }
 
     @Override
@@ -47,14 +65,35 @@ public final class Canary implements ICanary {
         return Map.copyOf(identifier);
     }
 
+    @Override
+    public String getProbe() {
+        return probe;
+    }
+
+    @Override
+    public Long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public String getChecksum() {
+        return checksum;
+    }
+
     @Override
     public String toString() {
-        return "Canary{" + "Origin=" + origin + ", PrimaryKey=" + identifier + "}";
+        return "Canary{" + "Origin=" + origin + ", PrimaryKey=" + identifier
+                + (probe == null ? "" : ", Probe=" + probe)
+                + (rowCount == null ? "" : ", RowCount=" + rowCount)
+                + (checksum == null ? "" : ", Checksum=" + checksum) + "}";
     }
     
     protected Canary() {
         this.origin = null;
         this.identifier = null;
+        this.probe = null;
+        this.rowCount = null;
+        this.checksum = null;
     }
 
     /**
@@ -74,21 +113,64 @@ public final class Canary implements ICanary {
         private String table;
         private final Set<String> pkFields;
         private Map<String,Object> pkValues;
+        private String probe;
+        private Long rowCount;
+        private String checksum;
 
         public CanaryBuilder() {
             keyspace = null;
             table = null;
             pkFields = new HashSet<>();
             pkValues = new HashMap<>();
+            probe = null;
+            rowCount = null;
+            checksum = null;
         }
 
         /**
-         * Reset all previously stored field values.
+         * Reset all previously stored field values, the probe marker, the
+         * row count and the checksum.
          * 
          * @return this builder instance
          */
         public CanaryBuilder resetFieldValues() {
             pkValues = new HashMap<>();
+            probe = null;
+            rowCount = null;
+            checksum = null;
+            return this;
+        }
+        
+        /**
+         * Set the checksum of the regular columns of the canary row.
+         * 
+         * @param checksum checksum as hex digits
+         * @return this builder instance
+         */
+        public CanaryBuilder withChecksum(final String checksum) {
+            this.checksum = checksum;
+            return this;
+        }
+        
+        /**
+         * Set the number of rows of the partition the canary belongs to.
+         * 
+         * @param rowCount number of rows counted
+         * @return this builder instance
+         */
+        public CanaryBuilder withRowCount(final long rowCount) {
+            this.rowCount = rowCount;
+            return this;
+        }
+        
+        /**
+         * Mark the canary as probe of a specific read path.
+         * 
+         * @param probe name of the probe
+         * @return this builder instance
+         */
+        public CanaryBuilder withProbe(final String probe) {
+            this.probe = probe;
             return this;
         }
 
@@ -167,7 +249,7 @@ public final class Canary implements ICanary {
             if (!pkValues.keySet().equals(pkFields))
                 throw new IncompletePrimaryKeyException();
 
-            return new Canary(keyspace, table, pkValues);
+            return new Canary(keyspace, table, pkValues, probe, rowCount, checksum);
         }
     }
 
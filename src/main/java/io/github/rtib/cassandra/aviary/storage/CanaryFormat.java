@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.storage;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import java.io.UncheckedIOException;
+import java.util.function.Function;
+
+/**
+ * Text representations of canaries, one line per canary.
+ * @author repasi
+ */
+public enum CanaryFormat {
+    /** The string representation of the canary. */
+    TEXT,
+    /** JSON lines, each line is an aviary entry. */
+    JSON,
+    /** Comma separated values, the primary key is a JSON object. */
+    CSV,
+    /**
+     * A CQL statement selecting the row of the canary, the values are
+     * formatted by the column types of the connected cluster.
+     */
+    CQL;
+
+    /**
+     * @return the first line of the output, null if the format has no header
+     */
+    public String header() {
+        return this == CSV ? "keyspace,table,primary_key,probe,row_count,checksum" : null;
+    }
+
+    /**
+     * Format a canary.
+     * @param canary the canary
+     * @param statements renders the statement selecting a canary, used by
+     * the CQL format only
+     * @return the line representing the canary, without line separator
+     */
+    public String format(ICanary canary, Function<ICanary, String> statements) {
+        return switch (this) {
+            case TEXT -> canary.toString();
+            case JSON -> json(canary);
+            case CSV -> String.join(",",
+                    csv(canary.getOrigin().getKeyspace()),
+                    csv(canary.getOrigin().getTable()),
+                    csv(json(canary.getIdentifier())),
+                    csv(canary.getProbe() == null ? "" : canary.getProbe()),
+                    canary.getRowCount() == null ? "" : canary.getRowCount().toString(),
+                    canary.getChecksum() == null ? "" : canary.getChecksum());
+            case CQL -> statements.apply(canary);
+        };
+    }
+
+    private static String json(Object value) {
+        try {
+            return Json.WRITER.writeValueAsString(value);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static String csv(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0)
+            return field;
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Holder of the JSON writer, Jackson is initialized on first use only,
+     * not when picocli parses a format option.
+     */
+    private static final class Json {
+        private static final ObjectWriter WRITER = new ObjectMapper()
+                .registerModule(new Jdk8Module())
+                .writer();
+    }
+}
@@ -15,33 +15,66 @@
  */
 package io.github.rtib.cassandra.aviary.storage;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import io.github.rtib.cassandra.aviary.model.IOrigin;
 import java.util.Objects;
 
 /**
  * Class representing the origin of a canary. An object is holding keyspace and
- * table names as represented in CQL.
+ * table names as represented in CQL. Origins are interned by the
+ * OriginRegistry, which assigns each distinct origin a dense integer id, so
+ * there is a single instance per keyspace and table.
  * 
+ * @see OriginRegistry
  * @author repasi
  */
 public final class Origin implements IOrigin {
     private final String keyspace;
     private final String table;
+    private final int id;
+    private final int hash;
 
     /**
-     * Create a new instance.
+     * Create a new instance, only to be called by the registry.
      * 
      * @param keyspace name of the keyspace as represented in CQL
      * @param table name of the table as represented in CQL
+     * @param id the id assigned by the registry
      */
-    public Origin(final String keyspace, final String table) {
+    Origin(final String keyspace, final String table, final int id) {
         this.keyspace = keyspace;
         this.table = table;
+        this.id = id;
+        int h = 7;
+        h = 37 * h + Objects.hashCode(keyspace);
+        h = 37 * h + Objects.hashCode(table);
+        this.hash = h;
     }
 
-    protected Origin() {
-        this.keyspace = null;
-        this.table = null;
+    /**
+     * Get the interned origin of a keyspace and table. Used by Jackson to
+     * deserialize origins, so reading an aviary does not keep an origin
+     * instance per canary.
+     * 
+     * @param keyspace name of the keyspace as represented in CQL
+     * @param table name of the table as represented in CQL
+     * @return the interned origin
+     */
+    @JsonCreator
+    public static Origin of(@JsonProperty("keyspace") final String keyspace, @JsonProperty("table") final String table) {
+        return OriginRegistry.intern(keyspace, table);
+    }
+
+    /**
+     * Get the interned origin equal to any origin.
+     * 
+     * @param origin an origin
+     * @return the interned origin
+     */
+    public static Origin of(final IOrigin origin) {
+        return origin instanceof Origin o ? o : of(origin.getKeyspace(), origin.getTable());
     }
     
     @Override
@@ -53,6 +86,16 @@ public final class Origin implements IOrigin {
     public String getTable() {
         return table;
     }
+
+    /**
+     * The dense id of the origin, suitable as array index.
+     * 
+     * @return id assigned by the registry
+     */
+    @JsonIgnore
+    public int getId() {
+        return id;
+    }
     
     @Override
     public String toString() {
@@ -61,9 +104,6 @@ public final class Origin implements IOrigin {
 
     @Override
     public int hashCode() {
-        int hash = 7;
-        hash = 37 * hash + Objects.hashCode(this.keyspace);
-        hash = 37 * hash + Objects.hashCode(this.table);
         return hash;
     }
 
@@ -79,6 +119,9 @@ public final class Origin implements IOrigin {
             return false;
         }
         final Origin other = (Origin) obj;
+        if (this.id != other.id) {
+            return false;
+        }
         if (!Objects.equals(this.keyspace, other.keyspace)) {
             return false;
         }
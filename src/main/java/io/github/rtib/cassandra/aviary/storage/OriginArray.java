@@ -0,0 +1,111 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.storage;
+
+import io.github.rtib.cassandra.aviary.model.IOrigin;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Map of origins to values, indexed by the id of the interned origin. Looking
+ * up an interned origin is an array access, without hashing its names. This
+ * class is not thread-safe.
+ * 
+ * @param <V> type of the values
+ * @see OriginRegistry
+ * @author repasi
+ */
+public final class OriginArray<V> {
+
+    private Origin[] origins;
+    private Object[] values;
+    private int size;
+
+    public OriginArray() {
+        int capacity = Math.max(16, OriginRegistry.size());
+        this.origins = new Origin[capacity];
+        this.values = new Object[capacity];
+    }
+
+    /**
+     * Get the value of an origin.
+     * @param origin the origin
+     * @return the value, null if none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(final IOrigin origin) {
+        int id = Origin.of(origin).getId();
+        return id < values.length ? (V) values[id] : null;
+    }
+
+    /**
+     * Set the value of an origin.
+     * @param origin the origin
+     * @param value the value
+     */
+    public void put(final IOrigin origin, final V value) {
+        Origin o = Origin.of(origin);
+        ensureCapacity(o.getId());
+        if (origins[o.getId()] == null)
+            size++;
+        origins[o.getId()] = o;
+        values[o.getId()] = value;
+    }
+
+    /**
+     * Get the value of an origin, or set it to the result of the function
+     * if none.
+     * @param origin the origin
+     * @param function function computing the value of an origin
+     * @return the existing or computed value
+     */
+    public V computeIfAbsent(final IOrigin origin, final Function<? super Origin, ? extends V> function) {
+        V value = get(origin);
+        if (value == null) {
+            value = function.apply(Origin.of(origin));
+            put(origin, value);
+        }
+        return value;
+    }
+
+    /**
+     * @return number of origins having a value
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Pass every origin having a value and its value to an action, in order
+     * of origin ids.
+     * @param action the action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(final BiConsumer<? super Origin, ? super V> action) {
+        for (int i = 0; i < origins.length; i++)
+            if (origins[i] != null)
+                action.accept(origins[i], (V) values[i]);
+    }
+
+    private void ensureCapacity(int id) {
+        if (id < origins.length)
+            return;
+        int capacity = Math.max(id + 1, origins.length * 2);
+        origins = Arrays.copyOf(origins, capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.storage;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry interning Origin instances. Each distinct pair of keyspace and
+ * table gets a single Origin instance with a dense id, numbered from zero in
+ * order of registration. The ids allow to keep per-origin state in arrays
+ * instead of hash maps.
+ * 
+ * @see Origin
+ * @see OriginArray
+ * @author repasi
+ */
+public final class OriginRegistry {
+
+    private static final ConcurrentHashMap<String, ConcurrentHashMap<String, Origin>> ORIGINS = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private OriginRegistry() {
+    }
+
+    /**
+     * Get the origin of a keyspace and table, registering it if not yet known.
+     * @param keyspace name of the keyspace as represented in CQL
+     * @param table name of the table as represented in CQL
+     * @return the interned origin
+     */
+    public static Origin intern(final String keyspace, final String table) {
+        ConcurrentHashMap<String, Origin> tables = ORIGINS.get(keyspace);
+        if (tables == null)
+            tables = ORIGINS.computeIfAbsent(keyspace, k -> new ConcurrentHashMap<>());
+        Origin origin = tables.get(table);
+        if (origin == null)
+            origin = tables.computeIfAbsent(table, t -> new Origin(keyspace, t, NEXT_ID.getAndIncrement()));
+        return origin;
+    }
+
+    /**
+     * @return number of origins registered, i.e. the upper bound of ids
+     */
+    public static int size() {
+        return NEXT_ID.get();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Predicate;
+
+/**
+ * Helper to process query results page by page. Only the current page and the
+ * next one being fetched are held in memory, regardless of the number of rows
+ * a query returns.
+ * @author repasi
+ */
+public final class AsyncPaging {
+
+    private AsyncPaging() {
+    }
+
+    /**
+     * Execute a statement and pass its rows to a consumer. The next page is
+     * requested before the rows of the current page are consumed, so fetching
+     * and processing overlap. Iteration stops if the consumer returns false.
+     * @param session the session to execute the statement with
+     * @param statement the statement to execute
+     * @param consumer row consumer returning false to stop iteration
+     * @return number of rows passed to the consumer
+     */
+    public static long forEachRow(CqlSession session, Statement<?> statement, Predicate<Row> consumer) {
+        AsyncResultSet page = await(session.executeAsync(statement));
+        long count = 0;
+        while (true) {
+            CompletionStage<AsyncResultSet> next = page.hasMorePages() ? page.fetchNextPage() : null;
+            for (Row row : page.currentPage()) {
+                count++;
+                if (!consumer.test(row)) {
+                    if (next != null)
+                        next.toCompletableFuture().cancel(false);
+                    return count;
+                }
+            }
+            if (next == null)
+                return count;
+            page = await(next);
+        }
+    }
+
+    /**
+     * Wait for an asynchronous result. Blocking is cheap on virtual threads,
+     * driver exceptions are rethrown as they are, unwrapped from the
+     * CompletionException.
+     * @param <T> type of the result
+     * @param stage the pending result
+     * @return the result
+     */
+    public static <T> T await(CompletionStage<T> stage) {
+        try {
+            return stage.toCompletableFuture().join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.metadata.schema.ColumnMetadata;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import io.github.rtib.cassandra.aviary.model.IOrigin;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Render CQL statements selecting the rows of canaries. Canaries are read
+ * from JSON, so their values do not tell the CQL type of the column, e.g. a
+ * string may be a text, uuid, timestamp or inet. The values are formatted as
+ * literals of the primary key column types of the connected cluster.
+ * @see CanaryValues
+ * @author repasi
+ */
+public class CanaryStatements {
+
+    private final CassandraMetadataHelper helper;
+    private final CanaryValues values;
+    private final Map<IOrigin, List<ColumnMetadata>> primaryKeys = new ConcurrentHashMap<>();
+
+    public CanaryStatements(CqlSession cqlSession) {
+        this.helper = new CassandraMetadataHelper(cqlSession);
+        this.values = new CanaryValues(cqlSession);
+    }
+
+    /**
+     * Render the statement selecting the row of a canary, restricting the
+     * primary key columns in the order of the table definition.
+     * @param canary the canary
+     * @return the SELECT statement
+     * @throws IllegalArgumentException if a primary key value is missing or cannot be converted
+     */
+    public String select(ICanary canary) {
+        List<ColumnMetadata> columns = primaryKeys.computeIfAbsent(canary.getOrigin(),
+                origin -> helper.getTableMetadata(origin).getPrimaryKey());
+        StringBuilder sb = new StringBuilder("SELECT * FROM ").append(canary.getOrigin()).append(" WHERE ");
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnMetadata column = columns.get(i);
+            String name = column.getName().asInternal();
+            if (!canary.getIdentifier().containsKey(name))
+                throw new IllegalArgumentException("Missing primary key field " + name + " of " + canary);
+            if (i > 0)
+                sb.append(" AND ");
+            sb.append(column.getName().asCql(true)).append(" = ")
+                    .append(values.literal(column.getType(), canary.getIdentifier().get(name)));
+        }
+        return sb.append(';').toString();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.ProtocolVersion;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.BoundStatementBuilder;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.codec.TypeCodec;
+import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import java.nio.ByteBuffer;
+
+/**
+ * Serialize the primary key values of canaries by the types of their
+ * columns. Canaries are read from JSON, so their values may not be of the
+ * Java type of the column, e.g. an integer for a bigint or a string for a
+ * uuid. Such values are converted by parsing them as CQL literal.
+ * @author repasi
+ */
+public class CanaryValues {
+
+    private final CodecRegistry codecs;
+    private final ProtocolVersion protocolVersion;
+
+    public CanaryValues(CqlSession cqlSession) {
+        this(cqlSession.getContext().getCodecRegistry(), cqlSession.getContext().getProtocolVersion());
+    }
+
+    /**
+     * Serialize values without a session, e.g. by the default codecs.
+     * @param codecs the codecs of the column types
+     * @param protocolVersion the protocol version to serialize for
+     */
+    public CanaryValues(CodecRegistry codecs, ProtocolVersion protocolVersion) {
+        this.codecs = codecs;
+        this.protocolVersion = protocolVersion;
+    }
+
+    /**
+     * Bind the primary key values of a canary to the bind markers of a
+     * statement, each bind marker named by a primary key column.
+     * @param stmt the prepared statement
+     * @param canary the canary
+     * @return the bound statement
+     * @throws IllegalArgumentException if a value is missing or cannot be converted
+     */
+    public BoundStatement bind(PreparedStatement stmt, ICanary canary) {
+        BoundStatementBuilder builder = stmt.boundStatementBuilder();
+        for (int i = 0; i < stmt.getVariableDefinitions().size(); i++) {
+            ColumnDefinition variable = stmt.getVariableDefinitions().get(i);
+            String name = variable.getName().asInternal();
+            if (!canary.getIdentifier().containsKey(name))
+                throw new IllegalArgumentException("Missing primary key field " + name + " of " + canary);
+            builder = builder.setBytesUnsafe(i, encode(variable.getType(), canary.getIdentifier().get(name)));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Serialize a value of a canary.
+     * @param type the type of the column
+     * @param value the value as read from the canary
+     * @return the serialized value
+     * @throws IllegalArgumentException if the value cannot be converted
+     */
+    public ByteBuffer encode(DataType type, Object value) {
+        TypeCodec<Object> codec = codecs.codecFor(type);
+        if (value == null || codec.accepts(value))
+            return codec.encode(value, protocolVersion);
+        String literal = value.toString();
+        try {
+            return codec.encode(codec.parse(literal), protocolVersion);
+        } catch (IllegalArgumentException ex) {
+            // literals of e.g. timestamps and inet addresses are quoted
+            return codec.encode(codec.parse("'" + literal.replace("'", "''") + "'"), protocolVersion);
+        }
+    }
+
+    /**
+     * Format a value of a canary as CQL literal of the column type.
+     * @param type the type of the column
+     * @param value the value as read from the canary
+     * @return the CQL literal
+     * @throws IllegalArgumentException if the value cannot be converted
+     */
+    public String literal(DataType type, Object value) {
+        TypeCodec<Object> codec = codecs.codecFor(type);
+        return codec.format(value == null ? null : codec.decode(encode(type, value), protocolVersion));
+    }
+}
@@ -17,10 +17,14 @@ package io.github.rtib.cassandra.aviary.utils;
 
 import com.datastax.oss.driver.api.core.CqlIdentifier;
 import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.metadata.schema.ClusteringOrder;
 import com.datastax.oss.driver.api.core.metadata.schema.ColumnMetadata;
 import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
 import io.github.rtib.cassandra.aviary.model.IOrigin;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -65,5 +69,32 @@ public class CassandraMetadataHelper {
                 .map(ColumnMetadata::getName)
                 .toList();
     }
+
+    /**
+     * List all clustering columns of a given table with their clustering order.
+     * @param origin identify the keyspace and table
+     * @return Map of clustering column names to their order, in clustering order
+     */
+    public Map<CqlIdentifier, ClusteringOrder> getClusteringColumns(IOrigin origin) {
+        Map<CqlIdentifier, ClusteringOrder> clustering = new LinkedHashMap<>();
+        getTableMetadata(origin).getClusteringColumns()
+                .forEach((column, order) -> clustering.put(column.getName(), order));
+        return clustering;
+    }
+
+    /**
+     * List all columns of a given table not being part of the primary key,
+     * including static columns, ordered by name.
+     * @param origin identify the keyspace and table
+     * @return List of regular column names
+     */
+    public List<CqlIdentifier> getRegularColumns(IOrigin origin) {
+        TableMetadata table = getTableMetadata(origin);
+        return table.getColumns().values().stream()
+                .filter(column -> !table.getPrimaryKey().contains(column))
+                .map(ColumnMetadata::getName)
+                .sorted(Comparator.comparing(CqlIdentifier::asInternal))
+                .toList();
+    }
     
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
+import com.datastax.oss.driver.api.core.config.ProgrammaticDriverConfigLoaderBuilder;
+import com.datastax.oss.driver.internal.core.config.typesafe.DefaultDriverConfigLoader;
+import com.datastax.oss.driver.internal.core.config.typesafe.DefaultProgrammaticDriverConfigLoaderBuilder;
+import com.typesafe.config.Config;
+import java.util.function.Supplier;
+
+/**
+ * Driver config loaders of configurations composed by the tool, e.g. of
+ * cluster profiles moved to the driver root. The public factories of
+ * DriverConfigLoader only load the application.conf as it is, loading any
+ * other Config needs the internal classes of the driver. This is the only
+ * place using them, written against java-driver-core 4.18.0, to be checked
+ * when upgrading the driver.
+ * @author repasi
+ */
+public final class DriverConfigLoaders {
+
+    /**
+     * Path of the driver configuration within the application.conf.
+     */
+    public static final String ROOT_PATH = DefaultDriverConfigLoader.DEFAULT_ROOT_PATH;
+
+    private DriverConfigLoaders() {
+    }
+
+    /**
+     * Create a loader of the driver configuration below ROOT_PATH.
+     * @param config supplier of the whole configuration, called on every reload
+     * @return the config loader
+     */
+    public static DriverConfigLoader of(Supplier<Config> config) {
+        return new DefaultDriverConfigLoader(() -> config.get().getConfig(ROOT_PATH));
+    }
+
+    /**
+     * Create a builder of a loader overriding options of the driver
+     * configuration below ROOT_PATH.
+     * @param config supplier of the whole configuration, called on every reload
+     * @return the config loader builder
+     */
+    public static ProgrammaticDriverConfigLoaderBuilder programmaticBuilder(Supplier<Config> config) {
+        return new DefaultProgrammaticDriverConfigLoaderBuilder(config, ROOT_PATH);
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import java.time.Duration;
+import picocli.CommandLine.ITypeConverter;
+
+/**
+ * PicoCLI helper class to convert a String option value like 500ms, 10s or 2m
+ * to a Duration.
+ * @author repasi
+ */
+public class DurationConverter implements ITypeConverter<Duration> {
+
+    @Override
+    public Duration convert(String string) throws Exception {
+        String value = string.trim().toLowerCase();
+        if (value.endsWith("ms"))
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        return Duration.parse("PT" + value.toUpperCase());
+    }
+    
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Execution profiles of the driver tuned for the queries of the tool. The
+ * profiles are defined by the aviary-defaults.conf shipped with the tool and
+ * can be changed in the application.conf like any driver profile. Statements
+ * are prepared with their profile, the bound statements inherit it.
+ * @author repasi
+ */
+public final class ExecutionProfiles {
+
+    private static final Logger LOG = Logger.getLogger(ExecutionProfiles.class.getName());
+
+    /**
+     * Profile of range queries: large pages, long timeout, reading from a
+     * single replica.
+     */
+    public static final String BULK_SCAN = "bulk-scan";
+
+    /**
+     * Profile of reading single rows by primary key.
+     */
+    public static final String POINT_READ = "point-read";
+
+    private ExecutionProfiles() {
+    }
+
+    /**
+     * Set the execution profile of a statement to be prepared. Sessions not
+     * configured by the tool may not define the profile, their statements
+     * are left with the default profile.
+     * @param session the session the statement is executed by
+     * @param statement the statement
+     * @param profile name of the execution profile, null for the default profile
+     * @return the statement using the profile
+     */
+    public static SimpleStatement apply(CqlSession session, SimpleStatement statement, String profile) {
+        if (profile == null)
+            return statement;
+        if (!session.getContext().getConfig().getProfiles().containsKey(profile)) {
+            LOG.log(Level.FINE, "Execution profile {0} not defined, using the default profile", profile);
+            return statement;
+        }
+        return statement.setExecutionProfileName(profile);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import com.datastax.oss.driver.api.core.AllNodesFailedException;
+import com.datastax.oss.driver.api.core.DriverTimeoutException;
+import com.datastax.oss.driver.api.core.NodeUnavailableException;
+import com.datastax.oss.driver.api.core.servererrors.OverloadedException;
+import com.datastax.oss.driver.api.core.servererrors.ReadFailureException;
+import com.datastax.oss.driver.api.core.servererrors.ReadTimeoutException;
+import com.datastax.oss.driver.api.core.servererrors.UnavailableException;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Classification of failed queries.
+ * 
+ * @author repasi
+ */
+public enum Failure {
+    /** Client or coordinator timed out waiting for replicas. */
+    TIMEOUT("timeout", true),
+    /** Not enough replicas or nodes alive to serve the query. */
+    UNAVAILABLE("unavailable", true),
+    /** Replicas responded with a failure, e.g. too many tombstones. */
+    READ_FAILURE("readFailure", false),
+    /** Any other error, e.g. invalid queries or codec errors. */
+    OTHER("other", false);
+
+    private final String label;
+    private final boolean retryable;
+
+    private Failure(String label, boolean retryable) {
+        this.label = label;
+        this.retryable = retryable;
+    }
+
+    /**
+     * @return name of the failure class as used in reports
+     */
+    public String label() {
+        return label;
+    }
+
+    /**
+     * @return true if repeating the query might succeed
+     */
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    /**
+     * Classify an exception thrown while executing a query.
+     * @param error the exception
+     * @return the failure class of the exception
+     */
+    public static Failure classify(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null)
+            error = error.getCause();
+        return switch (error) {
+            case DriverTimeoutException ex -> TIMEOUT;
+            case ReadTimeoutException ex -> TIMEOUT;
+            case UnavailableException ex -> UNAVAILABLE;
+            case NodeUnavailableException ex -> UNAVAILABLE;
+            case OverloadedException ex -> UNAVAILABLE;
+            case ReadFailureException ex -> READ_FAILURE;
+            case AllNodesFailedException ex -> classifyAll(ex);
+            default -> OTHER;
+        };
+    }
+
+    private static Failure classifyAll(AllNodesFailedException ex) {
+        return ex.getAllErrors().values().stream()
+                .flatMap(List::stream)
+                .map(Failure::classify)
+                .min(Enum::compareTo)
+                .orElse(UNAVAILABLE);
+    }
+}
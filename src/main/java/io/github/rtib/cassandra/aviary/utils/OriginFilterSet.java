@@ -0,0 +1,100 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import io.github.rtib.cassandra.aviary.model.IOrigin;
+import io.github.rtib.cassandra.aviary.storage.Origin;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Set of origin filters compiled into a single predicate. An origin passes,
+ * if it matches all required filters, any of the include filters (if there
+ * are any) and none of the exclude filters. Evaluating the patterns is done
+ * once per distinct origin, the decision is memoized by origin id, so testing
+ * the origin of every canary is a single array lookup.
+ * @author repasi
+ */
+public final class OriginFilterSet implements Predicate<IOrigin> {
+
+    /**
+     * A filter set passing every origin.
+     */
+    public static final OriginFilterSet ALL = new OriginFilterSet(List.of(), List.of(), List.of());
+
+    private final List<? extends Predicate<IOrigin>> required;
+    private final List<? extends Predicate<IOrigin>> includes;
+    private final List<? extends Predicate<IOrigin>> excludes;
+    private final ReentrantLock lock = new ReentrantLock();
+    // indexed by origin id: 0 undecided, 1 passing, 2 rejected
+    private volatile byte[] decisions = new byte[0];
+
+    /**
+     * Create a filter set.
+     * @param required filters all of which an origin has to match
+     * @param includes filters any of which an origin has to match, none to include all origins
+     * @param excludes filters none of which an origin may match
+     */
+    public OriginFilterSet(List<? extends Predicate<IOrigin>> required,
+            List<? extends Predicate<IOrigin>> includes,
+            List<? extends Predicate<IOrigin>> excludes) {
+        this.required = List.copyOf(required);
+        this.includes = List.copyOf(includes);
+        this.excludes = List.copyOf(excludes);
+    }
+
+    @Override
+    public boolean test(IOrigin origin) {
+        Origin o = Origin.of(origin);
+        byte[] d = decisions;
+        if (o.getId() < d.length && d[o.getId()] != 0)
+            return d[o.getId()] == 1;
+        boolean decision = decide(o);
+        lock.lock();
+        try {
+            // decisions are only ever added, a copy replaces the array
+            d = Arrays.copyOf(decisions, Math.max(decisions.length, o.getId() + 1));
+            d[o.getId()] = (byte) (decision ? 1 : 2);
+            decisions = d;
+        } finally {
+            lock.unlock();
+        }
+        return decision;
+    }
+
+    /**
+     * @return true if the set passes every origin
+     */
+    public boolean isEmpty() {
+        return required.isEmpty() && includes.isEmpty() && excludes.isEmpty();
+    }
+
+    private boolean decide(IOrigin origin) {
+        for (var filter : required)
+            if (!filter.test(origin))
+                return false;
+        if (!includes.isEmpty() && includes.stream().noneMatch(f -> f.test(origin)))
+            return false;
+        return excludes.stream().noneMatch(f -> f.test(origin));
+    }
+
+    @Override
+    public String toString() {
+        return "OriginFilterSet{required=" + required + ", includes=" + includes + ", excludes=" + excludes + "}";
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * Diagnose virtual threads pinning their carrier thread. This streams the
+ * JFR event jdk.VirtualThreadPinned while a run is in progress, aggregates the
+ * events by their stack trace and prints a summary of the most frequent
+ * pinning stacks when closed.
+ * @author repasi
+ */
+public class PinningDiagnostics implements AutoCloseable {
+
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+    private static final int STACK_DEPTH = 12;
+    private static final int TOP_STACKS = 10;
+
+    private final RecordingStream stream;
+    private final PrintStream out;
+    private final Map<String, Stats> pinned = new ConcurrentHashMap<>();
+
+    private PinningDiagnostics(RecordingStream stream, PrintStream out) {
+        this.stream = stream;
+        this.out = out;
+    }
+
+    /**
+     * Start recording pinned virtual threads.
+     * @param threshold minimum duration of pinning to be recorded
+     * @param out stream to print the summary to
+     * @return the started diagnostics
+     */
+    public static PinningDiagnostics start(Duration threshold, PrintStream out) {
+        var diagnostics = new PinningDiagnostics(new RecordingStream(), out);
+        diagnostics.stream.enable(EVENT).withThreshold(threshold).withStackTrace();
+        diagnostics.stream.onEvent(EVENT, diagnostics::record);
+        diagnostics.stream.startAsync();
+        return diagnostics;
+    }
+
+    /**
+     * Get diagnostics not recording anything.
+     * @return a disabled instance
+     */
+    public static PinningDiagnostics disabled() {
+        return new PinningDiagnostics(null, null);
+    }
+
+    private void record(RecordedEvent event) {
+        String stack = event.getStackTrace() == null ? "<no stack trace>" :
+                event.getStackTrace().getFrames().stream()
+                        .dropWhile(f -> f.getMethod().getType().getName().startsWith("java.lang.VirtualThread"))
+                        .limit(STACK_DEPTH)
+                        .map(PinningDiagnostics::format)
+                        .collect(Collectors.joining(System.lineSeparator()));
+        pinned.computeIfAbsent(stack, k -> new Stats()).add(event.getDuration());
+    }
+
+    private static String format(RecordedFrame frame) {
+        return "\tat " + frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                + (frame.getLineNumber() > 0 ? ":" + frame.getLineNumber() : "");
+    }
+
+    /**
+     * Stop recording and print a summary of the recorded pinning events.
+     */
+    @Override
+    public void close() {
+        if (stream == null)
+            return;
+        stream.stop();
+        stream.close();
+        long events = pinned.values().stream().mapToLong(s -> s.count).sum();
+        out.printf("Virtual thread pinning: %d events at %d distinct stacks%n", events, pinned.size());
+        pinned.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, Stats> e) -> e.getValue().total.toNanos()).reversed())
+                .limit(TOP_STACKS)
+                .forEach(e -> out.printf("%d events, total %d ms, max %d ms:%n%s%n",
+                        e.getValue().count, e.getValue().total.toMillis(), e.getValue().max.toMillis(), e.getKey()));
+        out.flush();
+    }
+
+    /**
+     * Aggregated pinning durations of a stack trace.
+     */
+    private static final class Stats {
+        private long count;
+        private Duration total = Duration.ZERO;
+        private Duration max = Duration.ZERO;
+
+        private synchronized void add(Duration duration) {
+            count++;
+            total = total.plus(duration);
+            if (duration.compareTo(max) > 0)
+                max = duration;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Output stream prefixing each line written with a fixed label before passing
+ * it on to a shared stream. Lines are passed on as a whole, so the lines of
+ * several concurrent writers sharing the target are not mixed up.
+ * @author repasi
+ */
+public final class PrefixedOutputStream extends OutputStream {
+
+    private final PrintStream target;
+    private final byte[] prefix;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+
+    /**
+     * @param target the shared stream
+     * @param prefix label to put in front of each line
+     */
+    public PrefixedOutputStream(PrintStream target, String prefix) {
+        this.target = target;
+        this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create a print stream labeling each line.
+     * @param target the shared stream
+     * @param label label to put in front of each line, followed by a colon
+     * @return a print stream writing to the target
+     */
+    public static PrintStream labeled(PrintStream target, String label) {
+        return new PrintStream(new PrefixedOutputStream(target, label + ": "), true, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void write(int b) {
+        line.write(b);
+        if (b == '\n')
+            flushLine();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        int start = off;
+        for (int i = off; i < off + len; i++) {
+            if (b[i] == '\n') {
+                line.write(b, start, i + 1 - start);
+                flushLine();
+                start = i + 1;
+            }
+        }
+        line.write(b, start, off + len - start);
+    }
+
+    @Override
+    public void flush() {
+        target.flush();
+    }
+
+    @Override
+    public void close() {
+        if (line.size() > 0) {
+            line.write('\n');
+            flushLine();
+        }
+        target.flush();
+    }
+
+    private void flushLine() {
+        byte[] bytes = new byte[prefix.length + line.size()];
+        System.arraycopy(prefix, 0, bytes, 0, prefix.length);
+        System.arraycopy(line.toByteArray(), 0, bytes, prefix.length, line.size());
+        line.reset();
+        target.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically render the state of a ProgressTracker to a print stream, which
+ * is usually the standard error. Rendering is done by a single daemon thread,
+ * so the tracked tasks only pay for updating the counters.
+ * @see ProgressTracker
+ * @author repasi
+ */
+public class ProgressReporter implements AutoCloseable {
+
+    /**
+     * Rendering format of progress reports.
+     */
+    public enum Format {
+        /** Do not report progress. */
+        NONE,
+        /** Human readable status line. */
+        LINE,
+        /** One JSON object per report. */
+        JSON
+    }
+
+    private final ProgressTracker tracker;
+    private final Format format;
+    private final PrintStream out;
+    private final String taskUnit;
+    private final String itemUnit;
+    private final boolean console;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Create and start a reporter.
+     * @param tracker the progress counters to report
+     * @param format rendering format
+     * @param interval time between two reports
+     * @param out stream to render the reports to
+     * @param taskUnit name of the tasks being counted, e.g. ranges
+     * @param itemUnit name of the items produced by the tasks, e.g. canaries
+     */
+    public ProgressReporter(ProgressTracker tracker, Format format, Duration interval, PrintStream out, String taskUnit, String itemUnit) {
+        this.tracker = tracker;
+        this.format = format;
+        this.out = out;
+        this.taskUnit = taskUnit;
+        this.itemUnit = itemUnit;
+        this.console = System.console() != null;
+        if (format == Format.NONE) {
+            this.scheduler = null;
+        } else {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "aviary-progress");
+                t.setDaemon(true);
+                return t;
+            });
+            long millis = Math.max(1, interval.toMillis());
+            scheduler.scheduleAtFixedRate(() -> report(false), millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop periodic reporting and render a final report.
+     */
+    @Override
+    public void close() {
+        if (scheduler == null)
+            return;
+        scheduler.shutdownNow();
+        report(true);
+    }
+
+    private synchronized void report(boolean last) {
+        var snapshot = tracker.snapshot();
+        switch (format) {
+            case LINE -> {
+                String line = renderLine(snapshot);
+                if (console)
+                    out.print("\r" + line + (last ? System.lineSeparator() : ""));
+                else
+                    out.println(line);
+            }
+            case JSON -> out.println(renderJson(snapshot, last));
+            default -> {}
+        }
+        out.flush();
+    }
+
+    private String renderLine(ProgressTracker.Snapshot s) {
+        Duration eta = s.eta();
+        return String.format(Locale.ROOT,
+                "%s %d/%d (%.1f%%), %s %d (%.1f/s), errors %d, in-flight %d, elapsed %s, ETA %s",
+                taskUnit, s.done(), s.total(), s.fraction() * 100,
+                itemUnit, s.items(), s.itemRate(),
+                s.errors(), s.inFlight(),
+                formatDuration(Duration.ofNanos(s.elapsedNanos())),
+                eta == null ? "-" : formatDuration(eta));
+    }
+
+    private String renderJson(ProgressTracker.Snapshot s, boolean last) {
+        Duration eta = s.eta();
+        return String.format(Locale.ROOT,
+                "{\"event\":\"%s\",\"unit\":\"%s\",\"done\":%d,\"total\":%d,\"items\":%d,\"itemUnit\":\"%s\",\"itemsPerSecond\":%.3f,\"errors\":%d,\"inFlight\":%d,\"elapsedMillis\":%d,\"etaMillis\":%s}",
+                last ? "finished" : "progress", taskUnit, s.done(), s.total(),
+                s.items(), itemUnit, s.itemRate(), s.errors(), s.inFlight(),
+                TimeUnit.NANOSECONDS.toMillis(s.elapsedNanos()),
+                eta == null ? "null" : Long.toString(eta.toMillis()));
+    }
+
+    private static String formatDuration(Duration d) {
+        return String.format(Locale.ROOT, "%d:%02d:%02d", d.toHours(), d.toMinutesPart(), d.toSecondsPart());
+    }
+}
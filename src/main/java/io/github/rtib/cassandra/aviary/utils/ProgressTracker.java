@@ -0,0 +1,142 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free progress counters of a selection or verification run. Tasks are
+ * counted when submitted, started and finished, items are the number of
+ * canaries a finished task produced. All counters are LongAdders, so updating
+ * them from many virtual threads is cheap, while reading a snapshot is only
+ * done periodically by a ProgressReporter.
+ * @see ProgressReporter
+ * @author repasi
+ */
+public final class ProgressTracker {
+
+    private final LongAdder total = new LongAdder();
+    private final LongAdder done = new LongAdder();
+    private final LongAdder items = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final long startNanos;
+
+    public ProgressTracker() {
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Account for a number of tasks being submitted.
+     * @param tasks number of newly submitted tasks
+     */
+    public void addTotal(long tasks) {
+        total.add(tasks);
+    }
+
+    /**
+     * Account for a task being started.
+     */
+    public void started() {
+        inFlight.increment();
+    }
+
+    /**
+     * Account for a task finished successfully.
+     * @param count number of items the task produced
+     */
+    public void finished(long count) {
+        inFlight.decrement();
+        done.increment();
+        items.add(count);
+    }
+
+    /**
+     * Account for a task finished with an error.
+     */
+    public void failed() {
+        failed(0);
+    }
+
+    /**
+     * Account for a task finished with an error after producing some items.
+     * @param count number of items the task produced
+     */
+    public void failed(long count) {
+        inFlight.decrement();
+        done.increment();
+        errors.increment();
+        items.add(count);
+    }
+
+    /**
+     * Take a snapshot of the current counter values.
+     * @return snapshot of the counters
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(
+                total.sum(),
+                done.sum(),
+                items.sum(),
+                errors.sum(),
+                inFlight.sum(),
+                System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Point in time view of the progress counters.
+     */
+    public record Snapshot(long total, long done, long items, long errors, long inFlight, long elapsedNanos) {
+
+        /**
+         * @return ratio of finished to total tasks in range [0, 1]
+         */
+        public double fraction() {
+            return total == 0 ? 0.0 : Math.min(1.0, (double) done / total);
+        }
+
+        /**
+         * @return finished tasks per second
+         */
+        public double taskRate() {
+            return perSecond(done);
+        }
+
+        /**
+         * @return produced items per second
+         */
+        public double itemRate() {
+            return perSecond(items);
+        }
+
+        /**
+         * Estimate the remaining time from the task rate observed so far.
+         * @return estimated time to finish, null if not yet estimable
+         */
+        public Duration eta() {
+            double rate = taskRate();
+            if (rate <= 0.0 || done >= total)
+                return null;
+            return Duration.ofMillis((long) ((total - done) / rate * 1000));
+        }
+
+        private double perSecond(long count) {
+            return elapsedNanos <= 0 ? 0.0 : count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import com.datastax.oss.driver.api.core.metadata.Metadata;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.metadata.token.Token;
+import com.datastax.oss.driver.api.core.metadata.token.TokenRange;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * Restriction of the token ranges processed by a run to the ranges owned by
+ * some nodes, so several runners can share the work of a cluster, each one
+ * querying nearby replicas only. A range is owned either by all its replicas,
+ * or by its primary replica only.
+ *
+ * The primary replica of a range of a keyspace is found walking the ring from
+ * the end of the range: the node of the first token being a replica of the
+ * range. Each range has exactly one primary replica, so runners restricted to
+ * the primary ranges of disjoint sets of nodes, e.g. the nodes of each
+ * datacenter, partition the ranges of every keyspace.
+ *
+ * @author repasi
+ */
+public final class RangeOwnership {
+
+    /**
+     * Ownership of every range.
+     */
+    public static final RangeOwnership ALL = new RangeOwnership(null, null, false, "all ranges");
+
+    /**
+     * Ranges a runner is restricted to.
+     */
+    public enum Scope {
+        /** All ranges of the ring. */
+        ALL,
+        /** Ranges having a replica in the local datacenter. */
+        LOCAL,
+        /** Ranges having their primary replica in the local datacenter. */
+        PRIMARY
+    }
+
+    private final TokenMap tokenMap;
+    private final Predicate<Node> owners;
+    private final boolean primary;
+    private final String description;
+    private final NavigableMap<Token, Node> ring = new TreeMap<>();
+
+    private RangeOwnership(Metadata metadata, Predicate<Node> owners, boolean primary, String description) {
+        this.tokenMap = metadata == null ? null : metadata.getTokenMap().orElseThrow();
+        this.owners = owners;
+        this.primary = primary;
+        this.description = description;
+        if (primary)
+            for (Node node : metadata.getNodes().values())
+                for (Token token : tokenMap.getTokens(node))
+                    ring.put(token, node);
+    }
+
+    /**
+     * Create the ownership of a scope relative to a datacenter.
+     * @param metadata metadata of the connected cluster
+     * @param scope the ranges to restrict to
+     * @param datacenter the local datacenter, may be null for scope ALL
+     * @return the ownership of the scope
+     * @throws IllegalArgumentException if the scope needs a datacenter, but none is given
+     */
+    public static RangeOwnership of(Metadata metadata, Scope scope, String datacenter) {
+        if (scope == Scope.ALL)
+            return ALL;
+        if (datacenter == null)
+            throw new IllegalArgumentException("Restricting to " + scope + " ranges needs a local datacenter.");
+        Predicate<Node> local = node -> datacenter.equals(node.getDatacenter());
+        return new RangeOwnership(metadata, local, scope == Scope.PRIMARY,
+                (scope == Scope.PRIMARY ? "primary ranges of " : "ranges replicated to ") + datacenter);
+    }
+
+    /**
+     * Create the ownership of the primary ranges of some nodes. A node is
+     * given by any of its addresses.
+     * @param metadata metadata of the connected cluster
+     * @param addresses addresses of the nodes
+     * @return the ownership of the primary ranges of the nodes
+     * @throws IllegalArgumentException if an address does not match any node
+     */
+    public static RangeOwnership primaryOf(Metadata metadata, Collection<InetAddress> addresses) {
+        for (InetAddress address : addresses)
+            if (metadata.getNodes().values().stream().noneMatch(node -> hasAddress(node, address)))
+                throw new IllegalArgumentException("No node of the cluster has address " + address.getHostAddress());
+        return new RangeOwnership(metadata,
+                node -> addresses.stream().anyMatch(address -> hasAddress(node, address)), true,
+                "primary ranges of " + addresses.stream().map(InetAddress::getHostAddress).toList());
+    }
+
+    /**
+     * @return true if every range is owned
+     */
+    public boolean isAll() {
+        return owners == null;
+    }
+
+    /**
+     * Check a range of a keyspace to be owned.
+     * @param keyspace name of the keyspace, as CQL
+     * @param range a range of the ring
+     * @return true if the range is owned
+     */
+    public boolean owns(String keyspace, TokenRange range) {
+        return owns(keyspace, range.getEnd());
+    }
+
+    /**
+     * Check the range of a token in a keyspace to be owned.
+     * @param keyspace name of the keyspace, as CQL
+     * @param token a token
+     * @return true if the range the token belongs to is owned
+     */
+    public boolean owns(String keyspace, Token token) {
+        if (owners == null)
+            return true;
+        Set<Node> replicas = tokenMap.getReplicas(keyspace, token);
+        if (!primary)
+            return replicas.stream().anyMatch(owners);
+        return owners.test(primaryReplica(replicas, token));
+    }
+
+    /**
+     * Restrict ranges of a keyspace to the owned ones.
+     * @param keyspace name of the keyspace, as CQL
+     * @param ranges ranges of the ring
+     * @return the owned ranges, in the iteration order of the given ones
+     */
+    public Set<TokenRange> filter(String keyspace, Set<TokenRange> ranges) {
+        if (owners == null)
+            return ranges;
+        Set<TokenRange> owned = new LinkedHashSet<>();
+        for (TokenRange range : ranges)
+            if (owns(keyspace, range))
+                owned.add(range);
+        return Collections.unmodifiableSet(owned);
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    /**
+     * Walk the ring from the end of the range of a token to the first token
+     * of a replica. Without replicas, the node of the end token is primary.
+     */
+    private Node primaryReplica(Set<Node> replicas, Token token) {
+        for (var ringPart : List.of(ring.tailMap(token, true), ring.headMap(token, false)))
+            for (Node node : ringPart.values())
+                if (replicas.isEmpty() || replicas.contains(node))
+                    return node;
+        return null;
+    }
+
+    private static boolean hasAddress(Node node, InetAddress address) {
+        return matches(node.getBroadcastRpcAddress(), address)
+                || matches(node.getBroadcastAddress(), address)
+                || matches(node.getListenAddress(), address)
+                || (node.getEndPoint().resolve() instanceof InetSocketAddress endPoint
+                        && address.equals(endPoint.getAddress()));
+    }
+
+    private static boolean matches(Optional<InetSocketAddress> nodeAddress, InetAddress address) {
+        return nodeAddress.map(InetSocketAddress::getAddress).map(a -> Objects.equals(a, address)).orElse(false);
+    }
+}
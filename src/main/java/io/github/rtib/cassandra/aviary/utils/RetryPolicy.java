@@ -0,0 +1,70 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Policy of repeating failed range queries. Retryable failures are repeated
+ * up to maxRetries times, waiting an exponentially growing and jittered
+ * backoff between attempts. Ranges still timing out are split into
+ * splitOnTimeout sub-ranges, which are queried one by one.
+ * 
+ * @param maxRetries number of retries after the first attempt
+ * @param backoff wait time before the first retry, doubled on each further retry
+ * @param maxBackoff upper limit of the wait time between attempts
+ * @param splitOnTimeout number of sub-ranges to query if a range times out, less than 2 to disable
+ * @author repasi
+ */
+public record RetryPolicy(int maxRetries, Duration backoff, Duration maxBackoff, int splitOnTimeout) {
+
+    /**
+     * A policy never retrying or splitting.
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(0, Duration.ZERO, Duration.ZERO, 0);
+
+    /**
+     * Decide whether a query failed should be repeated.
+     * @param failure class of the failure
+     * @param attempt number of attempts already made, starting at 1
+     * @return true if the query should be repeated
+     */
+    public boolean shouldRetry(Failure failure, int attempt) {
+        return failure.isRetryable() && attempt <= maxRetries;
+    }
+
+    /**
+     * Decide whether a range failed should be split into sub-ranges.
+     * @param failure class of the failure
+     * @return true if the range should be split
+     */
+    public boolean shouldSplit(Failure failure) {
+        return failure == Failure.TIMEOUT && splitOnTimeout > 1;
+    }
+
+    /**
+     * Wait the backoff time before the next attempt.
+     * @param attempt number of attempts already made, starting at 1
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void backoff(int attempt) throws InterruptedException {
+        long base = backoff.toMillis() << Math.min(attempt - 1, 20);
+        long millis = Math.min(base, maxBackoff.toMillis());
+        if (millis > 0)
+            Thread.sleep(millis / 2 + ThreadLocalRandom.current().nextLong(millis / 2 + 1));
+    }
+}
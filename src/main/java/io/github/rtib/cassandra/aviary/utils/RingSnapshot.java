@@ -0,0 +1,306 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.DefaultProtocolVersion;
+import com.datastax.oss.driver.api.core.metadata.Metadata;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.metadata.schema.ColumnMetadata;
+import com.datastax.oss.driver.api.core.metadata.schema.KeyspaceMetadata;
+import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
+import com.datastax.oss.driver.api.core.metadata.token.Token;
+import com.datastax.oss.driver.api.core.metadata.token.TokenRange;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
+import com.datastax.oss.driver.internal.core.metadata.schema.parsing.DataTypeCqlNameParser;
+import com.datastax.oss.driver.internal.core.metadata.token.ByteOrderedTokenFactory;
+import com.datastax.oss.driver.internal.core.metadata.token.Murmur3TokenFactory;
+import com.datastax.oss.driver.internal.core.metadata.token.RandomTokenFactory;
+import com.datastax.oss.driver.internal.core.metadata.token.TokenFactory;
+import com.datastax.oss.driver.internal.core.util.RoutingKey;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import io.github.rtib.cassandra.aviary.model.IOrigin;
+import io.github.rtib.cassandra.aviary.storage.OriginArray;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot of the token ring of a cluster: its token ranges, the replicas of
+ * each range per keyspace and the partition keys of the tables. A snapshot
+ * taken from a connected cluster can be stored to a file and loaded later,
+ * to calculate the tokens of canaries without connecting the cluster.
+ *
+ * Ranges are indexed in ring order by their end token, range i spans from
+ * the end of range i-1 exclusive to its end inclusive, range 0 wraps around
+ * the ring. Nodes are indexed in order of their endpoints, replicas are given
+ * as node indexes. This class is not thread-safe.
+ * @see TokenCalculator
+ * @author repasi
+ */
+public final class RingSnapshot {
+
+    /**
+     * Content of a snapshot file.
+     * @param partitioner class name of the partitioner
+     * @param nodes the nodes of the cluster
+     * @param ends end tokens of the ranges in ring order
+     * @param keyspaces replicas of each range by keyspace name
+     * @param tables partition key columns by table, named keyspace.table
+     */
+    public record Content(String partitioner, List<NodeEntry> nodes, List<String> ends,
+            Map<String, int[][]> keyspaces, Map<String, List<ColumnEntry>> tables) {};
+
+    /**
+     * A node of a snapshot file.
+     */
+    public record NodeEntry(String endpoint, String datacenter) {};
+
+    /**
+     * A partition key column of a snapshot file, having the CQL type name.
+     */
+    public record ColumnEntry(String name, String type) {};
+
+    private final Content content;
+    private final TokenFactory factory;
+    private final Token[] ends;
+    private final Map<String, PartitionKey> partitionKeys;
+    private final CanaryValues values;
+    private final OriginArray<PartitionKey> byOrigin = new OriginArray<>();
+
+    private RingSnapshot(Content content, Map<String, PartitionKey> partitionKeys, CanaryValues values) {
+        this.content = content;
+        this.factory = tokenFactory(content.partitioner());
+        this.ends = content.ends().stream().map(factory::parse).toArray(Token[]::new);
+        this.partitionKeys = partitionKeys;
+        this.values = values;
+    }
+
+    /**
+     * Take a snapshot of the ring of a connected cluster, covering every
+     * keyspace and table of its schema.
+     * @param cqlSession session of the cluster
+     * @return the snapshot
+     */
+    public static RingSnapshot of(CqlSession cqlSession) {
+        Metadata metadata = cqlSession.getMetadata();
+        TokenMap tokenMap = metadata.getTokenMap().orElseThrow();
+        List<Node> nodes = new ArrayList<>(metadata.getNodes().values());
+        nodes.sort(Comparator.comparing(node -> node.getEndPoint().toString()));
+        Map<Node, Integer> nodeIndex = new HashMap<>();
+        List<NodeEntry> nodeEntries = new ArrayList<>();
+        for (Node node : nodes) {
+            nodeIndex.put(node, nodeEntries.size());
+            nodeEntries.add(new NodeEntry(node.getEndPoint().toString(), node.getDatacenter()));
+        }
+        Token[] ends = tokenMap.getTokenRanges().stream()
+                .map(TokenRange::getEnd)
+                .sorted()
+                .toArray(Token[]::new);
+
+        // keyspaces of the same replication share their replicas
+        Map<Map<String, String>, int[][]> byReplication = new HashMap<>();
+        Map<String, int[][]> keyspaces = new LinkedHashMap<>();
+        Map<String, List<ColumnEntry>> tables = new LinkedHashMap<>();
+        Map<String, PartitionKey> partitionKeys = new HashMap<>();
+        for (KeyspaceMetadata keyspace : metadata.getKeyspaces().values()) {
+            keyspaces.put(keyspace.getName().asInternal(), byReplication.computeIfAbsent(keyspace.getReplication(), r -> {
+                int[][] replicas = new int[ends.length][];
+                for (int i = 0; i < ends.length; i++)
+                    replicas[i] = tokenMap.getReplicas(keyspace.getName(), ends[i]).stream()
+                            .mapToInt(nodeIndex::get)
+                            .toArray();
+                return replicas;
+            }));
+            for (TableMetadata table : keyspace.getTables().values()) {
+                String name = keyspace.getName().asInternal() + "." + table.getName().asInternal();
+                List<ColumnMetadata> columns = table.getPartitionKey();
+                tables.put(name, columns.stream()
+                        .map(c -> new ColumnEntry(c.getName().asCql(true), c.getType().asCql(true, true)))
+                        .toList());
+                partitionKeys.put(name, new PartitionKey(
+                        columns.stream().map(c -> c.getName().asCql(true)).toArray(String[]::new),
+                        columns.stream().map(ColumnMetadata::getType).toArray(DataType[]::new)));
+            }
+        }
+        Content content = new Content(tokenMap.getPartitionerName(), nodeEntries,
+                Arrays.stream(ends).map(tokenMap::format).toList(), keyspaces, tables);
+        return new RingSnapshot(content, partitionKeys, new CanaryValues(cqlSession));
+    }
+
+    /**
+     * Load a snapshot stored to a file. Values are serialized by the default
+     * codecs. Partition keys of user defined types are not resolved, tokens
+     * of their canaries cannot be calculated.
+     * @param file the snapshot file
+     * @return the snapshot
+     * @throws IOException if the file cannot be read
+     */
+    public static RingSnapshot read(File file) throws IOException {
+        Content content = mapper().readValue(file, Content.class);
+        DataTypeCqlNameParser parser = new DataTypeCqlNameParser();
+        Map<String, PartitionKey> partitionKeys = new HashMap<>();
+        content.tables().forEach((name, columns) -> {
+            CqlIdentifier keyspace = CqlIdentifier.fromInternal(name.substring(0, name.indexOf('.')));
+            try {
+                partitionKeys.put(name, new PartitionKey(
+                        columns.stream().map(ColumnEntry::name).toArray(String[]::new),
+                        columns.stream().map(c -> parser.parse(keyspace, c.type(), Map.of(), null)).toArray(DataType[]::new)));
+            } catch (RuntimeException ex) {
+                partitionKeys.put(name, null);
+            }
+        });
+        return new RingSnapshot(content, partitionKeys,
+                new CanaryValues(CodecRegistry.DEFAULT, DefaultProtocolVersion.DEFAULT));
+    }
+
+    /**
+     * Store the snapshot to a file.
+     * @param file the snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        mapper().writeValue(file, content);
+    }
+
+    /**
+     * @return number of token ranges
+     */
+    public int ranges() {
+        return ends.length;
+    }
+
+    /**
+     * @param range index of a range
+     * @return end token of the range
+     */
+    public Token end(int range) {
+        return ends[range];
+    }
+
+    /**
+     * @param range index of a range
+     * @return start token of the range, exclusive
+     */
+    public Token start(int range) {
+        return ends[(range == 0 ? ends.length : range) - 1];
+    }
+
+    /**
+     * Find the range a token belongs to by binary search.
+     * @param token the token
+     * @return index of the range
+     */
+    public int rangeOf(Token token) {
+        int i = Arrays.binarySearch(ends, token);
+        if (i < 0)
+            i = -i - 1;
+        // tokens beyond the last end belong to the range wrapping around the ring
+        return i == ends.length ? 0 : i;
+    }
+
+    /**
+     * @param token a token
+     * @return the string representation of the token
+     */
+    public String format(Token token) {
+        return factory.format(token);
+    }
+
+    /**
+     * @return number of nodes
+     */
+    public int nodes() {
+        return content.nodes().size();
+    }
+
+    /**
+     * @param node index of a node
+     * @return the node
+     */
+    public NodeEntry node(int node) {
+        return content.nodes().get(node);
+    }
+
+    /**
+     * Get the replicas of the ranges of a keyspace.
+     * @param keyspace name of the keyspace
+     * @return node indexes of the replicas by range index, null if the
+     * keyspace is unknown
+     */
+    public int[][] replicas(String keyspace) {
+        return content.keyspaces().get(CqlIdentifier.fromCql(keyspace).asInternal());
+    }
+
+    /**
+     * Calculate the token of the partition a canary belongs to.
+     * @param canary the canary
+     * @return the token of the canary
+     * @throws IllegalArgumentException if the table is unknown, a partition
+     * key value is missing or cannot be converted
+     */
+    public Token tokenOf(ICanary canary) {
+        PartitionKey key = byOrigin.computeIfAbsent(canary.getOrigin(), this::partitionKey);
+        Map<String, Object> identifier = canary.getIdentifier();
+        ByteBuffer[] components = new ByteBuffer[key.names().length];
+        for (int i = 0; i < components.length; i++) {
+            String name = key.names()[i];
+            if (!identifier.containsKey(name))
+                throw new IllegalArgumentException("Missing partition key field " + name + " of " + canary);
+            components[i] = values.encode(key.types()[i], identifier.get(name));
+        }
+        return factory.hash(components.length == 1 ? components[0] : RoutingKey.compose(components));
+    }
+
+    private PartitionKey partitionKey(IOrigin origin) {
+        String name = CqlIdentifier.fromCql(origin.getKeyspace()).asInternal()
+                + "." + CqlIdentifier.fromCql(origin.getTable()).asInternal();
+        if (!partitionKeys.containsKey(name))
+            throw new IllegalArgumentException("Unknown table " + origin);
+        PartitionKey key = partitionKeys.get(name);
+        if (key == null)
+            throw new IllegalArgumentException("Unsupported partition key type of " + origin);
+        return key;
+    }
+
+    private static TokenFactory tokenFactory(String partitioner) {
+        return switch (partitioner.substring(partitioner.lastIndexOf('.') + 1)) {
+            case "Murmur3Partitioner" -> new Murmur3TokenFactory();
+            case "RandomPartitioner" -> new RandomTokenFactory();
+            case "ByteOrderedPartitioner" -> new ByteOrderedTokenFactory();
+            default -> throw new IllegalArgumentException("Unsupported partitioner " + partitioner);
+        };
+    }
+
+    private static ObjectMapper mapper() {
+        return new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    private record PartitionKey(String[] names, DataType[] types) {};
+}
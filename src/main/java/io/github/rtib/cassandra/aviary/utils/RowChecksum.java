@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.data.GettableById;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Checksum of the content of a row. The serialized values of the given
+ * columns are hashed as they were received from the cluster, without decoding
+ * them, each preceded by its length, or -1 for null values. The checksum is
+ * rendered as 16 hex digits.
+ *
+ * The same columns in the same order have to be hashed to get comparable
+ * checksums, see {@link CassandraMetadataHelper#getRegularColumns}.
+ * @author repasi
+ */
+public final class RowChecksum {
+
+    private RowChecksum() {
+    }
+
+    /**
+     * Compute the checksum of a row.
+     * @param row the row holding the columns
+     * @param columns columns to hash, in order
+     * @return the checksum
+     */
+    public static String of(GettableById row, List<CqlIdentifier> columns) {
+        XxHash64 hash = new XxHash64();
+        for (CqlIdentifier column : columns) {
+            ByteBuffer value = row.getBytesUnsafe(column);
+            if (value == null) {
+                hash.update(-1);
+            } else {
+                hash.update(value.remaining());
+                hash.update(value);
+            }
+        }
+        return String.format("%016x", hash.digest());
+    }
+}
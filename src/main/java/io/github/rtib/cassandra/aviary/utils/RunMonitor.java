@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+/**
+ * Progress tracking and diagnostics of a run as a single resource. Closing
+ * the monitor renders the final progress report and the summary of the
+ * pinning diagnostics.
+ * @author repasi
+ */
+public class RunMonitor implements AutoCloseable {
+
+    private final ProgressTracker progress;
+    private final PinningDiagnostics pinning;
+    private final ProgressReporter reporter;
+
+    /**
+     * Monitor a run, taking ownership of the diagnostics and the reporter.
+     * @param progress progress counters of the run
+     * @param pinning started pinning diagnostics
+     * @param reporter started reporter of the progress counters
+     */
+    public RunMonitor(ProgressTracker progress, PinningDiagnostics pinning, ProgressReporter reporter) {
+        this.progress = progress;
+        this.pinning = pinning;
+        this.reporter = reporter;
+    }
+
+    /**
+     * @return the progress counters of the run
+     */
+    public ProgressTracker progress() {
+        return progress;
+    }
+
+    @Override
+    public void close() {
+        try {
+            reporter.close();
+        } finally {
+            pinning.close();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+/**
+ * Policy of scheduling range queries. Ranges are queued by the replica
+ * serving them, and at most maxInFlightPerNode queries are running against
+ * each node at any time. Tables are taking turns on each node, the order of
+ * a turn is given by the table priority.
+ *
+ * @param maxInFlightPerNode concurrent range queries per node, zero or less for unbounded
+ * @param priority order of tables within a turn
+ * @author repasi
+ */
+public record SchedulingPolicy(int maxInFlightPerNode, Priority priority) {
+
+    /**
+     * Order of tables taking turns.
+     */
+    public enum Priority {
+        /** Largest tables first, as estimated by system.size_estimates. */
+        SIZE,
+        /** Tables in order of keyspace and table names. */
+        NAME
+    }
+
+    /**
+     * A policy not bounding concurrency, tables ordered by name.
+     */
+    public static final SchedulingPolicy UNBOUNDED = new SchedulingPolicy(0, Priority.NAME);
+
+    /**
+     * @return true if the number of concurrent queries per node is bounded
+     */
+    public boolean isBounded() {
+        return maxInFlightPerNode > 0;
+    }
+}
@@ -16,18 +16,21 @@
 package io.github.rtib.cassandra.aviary.utils;
 
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Caching CQL prepared statements on the fly. For any type of object, a 
  * statement preparation method can be implemented. This cache will give you the
- * statement for a specified key from cache or by preparing it.
+ * statement for a specified key from cache or by preparing it. The cache is
+ * lock-free, a statement is prepared once by the first thread asking for it,
+ * while concurrent threads wait for its future without pinning their carrier.
  * @author repasi
  * @param <K> Type of the statement identifier
  */
 public abstract class StatementCache<K> {
     
-    private final ConcurrentHashMap<K, PreparedStatement> cache;
+    private final ConcurrentHashMap<K, CompletableFuture<PreparedStatement>> cache;
     
     public StatementCache() {
         cache = new ConcurrentHashMap<>();
@@ -41,10 +44,22 @@ public abstract class StatementCache<K> {
      * @param key statement identifier
      * @return the prepared statement for the given key
      */
-    public synchronized PreparedStatement getStatement(final K key) {
-        if (!cache.containsKey(key))
-            cache.put(key, prepareStatementFor(key));
-        return cache.get(key);
+    public PreparedStatement getStatement(final K key) {
+        CompletableFuture<PreparedStatement> statement = cache.get(key);
+        if (statement == null) {
+            var preparing = new CompletableFuture<PreparedStatement>();
+            statement = cache.putIfAbsent(key, preparing);
+            if (statement == null) {
+                statement = preparing;
+                try {
+                    preparing.complete(prepareStatementFor(key));
+                } catch (RuntimeException ex) {
+                    cache.remove(key, preparing);
+                    preparing.completeExceptionally(ex);
+                }
+            }
+        }
+        return AsyncPaging.await(statement);
     }
 
     /**
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.metadata.schema.ColumnMetadata;
+import com.datastax.oss.driver.api.core.metadata.token.Token;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import io.github.rtib.cassandra.aviary.model.IOrigin;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Calculate the token of canaries without querying the cluster. The partition
+ * key values of a canary are encoded with the codecs of the column types and
+ * hashed by the partitioner of the connected cluster.
+ * @see CanaryValues
+ * @author repasi
+ */
+public class TokenCalculator {
+
+    private final CqlSession cqlSession;
+    private final CassandraMetadataHelper helper;
+    private final CanaryValues values;
+    private final Map<IOrigin, List<ColumnMetadata>> partitionKeys = new ConcurrentHashMap<>();
+
+    public TokenCalculator(CqlSession cqlSession) {
+        this.cqlSession = cqlSession;
+        this.helper = new CassandraMetadataHelper(cqlSession);
+        this.values = new CanaryValues(cqlSession);
+    }
+
+    /**
+     * @return the token map of the connected cluster
+     */
+    public TokenMap getTokenMap() {
+        return cqlSession.getMetadata().getTokenMap().orElseThrow();
+    }
+
+    /**
+     * Calculate the token of the partition a canary belongs to.
+     * @param canary the canary
+     * @return the token of the canary
+     * @throws IllegalArgumentException if a partition key value is missing or cannot be converted
+     */
+    public Token tokenOf(ICanary canary) {
+        List<ColumnMetadata> columns = partitionKeys.computeIfAbsent(canary.getOrigin(),
+                origin -> helper.getTableMetadata(origin).getPartitionKey());
+        ByteBuffer[] components = new ByteBuffer[columns.size()];
+        for (int i = 0; i < components.length; i++) {
+            ColumnMetadata column = columns.get(i);
+            String name = column.getName().asCql(true);
+            if (!canary.getIdentifier().containsKey(name))
+                throw new IllegalArgumentException("Missing partition key field " + name + " of " + canary);
+            components[i] = values.encode(column.getType(), canary.getIdentifier().get(name));
+        }
+        return getTokenMap().newToken(components);
+    }
+}
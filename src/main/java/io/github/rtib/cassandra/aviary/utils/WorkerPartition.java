@@ -0,0 +1,89 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import java.io.File;
+
+/**
+ * Share of the work of a run taken by one of several independent workers.
+ * Work items, e.g. the token ranges of an origin or canaries, are identified
+ * by a string key and assigned to a worker by the hash of the key, so every
+ * worker given the same input takes a disjoint share, and all workers
+ * together take every item exactly once, without any coordination.
+ *
+ * @param index number of the worker, starting at 1
+ * @param count total number of workers
+ * @author repasi
+ */
+public record WorkerPartition(int index, int count) {
+
+    /**
+     * A single worker taking all of the work.
+     */
+    public static final WorkerPartition SINGLE = new WorkerPartition(1, 1);
+
+    public WorkerPartition {
+        if (count < 1 || index < 1 || index > count)
+            throw new IllegalArgumentException("Worker " + index + "/" + count + " out of range, expecting 1 <= i <= N.");
+    }
+
+    /**
+     * @return true if there is a single worker taking all of the work
+     */
+    public boolean isSingle() {
+        return count == 1;
+    }
+
+    /**
+     * Check a work item to be taken by this worker. Keys are hashed by the
+     * specified String.hashCode, mixed to spread similar keys evenly.
+     * @param key the key identifying the work item
+     * @return true if the item is taken by this worker
+     */
+    public boolean owns(String key) {
+        if (count == 1)
+            return true;
+        long h = key.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 29;
+        return Math.floorMod(h, (long) count) == index - 1;
+    }
+
+    /**
+     * Derive the shard file of this worker from a file by appending the
+     * worker to the base name, e.g. aviary-2of4.json. The file is kept if
+     * there is a single worker.
+     * @param file the file given, may be null
+     * @return the shard file of this worker
+     */
+    public File shardFile(File file) {
+        if (file == null || count == 1)
+            return file;
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String suffix = "-" + index + "of" + count;
+        String shardName = dot > 0
+                ? name.substring(0, dot) + suffix + name.substring(dot)
+                : name + suffix;
+        return new File(file.getParentFile(), shardName);
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import picocli.CommandLine.ITypeConverter;
+
+/**
+ * PicoCLI helper class to convert a String option value like 2/4 to the
+ * partition of the second of four workers.
+ * @author repasi
+ */
+public class WorkerPartitionConverter implements ITypeConverter<WorkerPartition> {
+
+    @Override
+    public WorkerPartition convert(String string) throws Exception {
+        String[] parts = string.trim().split("/", 2);
+        if (parts.length != 2)
+            throw new IllegalArgumentException("Worker expected as i/N, got " + string);
+        return new WorkerPartition(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+    }
+    
+}
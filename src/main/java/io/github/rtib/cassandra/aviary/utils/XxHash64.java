@@ -0,0 +1,169 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming implementation of the 64 bit xxHash, a fast non-cryptographic
+ * hash function. Data is hashed incrementally from byte buffers without
+ * copying them, except of the bytes not filling a complete stripe.
+ * @see <a href="https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md">xxHash specification</a>
+ * @author repasi
+ */
+public final class XxHash64 {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+    private static final int STRIPE = 32;
+
+    private final long seed;
+    private final byte[] buffer = new byte[STRIPE];
+    private final ByteBuffer bufferView = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+    private int buffered;
+    private long length;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+
+    public XxHash64() {
+        this(0);
+    }
+
+    public XxHash64(long seed) {
+        this.seed = seed;
+        reset();
+    }
+
+    /**
+     * Restart hashing with the seed.
+     * @return this instance
+     */
+    public XxHash64 reset() {
+        v1 = seed + PRIME1 + PRIME2;
+        v2 = seed + PRIME2;
+        v3 = seed;
+        v4 = seed - PRIME1;
+        buffered = 0;
+        length = 0;
+        return this;
+    }
+
+    /**
+     * Hash the remaining bytes of a buffer, the position of the buffer is
+     * not changed.
+     * @param data bytes to hash
+     * @return this instance
+     */
+    public XxHash64 update(ByteBuffer data) {
+        ByteBuffer in = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        length += in.remaining();
+        if (buffered > 0) {
+            int n = Math.min(STRIPE - buffered, in.remaining());
+            in.get(buffer, buffered, n);
+            buffered += n;
+            if (buffered < STRIPE)
+                return this;
+            stripe(bufferView, 0);
+            buffered = 0;
+        }
+        while (in.remaining() >= STRIPE) {
+            int p = in.position();
+            stripe(in, p);
+            in.position(p + STRIPE);
+        }
+        buffered = in.remaining();
+        in.get(buffer, 0, buffered);
+        return this;
+    }
+
+    /**
+     * Hash the four bytes of an integer in little endian order.
+     * @param value the integer
+     * @return this instance
+     */
+    public XxHash64 update(int value) {
+        length += Integer.BYTES;
+        for (int i = 0; i < Integer.BYTES; i++, value >>>= 8) {
+            buffer[buffered++] = (byte) value;
+            if (buffered == STRIPE) {
+                stripe(bufferView, 0);
+                buffered = 0;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return the hash of all bytes hashed since the last reset
+     */
+    public long digest() {
+        long h;
+        if (length >= STRIPE) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = seed + PRIME5;
+        }
+        h += length;
+        int p = 0;
+        for (; p + Long.BYTES <= buffered; p += Long.BYTES) {
+            h ^= round(0, bufferView.getLong(p));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+        if (p + Integer.BYTES <= buffered) {
+            h ^= Integer.toUnsignedLong(bufferView.getInt(p)) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            p += Integer.BYTES;
+        }
+        for (; p < buffered; p++) {
+            h ^= (buffer[p] & 0xFFL) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+        }
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private void stripe(ByteBuffer in, int p) {
+        v1 = round(v1, in.getLong(p));
+        v2 = round(v2, in.getLong(p + 8));
+        v3 = round(v3, in.getLong(p + 16));
+        v4 = round(v4, in.getLong(p + 24));
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long merge(long acc, long v) {
+        acc ^= round(0, v);
+        return acc * PRIME1 + PRIME4;
+    }
+}
@@ -18,12 +18,21 @@ package io.github.rtib.cassandra.aviary.verifier;
 import com.datastax.oss.driver.api.core.CqlSession;
 import io.github.rtib.cassandra.aviary.model.ICanary;
 import io.github.rtib.cassandra.aviary.model.IOrigin;
+import io.github.rtib.cassandra.aviary.report.IRunReport;
+import io.github.rtib.cassandra.aviary.utils.CanaryValues;
 import io.github.rtib.cassandra.aviary.utils.CassandraMetadataHelper;
+import io.github.rtib.cassandra.aviary.utils.ExecutionProfiles;
+import io.github.rtib.cassandra.aviary.utils.ProgressTracker;
+import io.github.rtib.cassandra.aviary.utils.RangeOwnership;
 import io.github.rtib.cassandra.aviary.utils.StatementCache;
+import io.github.rtib.cassandra.aviary.utils.TokenCalculator;
+import io.github.rtib.cassandra.aviary.utils.WorkerPartition;
+import java.io.PrintStream;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.TreeMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.function.Predicate;
@@ -39,12 +48,87 @@ public abstract class AbstractVerifier extends StatementCache<IOrigin> implement
     protected final Iterable<ICanary> reader;
     protected final ExecutorService executor;
     protected final CassandraMetadataHelper helper;
+    protected final CanaryValues values;
+    protected final TokenCalculator tokens;
+    protected ProgressTracker progress;
+    protected IRunReport report;
+    protected PrintStream out;
+    protected int maxInFlightPerNode;
+    protected String executionProfile;
+    protected RangeOwnership rangeOwnership;
+    protected WorkerPartition worker;
     
     public AbstractVerifier(CqlSession session, Iterable<ICanary> reader, ExecutorService executor) {
         this.cqlSession = session;
         this.reader = reader;
         this.executor = executor;
         this.helper = new CassandraMetadataHelper(session);
+        this.values = new CanaryValues(session);
+        this.tokens = new TokenCalculator(session);
+        this.progress = new ProgressTracker();
+        this.report = IRunReport.NONE;
+        this.out = System.out;
+        this.executionProfile = ExecutionProfiles.POINT_READ;
+        this.rangeOwnership = RangeOwnership.ALL;
+        this.worker = WorkerPartition.SINGLE;
+    }
+    
+    @Override
+    public void setProgressTracker(ProgressTracker tracker) {
+        this.progress = tracker;
+    }
+    
+    @Override
+    public void setRunReport(IRunReport report) {
+        this.report = report;
+    }
+    
+    @Override
+    public void setOutput(PrintStream out) {
+        this.out = out;
+    }
+    
+    @Override
+    public void setMaxInFlightPerNode(int maxInFlightPerNode) {
+        this.maxInFlightPerNode = maxInFlightPerNode;
+    }
+    
+    @Override
+    public void setExecutionProfile(String profile) {
+        this.executionProfile = profile;
+    }
+    
+    @Override
+    public void setRangeOwnership(RangeOwnership ownership) {
+        this.rangeOwnership = ownership;
+    }
+    
+    @Override
+    public void setWorkerPartition(WorkerPartition worker) {
+        this.worker = worker;
+    }
+    
+    /**
+     * Check a canary to be taken by this worker and to be in a token range
+     * owned as restricted by the range ownership. The worker of a canary is
+     * given by its origin and primary key, fields are taken in order of their
+     * names, as the order of the identifier map differs between processes.
+     * Canaries the token of which cannot
+     * be calculated are taken as owned, so their verification fails and gets
+     * reported.
+     * @param canary the canary
+     * @return true if the canary is to be verified
+     */
+    protected boolean isOwned(ICanary canary) {
+        if (!worker.isSingle() && !worker.owns(canary.getOrigin() + ":" + new TreeMap<>(canary.getIdentifier())))
+            return false;
+        if (rangeOwnership.isAll())
+            return true;
+        try {
+            return rangeOwnership.owns(canary.getOrigin().getKeyspace(), tokens.tokenOf(canary));
+        } catch (RuntimeException ex) {
+            return true;
+        }
     }
     
     public static Builder builder() {
@@ -58,6 +142,13 @@ public abstract class AbstractVerifier extends StatementCache<IOrigin> implement
         private ExecutorService executor;
         private Iterable<ICanary> reader;
         private List<Predicate<IOrigin>> filters = Collections.EMPTY_LIST;
+        private ProgressTracker progress;
+        private IRunReport report;
+        private PrintStream out;
+        private int maxInFlightPerNode;
+        private String executionProfile = ExecutionProfiles.POINT_READ;
+        private RangeOwnership rangeOwnership;
+        private WorkerPartition worker;
 
         public Builder() {
             this.executor = Executors.newVirtualThreadPerTaskExecutor();
@@ -100,12 +191,64 @@ public abstract class AbstractVerifier extends StatementCache<IOrigin> implement
             return this;
         }
         
+        public Builder withOriginFilter(final Predicate<IOrigin> filter) {
+            this.filters = List.of(filter);
+            return this;
+        }
+        
+        public Builder withProgressTracker(final ProgressTracker progress) {
+            this.progress = progress;
+            return this;
+        }
+        
+        public Builder withRunReport(final IRunReport report) {
+            this.report = report;
+            return this;
+        }
+        
+        public Builder withOutput(final PrintStream out) {
+            this.out = out;
+            return this;
+        }
+        
+        public Builder withMaxInFlightPerNode(final int maxInFlightPerNode) {
+            this.maxInFlightPerNode = maxInFlightPerNode;
+            return this;
+        }
+        
+        public Builder withExecutionProfile(final String profile) {
+            this.executionProfile = profile;
+            return this;
+        }
+        
+        public Builder withRangeOwnership(final RangeOwnership ownership) {
+            this.rangeOwnership = ownership;
+            return this;
+        }
+        
+        public Builder withWorkerPartition(final WorkerPartition worker) {
+            this.worker = worker;
+            return this;
+        }
+        
         public ICanaryVerifier build() throws VerifierBuilderException {
             ICanaryVerifier inst;
             try {
                 inst = (ICanaryVerifier) selectorClass.getConstructor(CqlSession.class, Iterable.class, ExecutorService.class)
                         .newInstance(session, reader, executor);
-                inst.setOriginFilter(filters.stream().reduce(x->true, Predicate::and));
+                inst.setOriginFilter(filters.size() == 1 ? filters.get(0) : filters.stream().reduce(x->true, Predicate::and));
+                if (progress != null)
+                    inst.setProgressTracker(progress);
+                if (report != null)
+                    inst.setRunReport(report);
+                if (out != null)
+                    inst.setOutput(out);
+                inst.setMaxInFlightPerNode(maxInFlightPerNode);
+                inst.setExecutionProfile(executionProfile);
+                if (rangeOwnership != null)
+                    inst.setRangeOwnership(rangeOwnership);
+                if (worker != null)
+                    inst.setWorkerPartition(worker);
             } catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException ex) {
                 throw new VerifierBuilderException("Failed to build verifier instance.", ex);
             }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.verifier;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.querybuilder.select.Select;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import io.github.rtib.cassandra.aviary.model.IOrigin;
+import io.github.rtib.cassandra.aviary.utils.RowChecksum;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Verifier checking the existence and the content of canaries. The canary
+ * query reads the regular columns along with the primary key, and their
+ * checksum is compared to the one recorded when selecting the canary, so
+ * changed data is detected with the same single query per canary.
+ *
+ * Canaries selected without checksum are verified by existence only.
+ * @see io.github.rtib.cassandra.aviary.selector.RangeSelector#CHECKSUM_OPTION
+ * @author repasi
+ */
+public class ChecksumVerifier extends SimpleVerifier {
+
+    private static final Logger LOG = Logger.getLogger(ChecksumVerifier.class.getName());
+
+    public ChecksumVerifier(CqlSession session, Iterable<ICanary> reader, ExecutorService executor) {
+        super(session, reader, executor);
+    }
+
+    @Override
+    protected boolean matches(ICanary canary, Row row) {
+        if (canary.getChecksum() == null)
+            return true;
+        String checksum = RowChecksum.of(row, helper.getRegularColumns(canary.getOrigin()));
+        LOG.log(Level.FINEST, "Checksum of {0} is {1}", new Object[]{canary, checksum});
+        return checksum.equals(canary.getChecksum());
+    }
+
+    @Override
+    protected Select canaryQuery(IOrigin key) {
+        return super.canaryQuery(key).columnsIds(helper.getRegularColumns(key));
+    }
+}
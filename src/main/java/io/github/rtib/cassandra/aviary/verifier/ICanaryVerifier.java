@@ -16,6 +16,11 @@
 package io.github.rtib.cassandra.aviary.verifier;
 
 import io.github.rtib.cassandra.aviary.model.IOrigin;
+import io.github.rtib.cassandra.aviary.report.IRunReport;
+import io.github.rtib.cassandra.aviary.utils.ProgressTracker;
+import io.github.rtib.cassandra.aviary.utils.RangeOwnership;
+import io.github.rtib.cassandra.aviary.utils.WorkerPartition;
+import java.io.PrintStream;
 import java.util.function.Predicate;
 
 /**
@@ -35,4 +40,49 @@ public interface ICanaryVerifier {
      * @param filter a stream predicate that apply to IOrigin entries
      */
     default void setOriginFilter(Predicate<IOrigin> filter) {};
+
+    /**
+     * Set the tracker the progress of the verification is accounted to.
+     * @param tracker progress counters to update while verifying
+     */
+    default void setProgressTracker(ProgressTracker tracker) {};
+
+    /**
+     * Set the report the results of the verification are streamed to.
+     * @param report a machine-readable run report
+     */
+    default void setRunReport(IRunReport report) {};
+
+    /**
+     * Set the stream the results of the verification are printed to.
+     * @param out stream of human-readable results
+     */
+    default void setOutput(PrintStream out) {};
+
+    /**
+     * Set the maximum of queries in flight to a single node, for verifiers
+     * querying nodes directly.
+     * @param maxInFlightPerNode concurrent queries per node, zero or less for unbounded
+     */
+    default void setMaxInFlightPerNode(int maxInFlightPerNode) {};
+
+    /**
+     * Set the driver execution profile of the canary queries.
+     * @param profile name of the execution profile, null for the default profile
+     */
+    default void setExecutionProfile(String profile) {};
+
+    /**
+     * Restrict the verification to canaries in the token ranges owned by
+     * some nodes.
+     * @param ownership the ranges of the canaries to verify
+     */
+    default void setRangeOwnership(RangeOwnership ownership) {};
+
+    /**
+     * Set the share of the canaries verified by this worker, if the
+     * verification is partitioned across several workers.
+     * @param worker the partition of the worker
+     */
+    default void setWorkerPartition(WorkerPartition worker) {};
 }
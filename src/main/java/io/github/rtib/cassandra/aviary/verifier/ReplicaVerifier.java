@@ -0,0 +1,390 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.verifier;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.DefaultConsistencyLevel;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.metadata.token.Token;
+import com.datastax.oss.driver.api.core.metadata.token.TokenRange;
+import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import static com.datastax.oss.driver.api.querybuilder.QueryBuilder.bindMarker;
+import com.datastax.oss.driver.api.querybuilder.select.Select;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import io.github.rtib.cassandra.aviary.model.IOrigin;
+import io.github.rtib.cassandra.aviary.report.IRunReport.CanaryStatus;
+import io.github.rtib.cassandra.aviary.storage.OriginArray;
+import io.github.rtib.cassandra.aviary.utils.ExecutionProfiles;
+import io.github.rtib.cassandra.aviary.utils.RowChecksum;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Verifier reading each canary from each of its replicas. Every replica is
+ * queried directly as coordinator at consistency ONE, so the read is served
+ * by the replica itself and no blocking read repair is triggered. The rows
+ * returned are compared by the checksum of their regular columns: to the
+ * checksum recorded with the canary if there is one, otherwise to the
+ * checksum returned by most replicas.
+ *
+ * The number of queries in flight to each node is bounded, so the verifier
+ * is safe to run against production clusters. Results are aggregated by
+ * origin, by node and by token range, pointing to replicas having lost data
+ * e.g. by failed streaming after topology changes.
+ *
+ * @author repasi
+ */
+public class ReplicaVerifier extends AbstractVerifier {
+
+    private static final Logger LOG = Logger.getLogger(ReplicaVerifier.class.getName());
+
+    /**
+     * State of a canary on a single replica.
+     */
+    public enum Status {
+        /** The row exists with the expected content. */
+        PRESENT,
+        /** The row does not exist. */
+        MISSING,
+        /** The row exists with different content. */
+        MISMATCH,
+        /** The replica failed to answer. */
+        ERROR
+    }
+
+    private final Map<Node, Semaphore> permits = new ConcurrentHashMap<>();
+    private TreeMap<Token, TokenRange> ring;
+    private Predicate<IOrigin> originFilter = x -> true;
+
+    public ReplicaVerifier(CqlSession session, Iterable<ICanary> reader, ExecutorService executor) {
+        super(session, reader, executor);
+    }
+
+    @Override
+    public void setOriginFilter(Predicate<IOrigin> filter) {
+        this.originFilter = filter;
+    }
+
+    @Override
+    public void verifyCanaries() {
+        long start = System.nanoTime();
+        report.begin("verify", cqlSession.getMetadata());
+        ring = new TreeMap<>();
+        for (TokenRange range : tokens.getTokenMap().getTokenRanges())
+            ring.put(range.getEnd(), range);
+
+        // bound the canaries pending, so the input is streamed
+        int window = 2 * Math.max(1, maxInFlightPerNode) * Math.max(1, cqlSession.getMetadata().getNodes().size());
+        CompletionService<Checked> tasks = new ExecutorCompletionService<>(executor);
+        Results results = new Results();
+        int pending = 0;
+        try {
+            for (var canary : reader) {
+                if (originFilter.test(canary.getOrigin()) && isOwned(canary)) {
+                    progress.addTotal(1);
+                    tasks.submit(() -> check(canary));
+                    pending++;
+                    for (Future<Checked> f; (f = tasks.poll()) != null; pending--)
+                        collect(f, results);
+                    for (; pending >= window; pending--)
+                        collect(tasks.take(), results);
+                }
+            }
+            for (; pending > 0; pending--)
+                collect(tasks.take(), results);
+        } catch (InterruptedException ex) {
+            LOG.log(Level.SEVERE, "Interrupted while waiting for verifications.", ex);
+            Thread.currentThread().interrupt();
+        }
+
+        results.origins.forEach((origin, counters) -> report.originSummary(origin, counters.toMap()));
+        results.nodes.forEach((node, counters) -> report.nodeSummary(node, counters.toMap()));
+        results.ranges.forEach((origin, ranges) -> ranges.forEach((range, counters) ->
+                report.rangeSummary(origin, range, counters.toMap())));
+        report.end(System.nanoTime() - start);
+
+        results.origins.forEach((origin, counters) -> out.println(String.format("%s: %s", origin, counters)));
+        results.nodes.entrySet().stream()
+                .sorted(Comparator.comparing(e -> e.getKey().getEndPoint().toString()))
+                .forEach(e -> out.println(String.format("%s (%s): %s",
+                        e.getKey().getEndPoint(), e.getKey().getDatacenter(), e.getValue())));
+        TokenMap tokenMap = tokens.getTokenMap();
+        results.ranges.forEach((origin, ranges) -> ranges.forEach((range, counters) ->
+                out.println(String.format("%s (%s, %s]: %s", origin,
+                        tokenMap.format(range.getStart()), tokenMap.format(range.getEnd()), counters))));
+    }
+
+    /**
+     * Account the result of a checked canary. Canaries not present and
+     * consistent on all replicas are reported individually.
+     */
+    private void collect(Future<Checked> f, Results results) {
+        try {
+            Checked checked = f.get();
+            ICanary canary = checked.canary();
+            boolean consistent = checked.error() == null && !checked.replicas().isEmpty()
+                    && checked.replicas().values().stream().allMatch(s -> s == Status.PRESENT);
+            results.origins.computeIfAbsent(canary.getOrigin(), o -> new OriginCounters())
+                    .add(consistent, checked.error() != null);
+            checked.replicas().forEach((node, status) ->
+                    results.nodes.computeIfAbsent(node, n -> new NodeCounters()).add(status));
+            if (!consistent) {
+                if (checked.range() != null)
+                    results.ranges.computeIfAbsent(canary.getOrigin(), o -> new LinkedHashMap<>())
+                            .computeIfAbsent(checked.range(), r -> new RangeCounters())
+                            .add(checked.replicas().values());
+                String detail = checked.error() != null ? checked.error().toString()
+                        : checked.replicas().entrySet().stream()
+                                .filter(e -> e.getValue() != Status.PRESENT)
+                                .map(e -> e.getValue().name().toLowerCase() + " on " + e.getKey().getEndPoint())
+                                .collect(Collectors.joining(", "));
+                report.canaryResult(canary,
+                        checked.error() != null ? CanaryStatus.ERROR :
+                        checked.replicas().containsValue(Status.PRESENT) ? CanaryStatus.INCONSISTENT : CanaryStatus.MISSING,
+                        checked.nanos(), detail);
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            LOG.log(Level.SEVERE, "Failed to process results of: " + f, ex);
+        }
+    }
+
+    /**
+     * Read a canary from each of its replicas keeping track of progress and
+     * timing.
+     */
+    private Checked check(ICanary canary) {
+        progress.started();
+        long start = System.nanoTime();
+        try {
+            Token token = tokens.tokenOf(canary);
+            Set<Node> replicas = tokens.getTokenMap().getReplicas(canary.getOrigin().getKeyspace(), token);
+            BoundStatement stmt = values.bind(getStatement(canary.getOrigin()), canary)
+                    .setConsistencyLevel(DefaultConsistencyLevel.ONE)
+                    .setIdempotent(true);
+            Map<Node, String> checksums = new LinkedHashMap<>();
+            Map<Node, Status> statuses = new LinkedHashMap<>();
+            for (Node node : replicas) {
+                try {
+                    String checksum = read(stmt, node, canary.getOrigin());
+                    checksums.put(node, checksum);
+                    statuses.put(node, checksum == null ? Status.MISSING : Status.PRESENT);
+                } catch (RuntimeException ex) {
+                    LOG.log(Level.WARNING, "Failed to read " + canary + " from " + node.getEndPoint(), ex);
+                    statuses.put(node, Status.ERROR);
+                }
+            }
+            String expected = canary.getChecksum() != null ? canary.getChecksum() : majority(checksums.values());
+            checksums.forEach((node, checksum) -> {
+                if (checksum != null && !checksum.equals(expected))
+                    statuses.put(node, Status.MISMATCH);
+            });
+            boolean consistent = !statuses.isEmpty() && statuses.values().stream().allMatch(s -> s == Status.PRESENT);
+            progress.finished(consistent ? 1 : 0);
+            return new Checked(canary, rangeOf(token), statuses, System.nanoTime() - start, null);
+        } catch (RuntimeException ex) {
+            LOG.log(Level.SEVERE, "Failed to verify " + canary, ex);
+            progress.failed();
+            return new Checked(canary, null, Map.of(), System.nanoTime() - start, ex);
+        }
+    }
+
+    /**
+     * Read the canary row from a single node, waiting for a permit of the
+     * node if it has reached its maximum of queries in flight.
+     * @return the checksum of the row, null if the row does not exist
+     */
+    private String read(BoundStatement stmt, Node node, IOrigin origin) {
+        Semaphore permit = maxInFlightPerNode > 0
+                ? permits.computeIfAbsent(node, n -> new Semaphore(maxInFlightPerNode, true))
+                : null;
+        if (permit != null)
+            permit.acquireUninterruptibly();
+        try {
+            Row row = cqlSession.execute(stmt.setNode(node)).one();
+            return row == null ? null : RowChecksum.of(row, helper.getRegularColumns(origin));
+        } finally {
+            if (permit != null)
+                permit.release();
+        }
+    }
+
+    /**
+     * The checksum returned by most replicas, ties are broken by replica order.
+     */
+    private static String majority(Iterable<String> checksums) {
+        Map<String, Integer> votes = new LinkedHashMap<>();
+        for (String checksum : checksums)
+            if (checksum != null)
+                votes.merge(checksum, 1, Integer::sum);
+        return votes.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .orElse(null);
+    }
+
+    /**
+     * The token range of the ring a token belongs to. Ranges are keyed by
+     * their end, the first range wraps around the ring.
+     */
+    private TokenRange rangeOf(Token token) {
+        var entry = ring.ceilingEntry(token);
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    @Override
+    public PreparedStatement prepareStatementFor(IOrigin key) {
+        Select query = QueryBuilder
+                .selectFrom(key.getKeyspace(), key.getTable())
+                .columns(helper.getPrimaryKey(key))
+                .columnsIds(helper.getRegularColumns(key));
+        for (var pkField : helper.getPrimaryKey(key))
+            query = query
+                    .whereColumn(pkField)
+                    .isEqualTo(bindMarker());
+        LOG.log(Level.FINE, "Preparing for {0} statement {1}", new Object[]{key, query});
+        return cqlSession.prepare(ExecutionProfiles.apply(cqlSession, query.build(), executionProfile));
+    }
+
+    /**
+     * Results aggregated by origin, by node and by range of inconsistent
+     * canaries. Only accessed by the thread collecting the results.
+     */
+    private static final class Results {
+        private final OriginArray<OriginCounters> origins = new OriginArray<>();
+        private final Map<Node, NodeCounters> nodes = new HashMap<>();
+        private final OriginArray<Map<TokenRange, RangeCounters>> ranges = new OriginArray<>();
+    }
+
+    /**
+     * Count the canaries of an origin and those consistent on all replicas.
+     */
+    public static final class OriginCounters {
+        private int consistent;
+        private int total;
+        private int errors;
+
+        public void add(boolean consistent, boolean error) {
+            this.consistent += consistent ? 1 : 0;
+            this.total++;
+            this.errors += error ? 1 : 0;
+        }
+
+        public Map<String, Integer> toMap() {
+            Map<String, Integer> map = new LinkedHashMap<>();
+            map.put("consistent", consistent);
+            map.put("total", total);
+            map.put("errors", errors);
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            return consistent + "/" + total;
+        }
+    }
+
+    /**
+     * Count the states of canaries read from a node.
+     */
+    public static final class NodeCounters {
+        private final int[] counts = new int[Status.values().length];
+
+        public void add(Status status) {
+            counts[status.ordinal()]++;
+        }
+
+        public int count(Status status) {
+            return counts[status.ordinal()];
+        }
+
+        public Map<String, Integer> toMap() {
+            Map<String, Integer> map = new LinkedHashMap<>();
+            map.put("checked", Arrays.stream(counts).sum());
+            for (Status status : Status.values())
+                map.put(status.name().toLowerCase(), count(status));
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            return toMap().entrySet().stream()
+                    .map(e -> e.getKey() + "=" + e.getValue())
+                    .collect(Collectors.joining(", "));
+        }
+    }
+
+    /**
+     * Count the inconsistent canaries of a token range and the states of
+     * their replicas.
+     */
+    public static final class RangeCounters {
+        private int affected;
+        private final NodeCounters replicas = new NodeCounters();
+
+        public void add(Iterable<Status> statuses) {
+            affected++;
+            for (Status status : statuses)
+                if (status != Status.PRESENT)
+                    replicas.add(status);
+        }
+
+        public Map<String, Integer> toMap() {
+            Map<String, Integer> map = new LinkedHashMap<>();
+            map.put("canaries", affected);
+            for (Status status : Status.values())
+                if (status != Status.PRESENT)
+                    map.put(status.name().toLowerCase(), replicas.count(status));
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            List<String> parts = new ArrayList<>();
+            parts.add("canaries=" + affected);
+            for (Status status : Status.values())
+                if (status != Status.PRESENT && replicas.count(status) > 0)
+                    parts.add(status.name().toLowerCase() + "=" + replicas.count(status));
+            return String.join(", ", parts);
+        }
+    }
+
+    /**
+     * Represents the result of reading a canary from its replicas.
+     */
+    public record Checked(ICanary canary, TokenRange range, Map<Node, Status> replicas, long nanos, Throwable error) {}
+}
@@ -16,26 +16,29 @@
 package io.github.rtib.cassandra.aviary.verifier;
 
 import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
+import com.datastax.oss.driver.api.core.config.DriverExecutionProfile;
 import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
-import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
 import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
 import static com.datastax.oss.driver.api.querybuilder.QueryBuilder.bindMarker;
 import com.datastax.oss.driver.api.querybuilder.select.Select;
 import io.github.rtib.cassandra.aviary.model.ICanary;
 import io.github.rtib.cassandra.aviary.model.IOrigin;
+import io.github.rtib.cassandra.aviary.report.IRunReport.CanaryStatus;
+import io.github.rtib.cassandra.aviary.storage.OriginArray;
+import io.github.rtib.cassandra.aviary.utils.ExecutionProfiles;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 /**
  *
@@ -57,63 +60,130 @@ public class SimpleVerifier extends AbstractVerifier {
 
     @Override
     public void verifyCanaries() {
-        // Create callable tasks for each canary, submit them and store their Futures.
-        Queue<Future<Verified>> tasks = new ConcurrentLinkedQueue<>();
-        for (var canary : reader) {
-            if (originFilter.test(canary.getOrigin())) {
-                Callable<Verified> task = () -> {
-                    return verifyCanary(canary);
-                };
-                tasks.add(executor.submit(task));
-            }
-        }
+        long start = System.nanoTime();
+        report.begin("verify", cqlSession.getMetadata());
         
-        // Process the Futures and sum up the results by origin
-        Map<IOrigin, Counters> results = new ConcurrentHashMap<>();
-        while (!tasks.isEmpty()) {
-            tasks.stream()
-                    .filter(f -> f.isDone())
-                    .forEach((Future<Verified> f) -> {
-                        try {
-                            var origin = f.get().canary().getOrigin();
-                            if (!results.containsKey(origin)) {
-                                results.put(origin, new Counters());
-                            }
-                            results.get(origin).add(f.get().exists());
-                        } catch (InterruptedException | ExecutionException ex) {
-                            LOG.log(Level.SEVERE, "Failed to process results of: " + f, ex);
-                        } finally {
-                            tasks.remove(f);
-                        }
-                    });
+        // Create tasks for each canary and submit them, while collecting the
+        // results of completed tasks and sum them up by origin. The canaries
+        // pending are bounded, so the input is streamed and the requests in
+        // flight do not exhaust the connections.
+        int window = window();
+        CompletionService<Verified> tasks = new ExecutorCompletionService<>(executor);
+        OriginArray<Counters> results = new OriginArray<>();
+        int pending = 0;
+        try {
+            for (var canary : reader) {
+                if (originFilter.test(canary.getOrigin()) && isOwned(canary)) {
+                    progress.addTotal(1);
+                    tasks.submit(() -> verify(canary));
+                    pending++;
+                    for (Future<Verified> f; (f = tasks.poll()) != null; pending--)
+                        collect(f, results);
+                    for (; pending >= window; pending--)
+                        collect(tasks.take(), results);
+                }
+            }
+            for (; pending > 0; pending--)
+                collect(tasks.take(), results);
+        } catch (InterruptedException ex) {
+            LOG.log(Level.SEVERE, "Interrupted while waiting for verifications.", ex);
+            Thread.currentThread().interrupt();
         }
         
         // Print results
-        results.entrySet().stream()
-                .map(e -> String.format("%s: %s", e.getKey(), e.getValue()))
-                .forEach(System.out::println);
+        results.forEach((origin, counters) -> report.originSummary(origin, counters.toMap()));
+        report.end(System.nanoTime() - start);
+        results.forEach((origin, counters) -> out.println(String.format("%s: %s", origin, counters)));
+    }
+    
+    /**
+     * Number of canaries verified at once: half the requests the connection
+     * pools of the nodes can carry, leaving room for canaries not evenly
+     * spread over the nodes.
+     */
+    private int window() {
+        DriverExecutionProfile profile = cqlSession.getContext().getConfig().getDefaultProfile();
+        int perNode = profile.getInt(DefaultDriverOption.CONNECTION_POOL_LOCAL_SIZE)
+                * profile.getInt(DefaultDriverOption.CONNECTION_MAX_REQUESTS);
+        return Math.max(1, perNode / 2 * cqlSession.getMetadata().getNodes().size());
+    }
+
+    /**
+     * Account the result of a completed verification. Only missing, changed
+     * and failed canaries are reported individually.
+     */
+    private void collect(Future<Verified> f, OriginArray<Counters> results) {
+        try {
+            Verified verified = f.get();
+            results.computeIfAbsent(verified.canary().getOrigin(), o -> new Counters()).add(verified);
+            if (verified.error() != null)
+                report.canaryResult(verified.canary(), CanaryStatus.ERROR, verified.nanos(), verified.error().toString());
+            else if (!verified.exists())
+                report.canaryResult(verified.canary(), CanaryStatus.MISSING, verified.nanos(), null);
+            else if (verified.changed())
+                report.canaryResult(verified.canary(), CanaryStatus.CHANGED, verified.nanos(), null);
+        } catch (InterruptedException | ExecutionException ex) {
+            LOG.log(Level.SEVERE, "Failed to process results of: " + f, ex);
+        }
     }
     
     /**
-     * Verify the existence of a canary.
+     * Verify a canary keeping track of progress, timing and errors.
+     */
+    private Verified verify(ICanary canary) {
+        progress.started();
+        long start = System.nanoTime();
+        try {
+            Row row = fetchCanary(canary);
+            boolean exists = row != null;
+            boolean changed = exists && !matches(canary, row);
+            if (changed)
+                LOG.log(Level.WARNING, "Content of {0} has changed", canary);
+            progress.finished(exists && !changed ? 1 : 0);
+            return new Verified(canary, exists, changed, System.nanoTime() - start, null);
+        } catch (RuntimeException ex) {
+            LOG.log(Level.SEVERE, "Failed to verify " + canary, ex);
+            progress.failed();
+            return new Verified(canary, false, false, System.nanoTime() - start, ex);
+        }
+    }
+    
+    /**
+     * Check the content of a canary row found. This verifier checks the
+     * existence of canaries only, so any row found matches.
+     * @param canary the canary verified
+     * @param row the row of the canary as read by the canary query
+     * @return true if the row matches the canary
+     */
+    protected boolean matches(ICanary canary, Row row) {
+        return true;
+    }
+    
+    /**
+     * Read the row of a canary.
      * @param canary the canary to be verify
-     * @return a Verified record holding the canary and the result of its existence check
+     * @return the row of the canary, null if it does not exist
      */
-    private Verified verifyCanary(ICanary canary) {
-        BoundStatement query;
-        query = getStatement(canary.getOrigin())
-                .bind(
-                        helper.getPrimaryKey(canary.getOrigin()).stream()
-                                .map(pkField -> canary.getIdentifier().get(pkField))
-                                .collect(Collectors.toList())
-                                .toArray()
-                );
-        ResultSet res = cqlSession.execute(query);
-        return new Verified(canary, !res.all().isEmpty());
+    private Row fetchCanary(ICanary canary) {
+        BoundStatement query = values.bind(getStatement(canary.getOrigin()), canary)
+                .setIdempotent(true);
+        return cqlSession.execute(query).one();
     }
 
     @Override
     public PreparedStatement prepareStatementFor(IOrigin key) {
+        Select query = canaryQuery(key);
+        LOG.log(Level.FINE, "Preparing for {0} statement {1}", new Object[]{key, query});
+        return cqlSession.prepare(ExecutionProfiles.apply(cqlSession, query.build(), executionProfile));
+    }
+
+    /**
+     * Build the query reading the row of a canary. The query selects the
+     * primary key columns and has a bind marker for each of them.
+     * @param key the origin of the canaries
+     * @return the canary query
+     */
+    protected Select canaryQuery(IOrigin key) {
         Select query = QueryBuilder
                 .selectFrom(key.getKeyspace(), key.getTable())
                 .columns(helper.getPrimaryKey(key));
@@ -121,9 +191,7 @@ public class SimpleVerifier extends AbstractVerifier {
             query = query
                     .whereColumn(pkField)
                     .isEqualTo(bindMarker());
-                    
-        LOG.log(Level.FINE, "Preparing for {0} statement {1}", new Object[]{key, query});
-        return cqlSession.prepare(query.build());
+        return query;
     }
     
     /**
@@ -132,6 +200,8 @@ public class SimpleVerifier extends AbstractVerifier {
     public final class Counters {
         private int verified;
         private int total;
+        private int errors;
+        private int changed;
         
         public Counters() {
             this(0, 0);
@@ -147,9 +217,19 @@ public class SimpleVerifier extends AbstractVerifier {
             this.total++;
         }
         
+        public void add(Verified result) {
+            add(result.exists() && !result.changed());
+            if (result.changed())
+                this.changed++;
+            if (result.error() != null)
+                this.errors++;
+        }
+        
         public void add(Counters other) {
             this.verified += other.verified;
             this.total += other.total;
+            this.errors += other.errors;
+            this.changed += other.changed;
         }
         
         public int verified() {
@@ -160,14 +240,31 @@ public class SimpleVerifier extends AbstractVerifier {
             return this.total;
         }
         
+        public int errors() {
+            return this.errors;
+        }
+        
+        public int changed() {
+            return this.changed;
+        }
+        
+        public Map<String, Integer> toMap() {
+            Map<String, Integer> map = new LinkedHashMap<>();
+            map.put("verified", verified);
+            map.put("total", total);
+            map.put("errors", errors);
+            map.put("changed", changed);
+            return map;
+        }
+        
         @Override
         public String toString() {
-            return verified + "/" + total;
+            return verified + "/" + total + (changed == 0 ? "" : " (changed=" + changed + ")");
         }
     };
     
     /**
      * Represents the result of a canary verification.
      */
-    public record Verified(ICanary canary, boolean exists) {};
+    public record Verified(ICanary canary, boolean exists, boolean changed, long nanos, Throwable error) {};
 }
@@ -0,0 +1,421 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.commands;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import io.github.rtib.cassandra.aviary.selector.AbstractSelector;
+import io.github.rtib.cassandra.aviary.standin.StandInCluster;
+import io.github.rtib.cassandra.aviary.storage.AviaryReader;
+import io.github.rtib.cassandra.aviary.storage.AviaryWriter;
+import io.github.rtib.cassandra.aviary.utils.DriverConfigLoaders;
+import io.github.rtib.cassandra.aviary.utils.DurationConverter;
+import io.github.rtib.cassandra.aviary.utils.ProgressTracker;
+import io.github.rtib.cassandra.aviary.utils.SchedulingPolicy;
+import io.github.rtib.cassandra.aviary.verifier.AbstractVerifier;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+/**
+ *
+ * @author repasi
+ */
+@Command(
+        name = "bench",
+        description = """
+                      Benchmark the throughput of selecting and verifying canaries
+                      end to end, against in-process stand-in clusters of every
+                      combination of the configurations given. Results can be
+                      stored as baseline, and compared to a baseline to detect
+                      regressions.
+                      """
+)
+public class Bench extends AbstractCommand {
+
+    private static final Logger LOG = Logger.getLogger(Bench.class.getName());
+    private static final PrintStream NO_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+
+    @Option(
+            names = "--tables",
+            split = ",",
+            description = "Numbers of tables to benchmark, comma separated (default: 1)."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int[] tables = {1};
+
+    @Option(
+            names = "--vnodes",
+            split = ",",
+            description = "Numbers of tokens per node to benchmark, comma separated (default: 16)."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int[] vnodes = {16};
+
+    @Option(
+            names = "--latency",
+            split = ",",
+            description = "Latencies per request to benchmark, comma separated, e.g. 0ms,2ms (default: 0ms).",
+            converter = DurationConverter.class
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private Duration[] latencies = {Duration.ZERO};
+
+    @Option(
+            names = "--canaries",
+            split = ",",
+            description = """
+                          Numbers of canaries to verify, comma separated. The
+                          selection takes as many canaries per range as needed
+                          (default: 10000).
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int[] canaries = {10000};
+
+    @Option(
+            names = "--nodes",
+            description = "Number of nodes of the stand-in clusters (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int nodes = 3;
+
+    @Option(
+            names = "--partitions",
+            description = "Number of partitions per table (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int partitions = 100000;
+
+    @Option(
+            names = "--rows-per-partition",
+            description = "Number of rows per partition (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int rowsPerPartition = 10;
+
+    @Option(
+            names = "--selector",
+            description = "Class name of the Selector to benchmark (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private String selectorClassName = "io.github.rtib.cassandra.aviary.selector.RangeSelector";
+
+    @Option(
+            names = "--verifier",
+            description = "Class name of the Verifier to benchmark (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private String verifierClassName = "io.github.rtib.cassandra.aviary.verifier.SimpleVerifier";
+
+    @Option(
+            names = "--max-in-flight-per-node",
+            description = "Number of queries running concurrently against each node (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int maxInFlightPerNode = 8;
+
+    @Option(
+            names = "--warmup",
+            description = "Runs of each configuration not measured (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int warmup = 1;
+
+    @Option(
+            names = "--iterations",
+            description = "Measured runs of each configuration, the median is reported (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int iterations = 3;
+
+    @Option(
+            names = "--baseline",
+            description = "Baseline file to compare the results to."
+    )
+    private File baselineFile;
+
+    @Option(
+            names = "--save-baseline",
+            description = "File to store the results to, as baseline of later runs."
+    )
+    private File saveFile;
+
+    @Option(
+            names = "--tolerance",
+            description = """
+                          Fraction by which throughput may fall and allocations
+                          per canary may grow compared to the baseline, before
+                          reported as regression (default: ${DEFAULT-VALUE}).
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private double tolerance = 0.1;
+
+    /**
+     * A combination of the configurations benchmarked.
+     */
+    private record Configuration(int tables, int vnodes, Duration latency, int canaries) {
+        @Override
+        public String toString() {
+            return String.format("tables=%d vnodes=%d latency=%dms canaries=%d",
+                    tables, vnodes, latency.toMillis(), canaries);
+        }
+    }
+
+    /**
+     * Measurement of a phase of a configuration. Tasks are ranges for
+     * selection and canaries for verification, items are canaries selected
+     * or verified.
+     */
+    public record Result(String configuration, String phase, long tasks, long items,
+            double seconds, double cpuCores, double allocationRate) {
+
+        public double taskRate() {
+            return seconds <= 0 ? 0.0 : tasks / seconds;
+        }
+
+        public double itemRate() {
+            return seconds <= 0 ? 0.0 : items / seconds;
+        }
+
+        public double bytesPerItem() {
+            return items == 0 ? 0.0 : allocationRate * seconds / items;
+        }
+    }
+
+    /**
+     * Content of a baseline file.
+     */
+    public record Baseline(String version, java.util.List<Result> results) {};
+
+    /**
+     * Run the benchmark from the test class path, see README.
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        System.exit(new CommandLine(new Bench()).execute(args));
+    }
+
+    @Override
+    protected int execute() {
+        java.util.List<Result> results = new ArrayList<>();
+        try {
+            for (int t : tables)
+                for (int v : vnodes)
+                    for (Duration latency : latencies)
+                        for (int c : canaries)
+                            results.addAll(run(new Configuration(t, v, latency, c)));
+            int regressions = baselineFile == null ? 0 : compare(results, read(baselineFile));
+            if (saveFile != null) {
+                mapper().writeValue(saveFile, new Baseline(version(), results));
+                System.out.println("Baseline stored to " + saveFile);
+            }
+            if (regressions > 0) {
+                LOG.log(Level.SEVERE, "{0} regressions compared to baseline {1}.", new Object[]{regressions, baselineFile});
+                return -1;
+            }
+        } catch (Exception ex) {
+            LOG.log(Level.SEVERE, "Benchmark failed.", ex);
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * Run a configuration against a fresh stand-in cluster.
+     * @return the median results of selection and verification
+     */
+    private java.util.List<Result> run(Configuration config) throws Exception {
+        StandInCluster cluster = StandInCluster.builder()
+                .withNodes(nodes)
+                .withVnodes(config.vnodes())
+                .withReplicationFactor(Math.min(3, nodes))
+                .withTables(config.tables())
+                .withPartitions(partitions)
+                .withRowsPerPartition(rowsPerPartition)
+                .withLatency(config.latency())
+                .build();
+        File selected = File.createTempFile("aviary-bench-", ".json");
+        File verified = File.createTempFile("aviary-bench-", ".json");
+        selected.deleteOnExit();
+        verified.deleteOnExit();
+        try (cluster) {
+            cluster.start();
+            try (CqlSession session = CqlSession.builder()
+                    .addContactPoints(cluster.getContactPoints())
+                    .withLocalDatacenter(cluster.getLocalDatacenter())
+                    .withConfigLoader(DriverConfigLoaders.of(AbstractConnectCommand::loadConfig))
+                    .build()) {
+                int ranges = config.tables() * nodes * config.vnodes();
+                int limit = Math.max(1, (config.canaries() + ranges - 1) / ranges);
+                java.util.List<Result> selects = new ArrayList<>();
+                java.util.List<Result> verifies = new ArrayList<>();
+                for (int i = 0; i < warmup + iterations; i++) {
+                    Result select = select(session, config, selected, limit);
+                    if (i == 0)
+                        copyCanaries(selected, verified, config.canaries());
+                    Result verify = verify(session, config, verified);
+                    if (i >= warmup) {
+                        selects.add(select);
+                        verifies.add(verify);
+                    }
+                }
+                return java.util.List.of(print(median(selects)), print(median(verifies)));
+            }
+        } finally {
+            selected.delete();
+            verified.delete();
+        }
+    }
+
+    private Result select(CqlSession session, Configuration config, File file, int limit) throws Exception {
+        ProgressTracker progress = new ProgressTracker();
+        ResourceUsage start = ResourceUsage.now();
+        try (var writer = new AviaryWriter(file)) {
+            AbstractSelector.builder()
+                    .forName(selectorClassName)
+                    .withCqlSession(session)
+                    .withCanaryWriter(writer)
+                    .withProgressTracker(progress)
+                    .withSchedulingPolicy(new SchedulingPolicy(maxInFlightPerNode, SchedulingPolicy.Priority.NAME))
+                    .withLimit(limit)
+                    .withSeed(0L)
+                    .withOutput(NO_OUTPUT)
+                    .build()
+                    .selectCanaries();
+        }
+        ResourceUsage used = ResourceUsage.now().since(start);
+        var snapshot = progress.snapshot();
+        return new Result(config.toString(), "select", snapshot.done(), snapshot.items(),
+                used.seconds(), used.cpuCores(), used.allocationRate());
+    }
+
+    private Result verify(CqlSession session, Configuration config, File file) throws Exception {
+        ProgressTracker progress = new ProgressTracker();
+        ResourceUsage start = ResourceUsage.now();
+        AbstractVerifier.builder()
+                .forName(verifierClassName)
+                .withAviaryReader(new AviaryReader(file))
+                .withCqlSession(session)
+                .withProgressTracker(progress)
+                .withOutput(NO_OUTPUT)
+                .withMaxInFlightPerNode(maxInFlightPerNode)
+                .build()
+                .verifyCanaries();
+        ResourceUsage used = ResourceUsage.now().since(start);
+        var snapshot = progress.snapshot();
+        return new Result(config.toString(), "verify", snapshot.done(), snapshot.done() - snapshot.errors(),
+                used.seconds(), used.cpuCores(), used.allocationRate());
+    }
+
+    /**
+     * Write the given number of canaries, repeating the selected canaries if
+     * there are less of them.
+     */
+    private static void copyCanaries(File from, File to, int count) throws IOException {
+        try (var writer = new AviaryWriter(to)) {
+            int written = 0;
+            while (written < count) {
+                int pass = written;
+                for (ICanary canary : AviaryReader.getReader(from)) {
+                    if (canary == null)
+                        continue;
+                    if (written++ >= count)
+                        break;
+                    writer.write(canary);
+                }
+                if (written == pass)
+                    throw new IllegalStateException("No canaries selected from the stand-in cluster.");
+            }
+        }
+    }
+
+    private static Result median(java.util.List<Result> results) {
+        results.sort(Comparator.comparingDouble(Result::itemRate));
+        return results.get(results.size() / 2);
+    }
+
+    private static Result print(Result result) {
+        System.out.println(String.format("%s %s: %.1f %s/s, %.1f canaries/s, %.2f cores, %.1f MB/s allocated (%.0f bytes/canary)",
+                result.configuration(), result.phase(), result.taskRate(),
+                result.phase().equals("select") ? "ranges" : "requests", result.itemRate(),
+                result.cpuCores(), result.allocationRate() / (1 << 20), result.bytesPerItem()));
+        return result;
+    }
+
+    /**
+     * Compare results to a baseline, printing the change of throughput and
+     * allocations per canary of every result found in the baseline.
+     * @return number of regressions
+     */
+    private int compare(java.util.List<Result> results, Baseline baseline) {
+        Map<String, Result> previous = new HashMap<>();
+        for (Result result : baseline.results())
+            previous.put(result.configuration() + " " + result.phase(), result);
+        int regressions = 0;
+        for (Result result : results) {
+            Result base = previous.get(result.configuration() + " " + result.phase());
+            if (base == null)
+                continue;
+            double throughput = change(result.itemRate(), base.itemRate());
+            double allocations = change(result.bytesPerItem(), base.bytesPerItem());
+            boolean regression = throughput < -tolerance || allocations > tolerance;
+            if (regression)
+                regressions++;
+            System.out.println(String.format("%s %s: throughput %+.1f%%, allocations %+.1f%% compared to %s%s",
+                    result.configuration(), result.phase(), throughput * 100, allocations * 100,
+                    baseline.version(), regression ? " REGRESSION" : ""));
+        }
+        return regressions;
+    }
+
+    private static double change(double value, double base) {
+        return base == 0 ? 0.0 : (value - base) / base;
+    }
+
+    private static Baseline read(File file) throws IOException {
+        return mapper().readValue(file, Baseline.class);
+    }
+
+    private static ObjectMapper mapper() {
+        return new ObjectMapper()
+                .enable(SerializationFeature.INDENT_OUTPUT)
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    private static String version() {
+        try {
+            return new RootCommand.PropertiesVersionProvider().getVersion()[0];
+        } catch (Exception ex) {
+            return "unknown";
+        }
+    }
+}
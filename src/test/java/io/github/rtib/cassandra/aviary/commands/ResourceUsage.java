@@ -0,0 +1,73 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.commands;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Resources used by the JVM up to a point in time: wall clock time, CPU
+ * time of the process and bytes allocated by all threads, terminated ones
+ * included. Allocations of virtual threads are accounted to their carriers.
+ * The difference of two snapshots are the resources used in between.
+ * @author repasi
+ */
+record ResourceUsage(long nanos, long cpuNanos, long allocatedBytes) {
+
+    private static final com.sun.management.OperatingSystemMXBean OS =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * @return the resources used so far, CPU time and allocated bytes are
+     * negative if not supported by the JVM
+     */
+    static ResourceUsage now() {
+        return new ResourceUsage(System.nanoTime(), OS.getProcessCpuTime(),
+                THREADS.isThreadAllocatedMemoryEnabled() ? THREADS.getTotalThreadAllocatedBytes() : -1);
+    }
+
+    /**
+     * @param start an earlier snapshot
+     * @return the resources used since the earlier snapshot
+     */
+    ResourceUsage since(ResourceUsage start) {
+        return new ResourceUsage(nanos - start.nanos,
+                cpuNanos < 0 ? -1 : cpuNanos - start.cpuNanos,
+                allocatedBytes < 0 ? -1 : allocatedBytes - start.allocatedBytes);
+    }
+
+    /**
+     * @return elapsed wall clock time in seconds
+     */
+    public double seconds() {
+        return nanos / 1e9;
+    }
+
+    /**
+     * @return average number of cores busy, CPU time per wall clock time
+     */
+    public double cpuCores() {
+        return nanos <= 0 || cpuNanos < 0 ? 0.0 : (double) cpuNanos / nanos;
+    }
+
+    /**
+     * @return bytes allocated per second
+     */
+    public double allocationRate() {
+        return nanos <= 0 || allocatedBytes < 0 ? 0.0 : allocatedBytes / seconds();
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.commands;
+
+import io.github.rtib.cassandra.aviary.standin.StandInCluster;
+import io.github.rtib.cassandra.aviary.utils.DurationConverter;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+/**
+ *
+ * @author repasi
+ */
+@Command(
+        name = "standin",
+        description = """
+                      Run an in-process stand-in of a Cassandra cluster with a
+                      synthetic schema, token ring and data, to try and benchmark
+                      the aviary commands without a real cluster. Connect to it
+                      with --contact-point, --port and --local-dc as printed on
+                      start, the stand-in runs until interrupted. It is part of
+                      the tests, not of the distribution.
+                      """
+)
+public class StandIn extends AbstractCommand {
+
+    private static final Logger LOG = Logger.getLogger(StandIn.class.getName());
+
+    @Option(
+            names = "--nodes",
+            description = "Number of nodes (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int nodes = 3;
+
+    @Option(
+            names = "--vnodes",
+            description = "Number of tokens per node (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int vnodes = 16;
+
+    @Option(
+            names = "--replication-factor",
+            description = "Replication factor of the keyspace (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int replicationFactor = 3;
+
+    @Option(
+            names = "--keyspace",
+            description = "Name of the keyspace (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private String keyspace = "standin";
+
+    @Option(
+            names = "--tables",
+            description = "Number of tables, named table_0, table_1, ... (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int tables = 1;
+
+    @Option(
+            names = "--partitions",
+            description = "Number of partitions per table (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int partitions = 10000;
+
+    @Option(
+            names = "--rows-per-partition",
+            description = "Number of rows per partition (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int rowsPerPartition = 10;
+
+    @Option(
+            names = "--listen",
+            description = "Address to listen on (default: loopback address)."
+    )
+    private InetAddress address;
+
+    @Option(
+            names = "--port",
+            description = """
+                          Port of the first node, the other nodes listen on the
+                          following ports, 0 for ephemeral ports (default: ${DEFAULT-VALUE}).
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int port = 9042;
+
+    @Option(
+            names = "--latency",
+            description = "Latency added to each request of the tables, e.g. 2ms (default: 0ms).",
+            converter = DurationConverter.class
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private Duration latency = Duration.ZERO;
+
+    @Option(
+            names = "--failure-rate",
+            description = "Fraction of the requests of the tables failing (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private double failureRate = 0;
+
+    @Option(
+            names = "--failure",
+            description = """
+                          Failure of the requests failing.
+                          Valid values: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private StandInCluster.Failure failure = StandInCluster.Failure.READ_TIMEOUT;
+
+    @Option(
+            names = "--scan-timeout",
+            description = """
+                          Number of partitions a token range query may span
+                          without timing out, zero for no limit (default:
+                          ${DEFAULT-VALUE}).
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private int scanTimeout = 0;
+
+    @Option(
+            names = "--loss",
+            description = """
+                          Fraction of the partitions missing on a node, given as
+                          node=fraction with node indexes starting at 0, e.g.
+                          --loss 1=0.01. Can be repeated.
+                          """
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private Map<Integer, Double> loss = new HashMap<>();
+
+    @Option(
+            names = "--seed",
+            description = "Seed of the token ring and the partitions lost (default: ${DEFAULT-VALUE})."
+    )
+    @SuppressWarnings("FieldMayBeFinal")
+    private long seed = 0;
+
+    /**
+     * Run the stand-in from the test class path, see README.
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        System.exit(new CommandLine(new StandIn()).execute(args));
+    }
+
+    @Override
+    protected int execute() {
+        var builder = StandInCluster.builder()
+                .withNodes(nodes)
+                .withVnodes(vnodes)
+                .withReplicationFactor(replicationFactor)
+                .withKeyspace(keyspace)
+                .withTables(tables)
+                .withPartitions(partitions)
+                .withRowsPerPartition(rowsPerPartition)
+                .withAddress(address == null ? InetAddress.getLoopbackAddress() : address, port)
+                .withLatency(latency)
+                .withFailures(failureRate, failure)
+                .withScanTimeout(scanTimeout)
+                .withSeed(seed);
+        loss.forEach(builder::withLoss);
+        StandInCluster cluster = builder.build();
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            cluster.close();
+            stopped.countDown();
+        }));
+        try {
+            cluster.start();
+            for (InetSocketAddress node : cluster.getContactPoints())
+                System.out.println(String.format("node %s:%d datacenter %s",
+                        node.getAddress().getHostAddress(), node.getPort(), cluster.getLocalDatacenter()));
+            System.out.println(String.format("keyspace %s tables %s",
+                    cluster.getKeyspace(), String.join(",", cluster.getTableNames())));
+            stopped.await();
+        } catch (IOException ex) {
+            LOG.log(Level.SEVERE, "Failed to start the stand-in cluster.", ex);
+            return -1;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.selector;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import io.github.rtib.cassandra.aviary.standin.StandInCluster;
+import io.github.rtib.cassandra.aviary.storage.AviaryReader;
+import io.github.rtib.cassandra.aviary.storage.AviaryWriter;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Select deep-slice canaries from a stand-in cluster.
+ * @author repasi
+ */
+public class DeepSliceSelectorTest {
+
+    private static final int ROWS_PER_PARTITION = 25;
+    private static final PrintStream NO_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+
+    @TempDir
+    File tmp;
+
+    @Test
+    public void samplesStartMiddleAndEndOfPartitions() throws Exception {
+        Map<String, Integer> clustering = probes(Map.of());
+        assertEquals(Map.of(
+                DeepSliceSelector.PROBE_START, 0,
+                DeepSliceSelector.PROBE_MIDDLE, (ROWS_PER_PARTITION - 1) / 2,
+                DeepSliceSelector.PROBE_END, ROWS_PER_PARTITION - 1), clustering);
+    }
+
+    @Test
+    public void approximatesMiddleOfPartitionsExceedingMaxSliceRows() throws Exception {
+        Map<String, Integer> clustering = probes(Map.of(DeepSliceSelector.MAX_SLICE_ROWS_OPTION, "10"));
+        assertEquals(Map.of(
+                DeepSliceSelector.PROBE_START, 0,
+                DeepSliceSelector.PROBE_MIDDLE, 4,
+                DeepSliceSelector.PROBE_END, ROWS_PER_PARTITION - 1), clustering);
+    }
+
+    /**
+     * Select canaries and map each probe to the clustering key it sampled,
+     * which has to be the same in every partition.
+     */
+    private Map<String, Integer> probes(Map<String, String> options) throws Exception {
+        Map<String, Integer> clustering = new TreeMap<>();
+        for (ICanary canary : select(options)) {
+            int ck = ((Number) canary.getIdentifier().get("ck")).intValue();
+            Integer previous = clustering.put(canary.getProbe(), ck);
+            assertTrue(previous == null || previous == ck, canary.getProbe() + " sampled " + previous + " and " + ck);
+        }
+        return clustering;
+    }
+
+    private List<ICanary> select(Map<String, String> options) throws Exception {
+        File file = new File(tmp, "aviary.json");
+        try (var cluster = StandInCluster.builder()
+                .withNodes(3)
+                .withVnodes(4)
+                .withReplicationFactor(3)
+                .withTables(1)
+                .withPartitions(200)
+                .withRowsPerPartition(ROWS_PER_PARTITION)
+                .withSeed(0L)
+                .build()) {
+            cluster.start();
+            try (CqlSession session = CqlSession.builder()
+                    .addContactPoints(cluster.getContactPoints())
+                    .withLocalDatacenter(cluster.getLocalDatacenter())
+                    .build();
+                    var writer = new AviaryWriter(file)) {
+                AbstractSelector.builder()
+                        .forName(DeepSliceSelector.class.getName())
+                        .withCqlSession(session)
+                        .withCanaryWriter(writer)
+                        .withOptions(options)
+                        .withPageSize(7)
+                        .withOutput(NO_OUTPUT)
+                        .build()
+                        .selectCanaries();
+            }
+        }
+        List<ICanary> canaries = new ArrayList<>();
+        for (ICanary canary : AviaryReader.getReader(file))
+            if (canary != null)
+                canaries.add(canary);
+        return canaries;
+    }
+}
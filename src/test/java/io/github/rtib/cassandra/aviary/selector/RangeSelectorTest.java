@@ -0,0 +1,150 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.selector;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import io.github.rtib.cassandra.aviary.standin.StandInCluster;
+import io.github.rtib.cassandra.aviary.storage.AviaryReader;
+import io.github.rtib.cassandra.aviary.storage.AviarySorter;
+import io.github.rtib.cassandra.aviary.storage.AviaryWriter;
+import io.github.rtib.cassandra.aviary.utils.ProgressTracker;
+import io.github.rtib.cassandra.aviary.utils.RetryPolicy;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Select canaries from stand-in clusters.
+ * @author repasi
+ */
+public class RangeSelectorTest {
+
+    private static final int NODES = 3;
+    private static final int VNODES = 4;
+    private static final PrintStream NO_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+
+    @TempDir
+    File tmp;
+
+    @Test
+    public void selectsOneCanaryPerRange() throws Exception {
+        try (var cluster = cluster().build()) {
+            cluster.start();
+            List<ICanary> canaries = select(cluster, 1, RetryPolicy.NONE, new ProgressTracker());
+            assertEquals(NODES * VNODES, canaries.size());
+            assertEquals(canaries.size(), distinct(canaries));
+            assertTrue(canaries.stream().allMatch(c -> c.getIdentifier().keySet().equals(Set.of("id", "ck"))));
+        }
+    }
+
+    @Test
+    public void selectsUpToLimitCanariesPerRange() throws Exception {
+        try (var cluster = cluster().build()) {
+            cluster.start();
+            List<ICanary> canaries = select(cluster, 5, RetryPolicy.NONE, new ProgressTracker());
+            assertEquals(5 * NODES * VNODES, canaries.size());
+            assertEquals(canaries.size(), distinct(canaries));
+        }
+    }
+
+    @Test
+    public void retriedRangesWriteTheirCanariesOnce() throws Exception {
+        try (var cluster = cluster()
+                .withFailures(0.3, StandInCluster.Failure.READ_TIMEOUT)
+                .build()) {
+            cluster.start();
+            ProgressTracker progress = new ProgressTracker();
+            List<ICanary> canaries = select(cluster, 1000, new RetryPolicy(5, Duration.ZERO, Duration.ZERO, 0), progress);
+            assertEquals(progress.snapshot().items(), canaries.size());
+            assertEquals(canaries.size(), distinct(canaries));
+        }
+    }
+
+    @Test
+    public void splitsRangesTimingOut() throws Exception {
+        try (var cluster = cluster().withScanTimeout(60).build()) {
+            cluster.start();
+            ProgressTracker failing = new ProgressTracker();
+            List<ICanary> canaries = select(cluster, 10000, RetryPolicy.NONE, failing);
+            assertTrue(failing.snapshot().errors() > 0);
+            assertEquals(failing.snapshot().items(), canaries.size());
+
+            ProgressTracker splitting = new ProgressTracker();
+            canaries = select(cluster, 10000, new RetryPolicy(0, Duration.ZERO, Duration.ZERO, 32), splitting);
+            assertEquals(0, splitting.snapshot().errors());
+            assertEquals(2000 * 2, canaries.size());
+            assertEquals(canaries.size(), distinct(canaries));
+        }
+    }
+
+    private static StandInCluster.Builder cluster() {
+        return StandInCluster.builder()
+                .withNodes(NODES)
+                .withVnodes(VNODES)
+                .withReplicationFactor(NODES)
+                .withTables(1)
+                .withPartitions(2000)
+                .withRowsPerPartition(2)
+                .withSeed(0L);
+    }
+
+    private List<ICanary> select(StandInCluster cluster, int limit, RetryPolicy retryPolicy, ProgressTracker progress) throws Exception {
+        File file = File.createTempFile("aviary", ".json", tmp);
+        try (CqlSession session = CqlSession.builder()
+                .addContactPoints(cluster.getContactPoints())
+                .withLocalDatacenter(cluster.getLocalDatacenter())
+                .build();
+                var writer = new AviaryWriter(file)) {
+            AbstractSelector.builder()
+                    .forName(RangeSelector.class.getName())
+                    .withCqlSession(session)
+                    .withCanaryWriter(writer)
+                    .withProgressTracker(progress)
+                    .withRetryPolicy(retryPolicy)
+                    .withLimit(limit)
+                    .withPageSize(100)
+                    .withOutput(NO_OUTPUT)
+                    .build()
+                    .selectCanaries();
+        }
+        return read(file);
+    }
+
+    private static List<ICanary> read(File file) throws IOException {
+        List<ICanary> canaries = new ArrayList<>();
+        for (ICanary canary : AviaryReader.getReader(file))
+            if (canary != null)
+                canaries.add(canary);
+        return canaries;
+    }
+
+    private static int distinct(List<ICanary> canaries) {
+        Set<String> keys = new HashSet<>();
+        canaries.forEach(canary -> keys.add(AviarySorter.canonicalKey(canary)));
+        return keys.size();
+    }
+}
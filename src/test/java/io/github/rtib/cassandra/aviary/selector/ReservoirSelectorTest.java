@@ -0,0 +1,118 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.selector;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import io.github.rtib.cassandra.aviary.standin.StandInCluster;
+import io.github.rtib.cassandra.aviary.storage.AviaryReader;
+import io.github.rtib.cassandra.aviary.storage.AviarySorter;
+import io.github.rtib.cassandra.aviary.storage.AviaryWriter;
+import io.github.rtib.cassandra.aviary.utils.RetryPolicy;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Sample canaries from stand-in clusters.
+ * @author repasi
+ */
+public class ReservoirSelectorTest {
+
+    private static final int NODES = 3;
+    private static final int VNODES = 4;
+    private static final int LIMIT = 5;
+    private static final PrintStream NO_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+
+    @TempDir
+    File tmp;
+
+    @Test
+    public void splitRangesSelectTheSameCanaries() throws Exception {
+        List<String> unsplit;
+        try (var cluster = cluster().build()) {
+            cluster.start();
+            unsplit = select(cluster, 42L, RetryPolicy.NONE);
+        }
+        List<String> split;
+        try (var cluster = cluster().withScanTimeout(60).build()) {
+            cluster.start();
+            split = select(cluster, 42L, new RetryPolicy(0, Duration.ZERO, Duration.ZERO, 32));
+        }
+        assertEquals(LIMIT * NODES * VNODES, unsplit.size());
+        assertEquals(unsplit, split);
+    }
+
+    @Test
+    public void seedsSelectDifferentCanaries() throws Exception {
+        try (var cluster = cluster().build()) {
+            cluster.start();
+            List<String> first = select(cluster, 1L, RetryPolicy.NONE);
+            assertEquals(first, select(cluster, 1L, RetryPolicy.NONE));
+            assertNotEquals(first, select(cluster, 2L, RetryPolicy.NONE));
+        }
+    }
+
+    private static StandInCluster.Builder cluster() {
+        return StandInCluster.builder()
+                .withNodes(NODES)
+                .withVnodes(VNODES)
+                .withReplicationFactor(NODES)
+                .withTables(1)
+                .withPartitions(2000)
+                .withRowsPerPartition(2)
+                .withSeed(0L);
+    }
+
+    /**
+     * @return the canonical keys of the canaries selected, sorted
+     */
+    private List<String> select(StandInCluster cluster, long seed, RetryPolicy retryPolicy) throws Exception {
+        File file = File.createTempFile("aviary", ".json", tmp);
+        try (CqlSession session = CqlSession.builder()
+                .addContactPoints(cluster.getContactPoints())
+                .withLocalDatacenter(cluster.getLocalDatacenter())
+                .build();
+                var writer = new AviaryWriter(file)) {
+            AbstractSelector.builder()
+                    .forName(ReservoirSelector.class.getName())
+                    .withCqlSession(session)
+                    .withCanaryWriter(writer)
+                    .withRetryPolicy(retryPolicy)
+                    .withLimit(LIMIT)
+                    .withPageSize(50)
+                    .withOptions(Map.of(ReservoirSelector.MAX_SCAN_ROWS_OPTION, "150"))
+                    .withSeed(seed)
+                    .withOutput(NO_OUTPUT)
+                    .build()
+                    .selectCanaries();
+        }
+        List<String> keys = new ArrayList<>();
+        for (ICanary canary : AviaryReader.getReader(file))
+            if (canary != null)
+                keys.add(AviarySorter.canonicalKey(canary));
+        keys.sort(null);
+        return keys;
+    }
+}
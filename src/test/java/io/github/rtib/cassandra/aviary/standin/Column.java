@@ -0,0 +1,39 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.standin;
+
+/**
+ * A column of a stand-in table, kind and position as in system_schema.columns.
+ * @author repasi
+ */
+record Column(String name, CqlType type, String kind, int position) {
+
+    static Column partitionKey(String name, CqlType type, int position) {
+        return new Column(name, type, "partition_key", position);
+    }
+
+    static Column clustering(String name, CqlType type, int position) {
+        return new Column(name, type, "clustering", position);
+    }
+
+    static Column regular(String name, CqlType type) {
+        return new Column(name, type, "regular", -1);
+    }
+
+    boolean isPartitionKey() {
+        return kind.equals("partition_key");
+    }
+}
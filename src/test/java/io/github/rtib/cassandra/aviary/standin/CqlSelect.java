@@ -0,0 +1,244 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.standin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The subset of CQL SELECT statements understood by the stand-in:
+ * <pre>
+ * SELECT * | selector, ... FROM [keyspace.]table
+ *   [WHERE relation AND ...]
+ *   [ORDER BY column [ASC|DESC], ...]
+ *   [PER PARTITION LIMIT term] [LIMIT term] [ALLOW FILTERING]
+ * </pre>
+ * Selectors are columns or the token function, relations compare a column
+ * or the token of the partition key to a term, which is a bind marker or a
+ * literal.
+ * @author repasi
+ */
+record CqlSelect(String keyspace, String table, List<Selector> selectors, List<Relation> where,
+        boolean reversed, Term perPartitionLimit, Term limit, int markers) {
+
+    /**
+     * A selected column, or the token of the partition key if token is set.
+     */
+    record Selector(String column, boolean token) {};
+
+    /**
+     * A relation of the where clause, on the token of the partition key if
+     * token is set.
+     */
+    record Relation(String column, boolean token, String operator, Term term) {};
+
+    /**
+     * A bind marker with its index, or a literal with marker index -1.
+     */
+    record Term(int marker, String literal) {};
+
+    boolean selectsAll() {
+        return selectors.isEmpty();
+    }
+
+    /**
+     * Parse a statement.
+     * @param query the CQL statement
+     * @param defaultKeyspace keyspace of unqualified tables, may be null
+     * @return the parsed statement
+     * @throws ServerError syntax error if the statement is not understood
+     */
+    static CqlSelect parse(String query, String defaultKeyspace) {
+        return new Parser(tokenize(query)).select(defaultKeyspace);
+    }
+
+    private static List<String> tokenize(String query) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"') {
+                StringBuilder sb = new StringBuilder().append(c);
+                int j = i + 1;
+                while (true) {
+                    if (j >= query.length())
+                        throw ServerError.syntax("Unterminated quote in " + query);
+                    char d = query.charAt(j++);
+                    if (d == c) {
+                        if (j < query.length() && query.charAt(j) == c) {
+                            sb.append(c);
+                            j++;
+                            continue;
+                        }
+                        break;
+                    }
+                    sb.append(d);
+                }
+                tokens.add(sb.toString());
+                i = j;
+            } else if (Character.isLetterOrDigit(c) || c == '_' || c == '-') {
+                int j = i;
+                while (j < query.length() && (Character.isLetterOrDigit(query.charAt(j))
+                        || query.charAt(j) == '_' || (j == i && query.charAt(j) == '-')))
+                    j++;
+                tokens.add(query.substring(i, j));
+                i = j;
+            } else if ((c == '>' || c == '<') && i + 1 < query.length() && query.charAt(i + 1) == '=') {
+                tokens.add(query.substring(i, i + 2));
+                i += 2;
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static final class Parser {
+        private final List<String> tokens;
+        private int pos;
+        private int markers;
+
+        private Parser(List<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        private CqlSelect select(String defaultKeyspace) {
+            expect("SELECT");
+            List<Selector> selectors = new ArrayList<>();
+            if (accept("*")) {
+                // all columns
+            } else {
+                do {
+                    selectors.add(selector());
+                } while (accept(","));
+            }
+            expect("FROM");
+            String keyspace = defaultKeyspace;
+            String table = identifier();
+            if (accept(".")) {
+                keyspace = table;
+                table = identifier();
+            }
+            List<Relation> where = new ArrayList<>();
+            if (accept("WHERE")) {
+                do {
+                    where.add(relation());
+                } while (accept("AND"));
+            }
+            boolean reversed = false;
+            if (accept("ORDER")) {
+                expect("BY");
+                do {
+                    identifier();
+                    if (accept("DESC"))
+                        reversed = true;
+                    else
+                        accept("ASC");
+                } while (accept(","));
+            }
+            Term perPartitionLimit = null;
+            if (accept("PER")) {
+                expect("PARTITION");
+                expect("LIMIT");
+                perPartitionLimit = term();
+            }
+            Term limit = null;
+            if (accept("LIMIT"))
+                limit = term();
+            if (accept("ALLOW"))
+                expect("FILTERING");
+            accept(";");
+            if (pos < tokens.size())
+                throw ServerError.syntax("Unexpected " + tokens.get(pos));
+            return new CqlSelect(keyspace, table, selectors, where, reversed, perPartitionLimit, limit, markers);
+        }
+
+        private Selector selector() {
+            String name = identifier();
+            if (accept(".")) {
+                name = identifier();
+            }
+            if (accept("(")) {
+                if (!name.equals("token"))
+                    throw ServerError.syntax("Unknown function " + name);
+                do {
+                    identifier();
+                } while (accept(","));
+                expect(")");
+                return new Selector(null, true);
+            }
+            return new Selector(name, false);
+        }
+
+        private Relation relation() {
+            String name = identifier();
+            boolean token = false;
+            if (name.equals("token") && accept("(")) {
+                do {
+                    name = identifier();
+                } while (accept(","));
+                expect(")");
+                token = true;
+            }
+            String operator = next();
+            if (!List.of("=", "<", ">", "<=", ">=").contains(operator))
+                throw ServerError.syntax("Unsupported operator " + operator);
+            return new Relation(name, token, operator, term());
+        }
+
+        private Term term() {
+            String t = next();
+            if (t.equals("?"))
+                return new Term(markers++, null);
+            if (t.startsWith("'"))
+                return new Term(-1, t.substring(1));
+            return new Term(-1, t);
+        }
+
+        private String identifier() {
+            String t = next();
+            if (t.startsWith("\""))
+                return t.substring(1);
+            if (!Character.isLetter(t.charAt(0)))
+                throw ServerError.syntax("Identifier expected at " + t);
+            return t.toLowerCase(Locale.ROOT);
+        }
+
+        private String next() {
+            if (pos >= tokens.size())
+                throw ServerError.syntax("Unexpected end of statement");
+            return tokens.get(pos++);
+        }
+
+        private boolean accept(String keyword) {
+            if (pos < tokens.size() && tokens.get(pos).equalsIgnoreCase(keyword)) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String keyword) {
+            if (!accept(keyword))
+                throw ServerError.syntax(keyword + " expected at "
+                        + (pos < tokens.size() ? tokens.get(pos) : "end of statement"));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.standin;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The CQL types used by the stand-in, with their native protocol option
+ * and the serialization of their values.
+ * @author repasi
+ */
+record CqlType(String name, int id, List<CqlType> parameters) {
+
+    static final CqlType BIGINT = new CqlType("bigint", 0x0002, List.of());
+    static final CqlType BLOB = new CqlType("blob", 0x0003, List.of());
+    static final CqlType BOOLEAN = new CqlType("boolean", 0x0004, List.of());
+    static final CqlType DOUBLE = new CqlType("double", 0x0007, List.of());
+    static final CqlType INT = new CqlType("int", 0x0009, List.of());
+    static final CqlType UUID_TYPE = new CqlType("uuid", 0x000C, List.of());
+    static final CqlType TEXT = new CqlType("text", 0x000D, List.of());
+    static final CqlType INET = new CqlType("inet", 0x0010, List.of());
+    static final CqlType SET_TEXT = new CqlType("set<text>", 0x0022, List.of(TEXT));
+    static final CqlType MAP_TEXT_TEXT = new CqlType("map<text, text>", 0x0021, List.of(TEXT, TEXT));
+    static final CqlType MAP_TEXT_BLOB = new CqlType("map<text, blob>", 0x0021, List.of(TEXT, BLOB));
+    static final CqlType MAP_UUID_BLOB = new CqlType("map<uuid, blob>", 0x0021, List.of(UUID_TYPE, BLOB));
+
+    /**
+     * Write the type as [option] of the native protocol.
+     */
+    void writeOption(FrameWriter out) {
+        out.writeShort(id);
+        for (CqlType parameter : parameters)
+            parameter.writeOption(out);
+    }
+
+    /**
+     * Serialize a value of this type.
+     * @param value the value, null for a null cell
+     * @return the serialized value, null for a null cell
+     */
+    ByteBuffer encode(Object value) {
+        if (value == null)
+            return null;
+        return switch (id) {
+            case 0x0002 -> ByteBuffer.allocate(8).putLong(0, ((Number) value).longValue());
+            case 0x0003 -> ((ByteBuffer) value).duplicate();
+            case 0x0004 -> ByteBuffer.wrap(new byte[]{(byte) ((Boolean) value ? 1 : 0)});
+            case 0x0007 -> ByteBuffer.allocate(8).putDouble(0, ((Number) value).doubleValue());
+            case 0x0009 -> ByteBuffer.allocate(4).putInt(0, ((Number) value).intValue());
+            case 0x000C -> ByteBuffer.allocate(16)
+                    .putLong(0, ((UUID) value).getMostSignificantBits())
+                    .putLong(8, ((UUID) value).getLeastSignificantBits());
+            case 0x000D -> ByteBuffer.wrap(value.toString().getBytes(StandardCharsets.UTF_8));
+            case 0x0010 -> ByteBuffer.wrap(((InetAddress) value).getAddress());
+            case 0x0020, 0x0022 -> encodeCollection((Collection<?>) value);
+            case 0x0021 -> encodeMap((Map<?, ?>) value);
+            default -> throw new IllegalArgumentException("Cannot encode values of type " + name);
+        };
+    }
+
+    /**
+     * Deserialize a value of this type, only scalar types are supported.
+     * @param bytes the serialized value
+     * @return the value, null for a null cell
+     */
+    Object decode(ByteBuffer bytes) {
+        if (bytes == null)
+            return null;
+        return switch (id) {
+            case 0x0002 -> bytes.getLong(bytes.position());
+            case 0x0009 -> bytes.getInt(bytes.position());
+            case 0x000D -> StandardCharsets.UTF_8.decode(bytes.duplicate()).toString();
+            default -> throw new IllegalArgumentException("Cannot decode values of type " + name);
+        };
+    }
+
+    /**
+     * Parse a literal of this type, only scalar types are supported.
+     * @param literal the literal as written in CQL, strings without quotes
+     * @return the value
+     */
+    Object parse(String literal) {
+        return switch (id) {
+            case 0x0002 -> Long.parseLong(literal);
+            case 0x0009 -> Integer.parseInt(literal);
+            case 0x000D -> literal;
+            default -> throw new IllegalArgumentException("Cannot parse literals of type " + name);
+        };
+    }
+
+    private ByteBuffer encodeCollection(Collection<?> values) {
+        FrameWriter out = new FrameWriter();
+        out.writeInt(values.size());
+        for (Object value : values)
+            out.writeBytes(parameters.get(0).encode(value));
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    private ByteBuffer encodeMap(Map<?, ?> values) {
+        FrameWriter out = new FrameWriter();
+        out.writeInt(values.size());
+        for (var entry : values.entrySet()) {
+            out.writeBytes(parameters.get(0).encode(entry.getKey()));
+            out.writeBytes(parameters.get(1).encode(entry.getValue()));
+        }
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.standin;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writer of the notations of the native protocol, e.g. [string] or [bytes],
+ * into a growing buffer. Reading is done by the static methods on byte
+ * buffers.
+ * @author repasi
+ */
+final class FrameWriter {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+    void writeByte(int value) {
+        out.write(value);
+    }
+
+    void writeShort(int value) {
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    void writeInt(int value) {
+        writeShort(value >>> 16);
+        writeShort(value);
+    }
+
+    void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    void writeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeShort(bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    void writeLongString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    void writeStringList(List<String> values) {
+        writeShort(values.size());
+        values.forEach(this::writeString);
+    }
+
+    void writeStringMultimap(Map<String, List<String>> values) {
+        writeShort(values.size());
+        values.forEach((key, list) -> {
+            writeString(key);
+            writeStringList(list);
+        });
+    }
+
+    /**
+     * Write [bytes], a negative length for null.
+     */
+    void writeBytes(ByteBuffer value) {
+        if (value == null) {
+            writeInt(-1);
+            return;
+        }
+        ByteBuffer v = value.duplicate();
+        writeInt(v.remaining());
+        byte[] bytes = new byte[v.remaining()];
+        v.get(bytes);
+        out.writeBytes(bytes);
+    }
+
+    void writeShortBytes(byte[] value) {
+        writeShort(value.length);
+        out.writeBytes(value);
+    }
+
+    void writeRaw(byte[] bytes) {
+        out.writeBytes(bytes);
+    }
+
+    int size() {
+        return out.size();
+    }
+
+    byte[] toByteArray() {
+        return out.toByteArray();
+    }
+
+    static int readUnsignedShort(ByteBuffer in) {
+        return in.getShort() & 0xFFFF;
+    }
+
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[readUnsignedShort(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static String readLongString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read [bytes], null for a negative length.
+     */
+    static ByteBuffer readBytes(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0)
+            return null;
+        ByteBuffer value = in.slice(in.position(), length);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    static byte[] readShortBytes(ByteBuffer in) {
+        byte[] bytes = new byte[readUnsignedShort(in)];
+        in.get(bytes);
+        return bytes;
+    }
+
+    static Map<String, String> readStringMap(ByteBuffer in) {
+        int n = readUnsignedShort(in);
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < n; i++)
+            map.put(readString(in), readString(in));
+        return map;
+    }
+
+    static void skipBytesMap(ByteBuffer in) {
+        int n = readUnsignedShort(in);
+        for (int i = 0; i < n; i++) {
+            readString(in);
+            readBytes(in);
+        }
+    }
+
+    static List<ByteBuffer> readValues(ByteBuffer in, boolean named) {
+        int n = readUnsignedShort(in);
+        List<ByteBuffer> values = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            if (named)
+                readString(in);
+            values.add(readBytes(in));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.standin;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A page of rows, written as rows result of the native protocol.
+ * @author repasi
+ */
+record Rows(String keyspace, String table, List<Column> columns, List<ByteBuffer[]> data, ByteBuffer pagingState) {
+
+    private static final int GLOBAL_TABLES_SPEC = 0x0001;
+    private static final int HAS_MORE_PAGES = 0x0002;
+
+    static final int KIND_VOID = 0x0001;
+    static final int KIND_ROWS = 0x0002;
+    static final int KIND_SET_KEYSPACE = 0x0003;
+    static final int KIND_PREPARED = 0x0004;
+
+    /**
+     * Write the result body, starting with its kind.
+     */
+    void write(FrameWriter out) {
+        out.writeInt(KIND_ROWS);
+        writeMetadata(out, keyspace, table, columns, pagingState);
+        out.writeInt(data.size());
+        for (ByteBuffer[] row : data)
+            for (ByteBuffer cell : row)
+                out.writeBytes(cell);
+    }
+
+    /**
+     * Write the metadata of rows, always including the column specs.
+     */
+    static void writeMetadata(FrameWriter out, String keyspace, String table, List<Column> columns, ByteBuffer pagingState) {
+        out.writeInt(GLOBAL_TABLES_SPEC | (pagingState == null ? 0 : HAS_MORE_PAGES));
+        out.writeInt(columns.size());
+        if (pagingState != null)
+            out.writeBytes(pagingState);
+        out.writeString(keyspace);
+        out.writeString(table);
+        for (Column column : columns) {
+            out.writeString(column.name());
+            column.type().writeOption(out);
+        }
+    }
+}
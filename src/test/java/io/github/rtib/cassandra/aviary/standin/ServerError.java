@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.standin;
+
+/**
+ * An error response of the stand-in, with the error code and the body
+ * following the message as defined by the native protocol.
+ * @author repasi
+ */
+final class ServerError extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int SERVER_ERROR = 0x0000;
+    static final int PROTOCOL_ERROR = 0x000A;
+    static final int UNAVAILABLE = 0x1000;
+    static final int OVERLOADED = 0x1001;
+    static final int READ_TIMEOUT = 0x1200;
+    static final int SYNTAX_ERROR = 0x2000;
+    static final int INVALID = 0x2200;
+    static final int UNPREPARED = 0x2500;
+
+    /** Consistency level ONE, reported by injected failures. */
+    private static final int ONE = 0x0001;
+
+    private final int code;
+    private final byte[] details;
+
+    ServerError(int code, String message) {
+        this(code, message, new byte[0]);
+    }
+
+    private ServerError(int code, String message, byte[] details) {
+        super(message, null, false, false);
+        this.code = code;
+        this.details = details;
+    }
+
+    static ServerError invalid(String message) {
+        return new ServerError(INVALID, message);
+    }
+
+    static ServerError syntax(String message) {
+        return new ServerError(SYNTAX_ERROR, message);
+    }
+
+    static ServerError unprepared(byte[] id) {
+        FrameWriter out = new FrameWriter();
+        out.writeShortBytes(id);
+        return new ServerError(UNPREPARED, "Prepared statement unknown", out.toByteArray());
+    }
+
+    static ServerError readTimeout() {
+        FrameWriter out = new FrameWriter();
+        out.writeShort(ONE);
+        out.writeInt(0);
+        out.writeInt(1);
+        out.writeByte(0);
+        return new ServerError(READ_TIMEOUT, "Operation timed out - received only 0 responses.", out.toByteArray());
+    }
+
+    static ServerError unavailable() {
+        FrameWriter out = new FrameWriter();
+        out.writeShort(ONE);
+        out.writeInt(1);
+        out.writeInt(0);
+        return new ServerError(UNAVAILABLE, "Cannot achieve consistency level ONE", out.toByteArray());
+    }
+
+    static ServerError overloaded() {
+        return new ServerError(OVERLOADED, "Server is overloaded");
+    }
+
+    /**
+     * Write the error body.
+     */
+    void write(FrameWriter out) {
+        out.writeInt(code);
+        out.writeString(getMessage() == null ? "" : getMessage());
+        out.writeRaw(details);
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.standin;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A Cassandra cluster standing in for a real one, running in the JVM. Each
+ * node is a server of the CQL native protocol v4 on the loopback address,
+ * answering the queries of the driver and of the tool from a synthetic
+ * schema and token ring: a keyspace of SimpleStrategy with a number of
+ * {@link StandInTable stand-in tables}, and nodes owning random vnode
+ * tokens of the Murmur3 partitioner, all in a single datacenter.
+ *
+ * Requests to the stand-in tables can be slowed down by a fixed latency and
+ * fail at a given rate, range queries spanning too many partitions can time
+ * out, and nodes can lose a fraction of the partitions, allowing selectors
+ * and verifiers to be exercised and benchmarked without a real cluster. Only
+ * the SELECT statements issued by the driver and the tool are understood.
+ *
+ * @author repasi
+ */
+public final class StandInCluster implements Closeable, AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(StandInCluster.class.getName());
+
+    public static final String DATACENTER = "dc1";
+    public static final String RACK = "rack1";
+
+    /**
+     * Failures injected into requests to the stand-in tables.
+     */
+    public enum Failure {
+        /** The replicas did not respond in time. */
+        READ_TIMEOUT,
+        /** Not enough replicas alive. */
+        UNAVAILABLE,
+        /** The coordinator is overloaded. */
+        OVERLOADED
+    }
+
+    /**
+     * A statement prepared on the cluster.
+     */
+    record Prepared(CqlSelect statement, Table table) {};
+
+    private final String clusterName;
+    private final String keyspace;
+    private final int replicationFactor;
+    private final InetAddress address;
+    private final int port;
+    private final Duration latency;
+    private final double failureRate;
+    private final Failure failure;
+    private final List<StandInTable> tables;
+    private final long[][] tokens;
+    private final long[] ring;
+    private final UUID[] hostIds;
+    private final UUID schemaVersion;
+    private final List<StandInNode> nodes = new ArrayList<>();
+    private final Map<ByteBuffer, Prepared> prepared = new ConcurrentHashMap<>();
+
+    private StandInCluster(Builder builder) {
+        this.clusterName = builder.clusterName;
+        this.keyspace = builder.keyspace;
+        this.replicationFactor = builder.replicationFactor;
+        this.address = builder.address;
+        this.port = builder.port;
+        this.latency = builder.latency;
+        this.failureRate = builder.failureRate;
+        this.failure = builder.failure;
+
+        SplittableRandom random = new SplittableRandom(builder.seed);
+        this.tokens = new long[builder.nodes][builder.vnodes];
+        this.ring = new long[builder.nodes * builder.vnodes];
+        this.hostIds = new UUID[builder.nodes];
+        for (int node = 0; node < builder.nodes; node++) {
+            hostIds[node] = new UUID(random.nextLong(), random.nextLong());
+            for (int v = 0; v < builder.vnodes; v++) {
+                tokens[node][v] = random.nextLong(Long.MIN_VALUE + 1, Long.MAX_VALUE);
+                ring[node * builder.vnodes + v] = tokens[node][v];
+            }
+            Arrays.sort(tokens[node]);
+        }
+        Arrays.sort(ring);
+        this.schemaVersion = new UUID(random.nextLong(), random.nextLong());
+
+        double[] loss = new double[builder.nodes];
+        builder.loss.forEach((node, fraction) -> {
+            if (node < loss.length)
+                loss[node] = fraction;
+        });
+        this.tables = new ArrayList<>(builder.tables);
+        for (int i = 0; i < builder.tables; i++)
+            tables.add(new StandInTable(keyspace, "table_" + i, builder.partitions,
+                    builder.rowsPerPartition, builder.seed, loss, builder.scanTimeout));
+    }
+
+    /**
+     * @return a builder of a stand-in cluster
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Start the nodes, each listening on its own port.
+     * @throws IOException if a node cannot listen
+     */
+    public void start() throws IOException {
+        for (int node = 0; node < tokens.length; node++)
+            nodes.add(new StandInNode(this, node, address, port == 0 ? 0 : port + node));
+        for (StandInNode node : nodes)
+            node.start(SystemTables.of(this, node.getIndex()));
+        LOG.log(Level.INFO, "Stand-in cluster {0} started with {1} nodes at {2}",
+                new Object[]{clusterName, nodes.size(), getContactPoints()});
+    }
+
+    /**
+     * Stop the nodes, closing all connections.
+     */
+    @Override
+    public void close() {
+        for (StandInNode node : nodes)
+            node.close();
+        nodes.clear();
+    }
+
+    /**
+     * @return the addresses of the nodes, available once started
+     */
+    public List<InetSocketAddress> getContactPoints() {
+        return nodes.stream().map(StandInNode::getAddress).toList();
+    }
+
+    public String getLocalDatacenter() {
+        return DATACENTER;
+    }
+
+    public String getClusterName() {
+        return clusterName;
+    }
+
+    public String getKeyspace() {
+        return keyspace;
+    }
+
+    /**
+     * @return the names of the stand-in tables
+     */
+    public List<String> getTableNames() {
+        return tables.stream().map(Table::name).toList();
+    }
+
+    int getNodes() {
+        return tokens.length;
+    }
+
+    int getReplicationFactor() {
+        return replicationFactor;
+    }
+
+    List<StandInTable> getTables() {
+        return tables;
+    }
+
+    long[] getTokens(int node) {
+        return tokens[node];
+    }
+
+    /**
+     * @return the token preceding a token of the ring, wrapping around
+     */
+    long getPredecessor(long token) {
+        int pos = Arrays.binarySearch(ring, token);
+        return ring[(pos - 1 + ring.length) % ring.length];
+    }
+
+    UUID getHostId(int node) {
+        return hostIds[node];
+    }
+
+    UUID getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    /**
+     * @return the address the node is known by in the cluster, distinct for
+     * each node even if all of them listen on the same address
+     */
+    InetAddress getBroadcastAddress(int node) {
+        try {
+            return InetAddress.getByAddress(new byte[]{127, 0, (byte) (node >> 8), (byte) (node + 1)});
+        } catch (UnknownHostException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    InetSocketAddress getNativeAddress(int node) {
+        return nodes.get(node).getAddress();
+    }
+
+    Duration getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return the failure to inject into a request, null for most of them
+     */
+    ServerError nextFailure() {
+        if (failureRate <= 0 || ThreadLocalRandom.current().nextDouble() >= failureRate)
+            return null;
+        return switch (failure) {
+            case READ_TIMEOUT -> ServerError.readTimeout();
+            case UNAVAILABLE -> ServerError.unavailable();
+            case OVERLOADED -> ServerError.overloaded();
+        };
+    }
+
+    /**
+     * Prepare a statement, shared by all nodes.
+     * @return the id of the prepared statement
+     */
+    byte[] prepare(String query, Prepared statement) {
+        byte[] id = md5(query);
+        prepared.put(ByteBuffer.wrap(id), statement);
+        return id;
+    }
+
+    /**
+     * @return the prepared statement of an id
+     * @throws ServerError unprepared if the id is unknown
+     */
+    Prepared getPrepared(byte[] id) {
+        Prepared statement = prepared.get(ByteBuffer.wrap(id));
+        if (statement == null)
+            throw ServerError.unprepared(id);
+        return statement;
+    }
+
+    private static byte[] md5(String query) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(query.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Builder of stand-in clusters.
+     */
+    public static final class Builder {
+        private String clusterName = "Stand-in Cluster";
+        private String keyspace = "standin";
+        private int nodes = 3;
+        private int vnodes = 16;
+        private int replicationFactor = 3;
+        private int tables = 1;
+        private int partitions = 10000;
+        private int rowsPerPartition = 10;
+        private InetAddress address = InetAddress.getLoopbackAddress();
+        private int port = 0;
+        private Duration latency = Duration.ZERO;
+        private double failureRate = 0;
+        private Failure failure = Failure.READ_TIMEOUT;
+        private final Map<Integer, Double> loss = new HashMap<>();
+        private int scanTimeout = 0;
+        private long seed = 0;
+
+        public Builder withClusterName(final String clusterName) {
+            this.clusterName = clusterName;
+            return this;
+        }
+
+        public Builder withKeyspace(final String keyspace) {
+            this.keyspace = keyspace;
+            return this;
+        }
+
+        public Builder withNodes(final int nodes) {
+            this.nodes = nodes;
+            return this;
+        }
+
+        public Builder withVnodes(final int vnodes) {
+            this.vnodes = vnodes;
+            return this;
+        }
+
+        public Builder withReplicationFactor(final int replicationFactor) {
+            this.replicationFactor = replicationFactor;
+            return this;
+        }
+
+        public Builder withTables(final int tables) {
+            this.tables = tables;
+            return this;
+        }
+
+        public Builder withPartitions(final int partitions) {
+            this.partitions = partitions;
+            return this;
+        }
+
+        public Builder withRowsPerPartition(final int rowsPerPartition) {
+            this.rowsPerPartition = rowsPerPartition;
+            return this;
+        }
+
+        /**
+         * Set the address and the port of the first node, the following
+         * nodes listening on the following ports.
+         * @param address the address to listen on
+         * @param port port of the first node, 0 for ephemeral ports
+         * @return this builder
+         */
+        public Builder withAddress(final InetAddress address, final int port) {
+            this.address = address;
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * @param latency time added to each request of a stand-in table
+         * @return this builder
+         */
+        public Builder withLatency(final Duration latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        /**
+         * @param rate fraction of the requests of stand-in tables failing
+         * @param failure the failure of these requests
+         * @return this builder
+         */
+        public Builder withFailures(final double rate, final Failure failure) {
+            this.failureRate = rate;
+            this.failure = failure;
+            return this;
+        }
+
+        /**
+         * @param node index of the node
+         * @param fraction fraction of the partitions missing on the node
+         * @return this builder
+         */
+        public Builder withLoss(final int node, final double fraction) {
+            this.loss.put(node, fraction);
+            return this;
+        }
+
+        /**
+         * @param partitions number of partitions a token range query may
+         * span, the first page of wider range queries times out
+         * @return this builder
+         */
+        public Builder withScanTimeout(final int partitions) {
+            this.scanTimeout = partitions;
+            return this;
+        }
+
+        /**
+         * @param seed seed of the token ring and the partitions lost
+         * @return this builder
+         */
+        public Builder withSeed(final long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public StandInCluster build() {
+            if (nodes < 1 || vnodes < 1 || tables < 0 || partitions < 0 || rowsPerPartition < 1)
+                throw new IllegalArgumentException("Invalid stand-in cluster size");
+            return new StandInCluster(this);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.standin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A node of a stand-in cluster, serving the CQL native protocol v4. Each
+ * connection is read by a virtual thread, and each query is executed by a
+ * virtual thread of its own, so responses of slow queries do not hold back
+ * the others on the connection, as on a real node.
+ * @author repasi
+ */
+final class StandInNode implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(StandInNode.class.getName());
+
+    private static final int VERSION = 4;
+    private static final int RESPONSE = 0x80;
+    private static final int FLAG_CUSTOM_PAYLOAD = 0x04;
+
+    private static final int ERROR = 0x00;
+    private static final int STARTUP = 0x01;
+    private static final int READY = 0x02;
+    private static final int OPTIONS = 0x05;
+    private static final int SUPPORTED = 0x06;
+    private static final int QUERY = 0x07;
+    private static final int RESULT = 0x08;
+    private static final int PREPARE = 0x09;
+    private static final int EXECUTE = 0x0A;
+    private static final int REGISTER = 0x0B;
+
+    private static final int VALUES = 0x01;
+    private static final int PAGE_SIZE = 0x04;
+    private static final int WITH_PAGING_STATE = 0x08;
+    private static final int NAMED_VALUES = 0x40;
+
+    private final StandInCluster cluster;
+    private final int index;
+    private final ServerSocket server;
+    private final Map<String, Table> tables = new HashMap<>();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Create a node listening on the given address.
+     * @param port the port, 0 for an ephemeral port
+     */
+    StandInNode(StandInCluster cluster, int index, InetAddress address, int port) throws IOException {
+        this.cluster = cluster;
+        this.index = index;
+        this.server = new ServerSocket(port, 128, address);
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    InetSocketAddress getAddress() {
+        return new InetSocketAddress(server.getInetAddress(), server.getLocalPort());
+    }
+
+    /**
+     * Start accepting connections.
+     * @param systemTables the system tables of this node
+     */
+    void start(List<Table> systemTables) {
+        for (Table table : systemTables)
+            tables.put(table.keyspace() + "." + table.name(), table);
+        for (Table table : cluster.getTables())
+            tables.put(table.keyspace() + "." + table.name(), table);
+        Thread.ofVirtual().name("standin-node-" + index).start(this::accept);
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.close();
+        } catch (IOException ex) {
+            LOG.log(Level.FINE, "Failed to close stand-in node " + index, ex);
+        }
+        for (Socket socket : connections) {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                LOG.log(Level.FINE, "Failed to close connection " + socket, ex);
+            }
+        }
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                Thread.ofVirtual().start(() -> new Connection(socket).serve());
+            } catch (IOException ex) {
+                if (!server.isClosed())
+                    LOG.log(Level.WARNING, "Stand-in node " + index + " failed to accept connection", ex);
+            }
+        }
+    }
+
+    /**
+     * A response frame to send.
+     */
+    private record Response(int opcode, FrameWriter body) {};
+
+    /**
+     * A client connection, remembering the keyspace in use.
+     */
+    private final class Connection {
+        private final Socket socket;
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private volatile String keyspace;
+        private OutputStream out;
+
+        private Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        private void serve() {
+            try (socket;
+                 var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                 var os = new BufferedOutputStream(socket.getOutputStream())) {
+                out = os;
+                byte[] header = new byte[9];
+                while (true) {
+                    in.readFully(header);
+                    ByteBuffer h = ByteBuffer.wrap(header);
+                    int version = h.get(0) & 0x7F;
+                    int flags = h.get(1);
+                    short stream = h.getShort(2);
+                    int opcode = h.get(4);
+                    byte[] body = new byte[h.getInt(5)];
+                    in.readFully(body);
+                    if (version != VERSION) {
+                        send(stream, error(new ServerError(ServerError.PROTOCOL_ERROR,
+                                "Invalid or unsupported protocol version (" + version + "); supported versions are (4/v4)")));
+                        continue;
+                    }
+                    ByteBuffer request = ByteBuffer.wrap(body);
+                    if ((flags & FLAG_CUSTOM_PAYLOAD) != 0)
+                        FrameWriter.skipBytesMap(request);
+                    if (opcode == QUERY || opcode == EXECUTE)
+                        Thread.ofVirtual().start(() -> send(stream, handle(opcode, request)));
+                    else
+                        send(stream, handle(opcode, request));
+                }
+            } catch (EOFException | SocketException ex) {
+                // connection closed
+            } catch (IOException ex) {
+                LOG.log(Level.FINE, "Stand-in connection " + socket + " failed", ex);
+            } finally {
+                connections.remove(socket);
+            }
+        }
+
+        private Response handle(int opcode, ByteBuffer request) {
+            try {
+                return switch (opcode) {
+                    case OPTIONS -> supported();
+                    case STARTUP, REGISTER -> new Response(READY, new FrameWriter());
+                    case QUERY -> query(FrameWriter.readLongString(request), request);
+                    case PREPARE -> prepare(FrameWriter.readLongString(request));
+                    case EXECUTE -> {
+                        StandInCluster.Prepared prepared = cluster.getPrepared(FrameWriter.readShortBytes(request));
+                        yield execute(prepared.table(), prepared.statement(), request);
+                    }
+                    default -> throw new ServerError(ServerError.PROTOCOL_ERROR, "Unsupported opcode " + opcode);
+                };
+            } catch (ServerError ex) {
+                return error(ex);
+            } catch (RuntimeException ex) {
+                LOG.log(Level.FINE, "Stand-in request failed", ex);
+                return error(new ServerError(ServerError.SERVER_ERROR, String.valueOf(ex)));
+            }
+        }
+
+        private Response supported() {
+            FrameWriter body = new FrameWriter();
+            body.writeStringMultimap(Map.of(
+                    "CQL_VERSION", List.of("3.4.4"),
+                    "COMPRESSION", List.of(),
+                    "PROTOCOL_VERSIONS", List.of("4/v4")));
+            return new Response(SUPPORTED, body);
+        }
+
+        private Response query(String query, ByteBuffer options) {
+            String trimmed = query.strip();
+            if (trimmed.regionMatches(true, 0, "USE ", 0, 4)) {
+                keyspace = trimmed.substring(4).replace(";", "").replace("\"", "").strip();
+                FrameWriter body = new FrameWriter();
+                body.writeInt(Rows.KIND_SET_KEYSPACE);
+                body.writeString(keyspace);
+                return new Response(RESULT, body);
+            }
+            CqlSelect statement = parse(trimmed);
+            return execute(table(statement), statement, options);
+        }
+
+        private Response prepare(String query) {
+            CqlSelect statement = parse(query.strip());
+            Table table = table(statement);
+            List<Column> variables = table.variables(statement);
+            int[] partitionKey = table.partitionKeyIndexes(statement);
+            byte[] id = cluster.prepare(query, new StandInCluster.Prepared(statement, table));
+
+            FrameWriter body = new FrameWriter();
+            body.writeInt(Rows.KIND_PREPARED);
+            body.writeShortBytes(id);
+            body.writeInt(0x0001);
+            body.writeInt(variables.size());
+            body.writeInt(partitionKey.length);
+            for (int i : partitionKey)
+                body.writeShort(i);
+            body.writeString(table.keyspace());
+            body.writeString(table.name());
+            for (Column variable : variables) {
+                body.writeString(variable.name());
+                variable.type().writeOption(body);
+            }
+            Rows.writeMetadata(body, table.keyspace(), table.name(), table.resultColumns(statement), null);
+            return new Response(RESULT, body);
+        }
+
+        private Response execute(Table table, CqlSelect statement, ByteBuffer options) {
+            options.getShort(); // consistency
+            int flags = options.get();
+            List<ByteBuffer> values = (flags & VALUES) != 0
+                    ? FrameWriter.readValues(options, (flags & NAMED_VALUES) != 0)
+                    : List.of();
+            int pageSize = (flags & PAGE_SIZE) != 0 ? options.getInt() : -1;
+            ByteBuffer pagingState = (flags & WITH_PAGING_STATE) != 0 ? FrameWriter.readBytes(options) : null;
+
+            if (table instanceof StandInTable) {
+                if (!cluster.getLatency().isZero()) {
+                    try {
+                        Thread.sleep(cluster.getLatency());
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                ServerError failure = cluster.nextFailure();
+                if (failure != null)
+                    throw failure;
+            }
+            Rows rows = table.select(new Table.Query(statement, values, pageSize, pagingState), index);
+            FrameWriter body = new FrameWriter();
+            rows.write(body);
+            return new Response(RESULT, body);
+        }
+
+        private CqlSelect parse(String query) {
+            if (!query.regionMatches(true, 0, "SELECT", 0, 6))
+                throw ServerError.invalid("Only SELECT statements are supported by the stand-in");
+            return CqlSelect.parse(query, keyspace);
+        }
+
+        private Table table(CqlSelect statement) {
+            if (statement.keyspace() == null)
+                throw ServerError.invalid("No keyspace has been specified");
+            Table table = tables.get(statement.keyspace() + "." + statement.table());
+            if (table == null)
+                throw ServerError.invalid("unconfigured table " + statement.table());
+            return table;
+        }
+
+        private Response error(ServerError error) {
+            FrameWriter body = new FrameWriter();
+            error.write(body);
+            return new Response(ERROR, body);
+        }
+
+        private void send(short stream, Response response) {
+            byte[] body = response.body().toByteArray();
+            ByteBuffer header = ByteBuffer.allocate(9)
+                    .put((byte) (RESPONSE | VERSION))
+                    .put((byte) 0)
+                    .putShort(stream)
+                    .put((byte) response.opcode())
+                    .putInt(body.length);
+            writeLock.lock();
+            try {
+                out.write(header.array());
+                out.write(body);
+                out.flush();
+            } catch (IOException ex) {
+                LOG.log(Level.FINE, "Failed to respond on " + socket, ex);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.standin;
+
+import com.datastax.oss.driver.internal.core.metadata.token.Murmur3Token;
+import com.datastax.oss.driver.internal.core.metadata.token.Murmur3TokenFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A table of synthetic rows, generated on the fly rather than stored:
+ * <pre>
+ * CREATE TABLE keyspace.name (id bigint, ck int, value text, PRIMARY KEY (id, ck))
+ * </pre>
+ * Partitions have the ids 0 to partitions-1, each having rowsPerPartition
+ * rows with ck 0 to rowsPerPartition-1 and value "value-id-ck". Partitions
+ * are ordered by their Murmur3 token, so token range scans page through the
+ * table as they do on a real cluster.
+ *
+ * Every node serves all rows, except for the partitions lost by the node:
+ * a fraction of the partitions, picked per node by a hash of the seed, is
+ * missing from the results of the node.
+ * @author repasi
+ */
+final class StandInTable extends Table {
+
+    private static final Murmur3TokenFactory TOKENS = new Murmur3TokenFactory();
+
+    private final int rowsPerPartition;
+    private final long seed;
+    private final double[] loss;
+    private final int scanTimeout;
+    /** Partition ids in token order. */
+    private final long[] ids;
+    /** Partition tokens in token order. */
+    private final long[] tokens;
+    /** Position of each partition id in token order. */
+    private final int[] positions;
+
+    /**
+     * Create a table.
+     * @param keyspace the keyspace of the table
+     * @param name the name of the table
+     * @param partitions number of partitions
+     * @param rowsPerPartition number of rows of each partition
+     * @param seed seed picking the partitions lost
+     * @param loss fraction of partitions lost by each node
+     * @param scanTimeout number of partitions a token range query may span
+     * without timing out, zero for no limit
+     */
+    StandInTable(String keyspace, String name, int partitions, int rowsPerPartition, long seed, double[] loss,
+            int scanTimeout) {
+        super(keyspace, name, List.of(
+                Column.partitionKey("id", CqlType.BIGINT, 0),
+                Column.clustering("ck", CqlType.INT, 0),
+                Column.regular("value", CqlType.TEXT)));
+        this.rowsPerPartition = rowsPerPartition;
+        this.seed = seed ^ name.hashCode();
+        this.loss = loss.clone();
+        this.scanTimeout = scanTimeout;
+        long[] byId = new long[partitions];
+        for (int id = 0; id < partitions; id++)
+            byId[id] = tokenOf(id);
+        int[] order = IntStream.range(0, partitions).boxed()
+                .sorted(Comparator.comparingLong(id -> byId[id]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        this.ids = new long[partitions];
+        this.tokens = new long[partitions];
+        this.positions = new int[partitions];
+        for (int pos = 0; pos < partitions; pos++) {
+            ids[pos] = order[pos];
+            tokens[pos] = byId[order[pos]];
+            positions[order[pos]] = pos;
+        }
+    }
+
+    /**
+     * @return the Murmur3 token of a partition id
+     */
+    static long tokenOf(long id) {
+        return ((Murmur3Token) TOKENS.hash(CqlType.BIGINT.encode(id))).getValue();
+    }
+
+    int partitions() {
+        return ids.length;
+    }
+
+    int rowsPerPartition() {
+        return rowsPerPartition;
+    }
+
+    /**
+     * Count the partitions of a token range, wrapping around the ring if
+     * start is not less than end.
+     */
+    int count(long start, long end) {
+        if (start < end)
+            return above(end, false) - above(start, false);
+        return ids.length - above(start, false) + above(end, false);
+    }
+
+    @Override
+    protected long token(ByteBuffer[] row) {
+        return tokens[positions[(int) row[0].getLong(row[0].position())]];
+    }
+
+    @Override
+    Rows select(Query query, int node) {
+        CqlSelect statement = query.statement();
+        int from = 0;
+        int to = ids.length;
+        int ckFrom = 0;
+        int ckTo = rowsPerPartition;
+        boolean ranged = false;
+        for (CqlSelect.Relation relation : statement.where()) {
+            if (relation.token()) {
+                ranged = true;
+                ByteBuffer value = query.value(relation.term(), CqlType.BIGINT);
+                long token = value.getLong(value.position());
+                switch (relation.operator()) {
+                    case ">" -> from = Math.max(from, above(token, false));
+                    case ">=" -> from = Math.max(from, above(token, true));
+                    case "<", "<=" -> {
+                        // the minimum token as upper bound means the end of the ring
+                        if (token != Long.MIN_VALUE)
+                            to = Math.min(to, above(token, relation.operator().equals("<")));
+                    }
+                    default -> {
+                        from = Math.max(from, above(token, true));
+                        to = Math.min(to, above(token, false));
+                    }
+                }
+            } else if (!relation.operator().equals("=")) {
+                throw ServerError.invalid("Only equality is supported on column " + relation.column());
+            } else if (relation.column().equals("id")) {
+                ByteBuffer value = query.value(relation.term(), CqlType.BIGINT);
+                long id = value.getLong(value.position());
+                if (id < 0 || id >= ids.length)
+                    return rows(statement, List.of(), null);
+                from = Math.max(from, positions[(int) id]);
+                to = Math.min(to, positions[(int) id] + 1);
+            } else if (relation.column().equals("ck")) {
+                ByteBuffer value = query.value(relation.term(), CqlType.INT);
+                int ck = value.getInt(value.position());
+                ckFrom = Math.max(ckFrom, ck);
+                ckTo = Math.min(ckTo, ck + 1);
+            } else {
+                throw ServerError.invalid("Cannot restrict column " + relation.column());
+            }
+        }
+        if (ranged && scanTimeout > 0 && query.pagingState() == null && to - from > scanTimeout)
+            throw ServerError.readTimeout();
+        return scan(query, node, from, to, Math.max(0, ckTo - ckFrom), ckFrom);
+    }
+
+    /**
+     * Page through the partitions between two positions in token order.
+     */
+    private Rows scan(Query query, int node, int from, int to, int width, int ckFrom) {
+        CqlSelect statement = query.statement();
+        int limit = query.intValue(statement.limit(), Integer.MAX_VALUE);
+        int perPartition = Math.min(width, query.intValue(statement.perPartitionLimit(), Integer.MAX_VALUE));
+        int pageLimit = query.pageLimit();
+        int pos = from;
+        int offset = 0;
+        int emitted = 0;
+        if (query.pagingState() != null) {
+            ByteBuffer state = query.pagingState();
+            pos = state.getInt(state.position());
+            offset = state.getInt(state.position() + 4);
+            emitted = state.getInt(state.position() + 8);
+        }
+        List<ByteBuffer[]> data = new ArrayList<>(Math.min(pageLimit, 1024));
+        while (pos < to && emitted < limit && data.size() < pageLimit) {
+            long id = ids[pos];
+            if (isLost(id, node)) {
+                pos++;
+                continue;
+            }
+            while (offset < perPartition && emitted < limit && data.size() < pageLimit) {
+                int ck = statement.reversed() ? ckFrom + width - 1 - offset : ckFrom + offset;
+                data.add(project(statement, row(id, ck)));
+                offset++;
+                emitted++;
+            }
+            if (offset >= perPartition) {
+                pos++;
+                offset = 0;
+            }
+        }
+        ByteBuffer pagingState = null;
+        if (pos < to && emitted < limit)
+            pagingState = ByteBuffer.allocate(12).putInt(0, pos).putInt(4, offset).putInt(8, emitted);
+        return rows(statement, data, pagingState);
+    }
+
+    private static ByteBuffer[] row(long id, int ck) {
+        return new ByteBuffer[]{
+            CqlType.BIGINT.encode(id),
+            CqlType.INT.encode(ck),
+            CqlType.TEXT.encode("value-" + id + "-" + ck)
+        };
+    }
+
+    /**
+     * @return the position of the first partition having a token above the
+     * given token, or at it if inclusive
+     */
+    private int above(long token, boolean inclusive) {
+        int pos = Arrays.binarySearch(tokens, token);
+        if (pos < 0)
+            return -pos - 1;
+        return inclusive ? pos : pos + 1;
+    }
+
+    private boolean isLost(long id, int node) {
+        if (node < 0 || node >= loss.length || loss[node] <= 0)
+            return false;
+        long h = seed + id * 0x9E3779B97F4A7C15L + node * 0xC2B2AE3D27D4EB4FL;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        h ^= h >>> 31;
+        return (h >>> 11) * 0x1.0p-53 < loss[node];
+    }
+}
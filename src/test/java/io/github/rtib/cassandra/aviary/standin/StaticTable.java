@@ -0,0 +1,72 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.standin;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A table of fixed rows, e.g. a system table. Queries may restrict any
+ * column by equality, results are not paged.
+ * @author repasi
+ */
+final class StaticTable extends Table {
+
+    private final List<ByteBuffer[]> data = new ArrayList<>();
+
+    StaticTable(String keyspace, String name, List<Column> columns) {
+        super(keyspace, name, columns);
+    }
+
+    /**
+     * Add a row.
+     * @param values values of all columns in order of the columns
+     * @return this table
+     */
+    StaticTable add(Object... values) {
+        ByteBuffer[] row = new ByteBuffer[columns().size()];
+        for (int i = 0; i < row.length; i++)
+            row[i] = columns().get(i).type().encode(values[i]);
+        data.add(row);
+        return this;
+    }
+
+    @Override
+    Rows select(Query query, int node) {
+        CqlSelect statement = query.statement();
+        List<ByteBuffer[]> result = new ArrayList<>();
+        for (ByteBuffer[] row : data)
+            if (matches(query, row))
+                result.add(project(statement, row));
+        int limit = query.intValue(statement.limit(), Integer.MAX_VALUE);
+        if (result.size() > limit)
+            result = result.subList(0, limit);
+        return rows(statement, result, null);
+    }
+
+    private boolean matches(Query query, ByteBuffer[] row) {
+        for (CqlSelect.Relation relation : query.statement().where()) {
+            if (relation.token() || !relation.operator().equals("="))
+                throw ServerError.invalid("Only equality is supported on " + keyspace() + "." + name());
+            Column column = column(relation.column());
+            ByteBuffer cell = row[indexOf(column)];
+            if (cell == null || !cell.equals(query.value(relation.term(), column.type())))
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.standin;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The system tables of a stand-in node, as far as read by the driver to
+ * discover the topology, the token ring and the schema of the cluster, and
+ * by the tool to estimate table sizes. They mimic a Cassandra 3.11 node
+ * having the peers_v2 table, which allows all nodes to listen on the same
+ * address with distinct ports.
+ * @author repasi
+ */
+final class SystemTables {
+
+    static final String RELEASE_VERSION = "3.11.16";
+    static final String PARTITIONER = "org.apache.cassandra.dht.Murmur3Partitioner";
+    private static final String CQL_VERSION = "3.4.4";
+    /** Estimated bytes per row of a stand-in table. */
+    private static final long ROW_SIZE = 32;
+
+    private SystemTables() {
+    }
+
+    /**
+     * Create the system tables as seen by a node.
+     * @param cluster the cluster
+     * @param node index of the node
+     * @return the tables
+     */
+    static List<Table> of(StandInCluster cluster, int node) {
+        return List.of(
+                local(cluster, node),
+                peersV2(cluster, node),
+                peers(cluster, node),
+                keyspaces(cluster),
+                tables(cluster),
+                columns(cluster),
+                sizeEstimates(cluster, node),
+                empty("types", "type_name"),
+                empty("functions", "function_name"),
+                empty("aggregates", "aggregate_name"),
+                empty("views", "view_name"),
+                empty("indexes", "index_name"),
+                empty("triggers", "trigger_name"));
+    }
+
+    private static Table local(StandInCluster cluster, int node) {
+        return new StaticTable("system", "local", List.of(
+                Column.partitionKey("key", CqlType.TEXT, 0),
+                Column.regular("bootstrapped", CqlType.TEXT),
+                Column.regular("broadcast_address", CqlType.INET),
+                Column.regular("cluster_name", CqlType.TEXT),
+                Column.regular("cql_version", CqlType.TEXT),
+                Column.regular("data_center", CqlType.TEXT),
+                Column.regular("host_id", CqlType.UUID_TYPE),
+                Column.regular("listen_address", CqlType.INET),
+                Column.regular("native_protocol_version", CqlType.TEXT),
+                Column.regular("partitioner", CqlType.TEXT),
+                Column.regular("rack", CqlType.TEXT),
+                Column.regular("release_version", CqlType.TEXT),
+                Column.regular("rpc_address", CqlType.INET),
+                Column.regular("schema_version", CqlType.UUID_TYPE),
+                Column.regular("tokens", CqlType.SET_TEXT)))
+                .add("local", "COMPLETED", cluster.getBroadcastAddress(node), cluster.getClusterName(),
+                        CQL_VERSION, StandInCluster.DATACENTER, cluster.getHostId(node),
+                        cluster.getBroadcastAddress(node), "4", PARTITIONER, StandInCluster.RACK,
+                        RELEASE_VERSION, cluster.getNativeAddress(node).getAddress(),
+                        cluster.getSchemaVersion(), tokens(cluster, node));
+    }
+
+    private static Table peersV2(StandInCluster cluster, int node) {
+        StaticTable table = new StaticTable("system", "peers_v2", List.of(
+                Column.partitionKey("peer", CqlType.INET, 0),
+                Column.clustering("peer_port", CqlType.INT, 0),
+                Column.regular("data_center", CqlType.TEXT),
+                Column.regular("host_id", CqlType.UUID_TYPE),
+                Column.regular("native_address", CqlType.INET),
+                Column.regular("native_port", CqlType.INT),
+                Column.regular("preferred_ip", CqlType.INET),
+                Column.regular("preferred_port", CqlType.INT),
+                Column.regular("rack", CqlType.TEXT),
+                Column.regular("release_version", CqlType.TEXT),
+                Column.regular("schema_version", CqlType.UUID_TYPE),
+                Column.regular("tokens", CqlType.SET_TEXT)));
+        for (int peer = 0; peer < cluster.getNodes(); peer++) {
+            if (peer == node)
+                continue;
+            InetSocketAddress nativeAddress = cluster.getNativeAddress(peer);
+            table.add(cluster.getBroadcastAddress(peer), 7000, StandInCluster.DATACENTER,
+                    cluster.getHostId(peer), nativeAddress.getAddress(), nativeAddress.getPort(),
+                    null, null, StandInCluster.RACK, RELEASE_VERSION, cluster.getSchemaVersion(),
+                    tokens(cluster, peer));
+        }
+        return table;
+    }
+
+    private static Table peers(StandInCluster cluster, int node) {
+        StaticTable table = new StaticTable("system", "peers", List.of(
+                Column.partitionKey("peer", CqlType.INET, 0),
+                Column.regular("data_center", CqlType.TEXT),
+                Column.regular("host_id", CqlType.UUID_TYPE),
+                Column.regular("preferred_ip", CqlType.INET),
+                Column.regular("rack", CqlType.TEXT),
+                Column.regular("release_version", CqlType.TEXT),
+                Column.regular("rpc_address", CqlType.INET),
+                Column.regular("schema_version", CqlType.UUID_TYPE),
+                Column.regular("tokens", CqlType.SET_TEXT)));
+        for (int peer = 0; peer < cluster.getNodes(); peer++)
+            if (peer != node)
+                table.add(cluster.getBroadcastAddress(peer), StandInCluster.DATACENTER,
+                        cluster.getHostId(peer), null, StandInCluster.RACK, RELEASE_VERSION,
+                        cluster.getNativeAddress(peer).getAddress(), cluster.getSchemaVersion(),
+                        tokens(cluster, peer));
+        return table;
+    }
+
+    private static Table keyspaces(StandInCluster cluster) {
+        return new StaticTable("system_schema", "keyspaces", List.of(
+                Column.partitionKey("keyspace_name", CqlType.TEXT, 0),
+                Column.regular("durable_writes", CqlType.BOOLEAN),
+                Column.regular("replication", CqlType.MAP_TEXT_TEXT)))
+                .add(cluster.getKeyspace(), true, Map.of(
+                        "class", "org.apache.cassandra.locator.SimpleStrategy",
+                        "replication_factor", Integer.toString(cluster.getReplicationFactor())));
+    }
+
+    private static Table tables(StandInCluster cluster) {
+        StaticTable table = new StaticTable("system_schema", "tables", List.of(
+                Column.partitionKey("keyspace_name", CqlType.TEXT, 0),
+                Column.clustering("table_name", CqlType.TEXT, 0),
+                Column.regular("caching", CqlType.MAP_TEXT_TEXT),
+                Column.regular("comment", CqlType.TEXT),
+                Column.regular("compaction", CqlType.MAP_TEXT_TEXT),
+                Column.regular("compression", CqlType.MAP_TEXT_TEXT),
+                Column.regular("default_time_to_live", CqlType.INT),
+                Column.regular("extensions", CqlType.MAP_TEXT_BLOB),
+                Column.regular("flags", CqlType.SET_TEXT),
+                Column.regular("gc_grace_seconds", CqlType.INT),
+                Column.regular("id", CqlType.UUID_TYPE)));
+        for (Table t : cluster.getTables())
+            table.add(t.keyspace(), t.name(),
+                    Map.of("keys", "ALL", "rows_per_partition", "NONE"), "",
+                    Map.of("class", "org.apache.cassandra.db.compaction.SizeTieredCompactionStrategy"),
+                    Map.of("class", "org.apache.cassandra.io.compress.LZ4Compressor"),
+                    0, Map.of(), Set.of("compound"), 864000, t.id());
+        return table;
+    }
+
+    private static Table columns(StandInCluster cluster) {
+        StaticTable table = new StaticTable("system_schema", "columns", List.of(
+                Column.partitionKey("keyspace_name", CqlType.TEXT, 0),
+                Column.clustering("table_name", CqlType.TEXT, 0),
+                Column.clustering("column_name", CqlType.TEXT, 1),
+                Column.regular("clustering_order", CqlType.TEXT),
+                Column.regular("column_name_bytes", CqlType.BLOB),
+                Column.regular("kind", CqlType.TEXT),
+                Column.regular("position", CqlType.INT),
+                Column.regular("type", CqlType.TEXT)));
+        for (Table t : cluster.getTables())
+            for (Column column : t.columns())
+                table.add(t.keyspace(), t.name(), column.name(),
+                        column.kind().equals("clustering") ? "asc" : "none",
+                        ByteBuffer.wrap(column.name().getBytes(StandardCharsets.UTF_8)),
+                        column.kind(), column.position(), column.type().name());
+        return table;
+    }
+
+    /**
+     * Estimate the partitions of each primary range of the node and table.
+     */
+    private static Table sizeEstimates(StandInCluster cluster, int node) {
+        StaticTable table = new StaticTable("system", "size_estimates", List.of(
+                Column.partitionKey("keyspace_name", CqlType.TEXT, 0),
+                Column.clustering("table_name", CqlType.TEXT, 0),
+                Column.clustering("range_start", CqlType.TEXT, 1),
+                Column.clustering("range_end", CqlType.TEXT, 2),
+                Column.regular("mean_partition_size", CqlType.BIGINT),
+                Column.regular("partitions_count", CqlType.BIGINT)));
+        for (StandInTable t : cluster.getTables())
+            for (long end : cluster.getTokens(node)) {
+                long start = cluster.getPredecessor(end);
+                table.add(t.keyspace(), t.name(), Long.toString(start), Long.toString(end),
+                        t.rowsPerPartition() * ROW_SIZE, (long) t.count(start, end));
+            }
+        return table;
+    }
+
+    private static Table empty(String name, String column) {
+        return new StaticTable("system_schema", name, List.of(
+                Column.partitionKey("keyspace_name", CqlType.TEXT, 0),
+                Column.clustering(column, CqlType.TEXT, 0)));
+    }
+
+    private static Set<String> tokens(StandInCluster cluster, int node) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (long token : cluster.getTokens(node))
+            tokens.add(Long.toString(token));
+        return tokens;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.standin;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A table served by the stand-in. Subclasses produce the rows of a query,
+ * this class resolves the selectors and bind markers of statements.
+ * @author repasi
+ */
+abstract class Table {
+
+    /**
+     * A statement to execute with its bound values and paging options.
+     */
+    record Query(CqlSelect statement, List<ByteBuffer> values, int pageSize, ByteBuffer pagingState) {
+
+        /**
+         * @return the serialized value of a term, bound or literal
+         */
+        ByteBuffer value(CqlSelect.Term term, CqlType type) {
+            if (term.marker() < 0)
+                return type.encode(type.parse(term.literal()));
+            if (term.marker() >= values.size())
+                throw ServerError.invalid("There were " + statement.markers()
+                        + " markers(?) in CQL but " + values.size() + " bound variables");
+            return values.get(term.marker());
+        }
+
+        /**
+         * @return the int value of a term, the default if the term is absent or null
+         */
+        int intValue(CqlSelect.Term term, int defaultValue) {
+            ByteBuffer value = term == null ? null : value(term, CqlType.INT);
+            return value == null ? defaultValue : value.getInt(value.position());
+        }
+
+        /**
+         * @return the page size, unbounded if not set by the client
+         */
+        int pageLimit() {
+            return pageSize > 0 ? pageSize : Integer.MAX_VALUE;
+        }
+    }
+
+    private final String keyspace;
+    private final String name;
+    private final List<Column> columns;
+    private final UUID id;
+
+    protected Table(String keyspace, String name, List<Column> columns) {
+        this.keyspace = keyspace;
+        this.name = name;
+        this.columns = List.copyOf(columns);
+        this.id = UUID.nameUUIDFromBytes((keyspace + "." + name).getBytes(StandardCharsets.UTF_8));
+    }
+
+    String keyspace() {
+        return keyspace;
+    }
+
+    String name() {
+        return name;
+    }
+
+    /**
+     * @return the columns in order of the primary key, then the regular columns
+     */
+    List<Column> columns() {
+        return columns;
+    }
+
+    UUID id() {
+        return id;
+    }
+
+    /**
+     * Execute a query.
+     * @param query the query
+     * @param node index of the node executing the query
+     * @return the page of rows
+     */
+    abstract Rows select(Query query, int node);
+
+    /**
+     * Calculate the token of a row, only supported by tables partitioned by
+     * the token ring.
+     */
+    protected long token(ByteBuffer[] row) {
+        throw ServerError.invalid("Token function not supported on " + keyspace + "." + name);
+    }
+
+    Column column(String name) {
+        for (Column column : columns)
+            if (column.name().equals(name))
+                return column;
+        throw ServerError.invalid("Undefined column name " + name + " in table " + keyspace + "." + this.name);
+    }
+
+    int indexOf(Column column) {
+        return columns.indexOf(column);
+    }
+
+    List<Column> partitionKey() {
+        return columns.stream().filter(Column::isPartitionKey).toList();
+    }
+
+    /**
+     * @return the columns of the result of a statement
+     */
+    List<Column> resultColumns(CqlSelect statement) {
+        if (statement.selectsAll())
+            return columns;
+        List<Column> result = new ArrayList<>(statement.selectors().size());
+        for (CqlSelect.Selector selector : statement.selectors())
+            result.add(selector.token()
+                    ? Column.regular("system.token(" + String.join(", ",
+                            partitionKey().stream().map(Column::name).toList()) + ")", CqlType.BIGINT)
+                    : column(selector.column()));
+        return result;
+    }
+
+    /**
+     * @return the bind variables of a statement in order of their markers
+     */
+    List<Column> variables(CqlSelect statement) {
+        Column[] variables = new Column[statement.markers()];
+        for (CqlSelect.Relation relation : statement.where())
+            if (relation.term().marker() >= 0)
+                variables[relation.term().marker()] = relation.token()
+                        ? Column.regular("partition key token", CqlType.BIGINT)
+                        : column(relation.column());
+        if (statement.perPartitionLimit() != null && statement.perPartitionLimit().marker() >= 0)
+            variables[statement.perPartitionLimit().marker()] = Column.regular("[per_partition_limit]", CqlType.INT);
+        if (statement.limit() != null && statement.limit().marker() >= 0)
+            variables[statement.limit().marker()] = Column.regular("[limit]", CqlType.INT);
+        return List.of(variables);
+    }
+
+    /**
+     * @return the indexes of the bind variables of the partition key columns,
+     * empty unless all of them are bound by equality
+     */
+    int[] partitionKeyIndexes(CqlSelect statement) {
+        List<Column> partitionKey = partitionKey();
+        int[] indexes = new int[partitionKey.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = -1;
+            for (CqlSelect.Relation relation : statement.where())
+                if (!relation.token() && relation.operator().equals("=")
+                        && relation.column().equals(partitionKey.get(i).name()))
+                    indexes[i] = relation.term().marker();
+            if (indexes[i] < 0)
+                return new int[0];
+        }
+        return indexes;
+    }
+
+    /**
+     * Project a row of all columns to the result columns of a statement.
+     */
+    protected ByteBuffer[] project(CqlSelect statement, ByteBuffer[] row) {
+        if (statement.selectsAll())
+            return row;
+        ByteBuffer[] result = new ByteBuffer[statement.selectors().size()];
+        for (int i = 0; i < result.length; i++) {
+            CqlSelect.Selector selector = statement.selectors().get(i);
+            result[i] = selector.token()
+                    ? CqlType.BIGINT.encode(token(row))
+                    : row[indexOf(column(selector.column()))];
+        }
+        return result;
+    }
+
+    /**
+     * Create a page of the result of a statement.
+     */
+    protected Rows rows(CqlSelect statement, List<ByteBuffer[]> data, ByteBuffer pagingState) {
+        return new Rows(keyspace, name, resultColumns(statement), data, pagingState);
+    }
+}
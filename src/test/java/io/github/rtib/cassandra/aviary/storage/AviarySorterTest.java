@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.storage;
+
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Sort canaries spilled to many files, merging them in several passes.
+ * @author repasi
+ */
+public class AviarySorterTest {
+
+    private static final int CANARIES = 500;
+
+    @TempDir
+    File tmpDir;
+
+    @Test
+    public void mergesSpillsInPassesKeepingFirstOfDuplicates() throws IOException {
+        List<ICanary> written = canaries();
+        List<ICanary> sorted = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        try (var sorter = new AviarySorter(AviarySorter::canonicalKey, 7, tmpDir, true, 3)) {
+            written.forEach(sorter::write);
+            sorter.merge((key, canary) -> {
+                keys.add(key);
+                sorted.add(canary);
+            });
+            assertEquals(CANARIES, sorter.duplicates());
+        }
+        assertEquals(CANARIES, sorted.size());
+        for (int i = 1; i < keys.size(); i++)
+            assertTrue(keys.get(i - 1).compareTo(keys.get(i)) < 0, "keys not in order at " + i);
+        // the first pass wrote the checksum "first"
+        for (ICanary canary : sorted)
+            assertEquals("first", canary.getChecksum());
+        assertEquals(0, tmpDir.listFiles().length);
+    }
+
+    @Test
+    public void mergesLikeSingleMergeOfAllSpills() throws IOException {
+        List<ICanary> written = canaries();
+        assertEquals(sort(written, 2), sort(written, AviarySorter.DEFAULT_MAX_FAN_IN));
+    }
+
+    private List<String> sort(List<ICanary> canaries, int maxFanIn) throws IOException {
+        List<String> out = new ArrayList<>();
+        try (var sorter = new AviarySorter(AviarySorter::canonicalKey, 5, tmpDir, false, maxFanIn)) {
+            canaries.forEach(sorter::write);
+            sorter.merge((key, canary) -> out.add(key + " " + canary.getChecksum()));
+        }
+        return out;
+    }
+
+    /**
+     * Each canary written twice in shuffled order, the first pass with the
+     * checksum "first", the second with "second".
+     */
+    private static List<ICanary> canaries() {
+        List<ICanary> canaries = new ArrayList<>();
+        Random random = new Random(42);
+        for (String pass : List.of("first", "second")) {
+            List<ICanary> batch = new ArrayList<>();
+            for (int i = 0; i < CANARIES; i++)
+                batch.add(new Canary("ks", "t", Map.of("id", i), null, null, pass));
+            Collections.shuffle(batch, random);
+            canaries.addAll(batch);
+        }
+        return canaries;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import com.datastax.oss.driver.api.core.ProtocolVersion;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Format canary values read from JSON as CQL literals of the column types.
+ * @author repasi
+ */
+public class CanaryValuesTest {
+
+    private final CanaryValues values = new CanaryValues(CodecRegistry.DEFAULT, ProtocolVersion.DEFAULT);
+
+    @Test
+    public void formatsLiteralsByColumnType() {
+        assertEquals("42", values.literal(DataTypes.BIGINT, 42));
+        assertEquals("'42'", values.literal(DataTypes.TEXT, "42"));
+        assertEquals("true", values.literal(DataTypes.BOOLEAN, true));
+        assertEquals("550e8400-e29b-41d4-a716-446655440000",
+                values.literal(DataTypes.UUID, "550e8400-e29b-41d4-a716-446655440000"));
+        assertEquals("'550e8400-e29b-41d4-a716-446655440000'",
+                values.literal(DataTypes.TEXT, "550e8400-e29b-41d4-a716-446655440000"));
+        assertEquals("'it''s'", values.literal(DataTypes.TEXT, "it's"));
+        assertEquals("0x0102ff", values.literal(DataTypes.BLOB, "0x0102ff"));
+        assertEquals("'127.0.0.1'", values.literal(DataTypes.INET, "127.0.0.1"));
+        assertEquals("'2023-05-01'", values.literal(DataTypes.DATE, "2023-05-01"));
+        assertEquals("NULL", values.literal(DataTypes.INT, null));
+    }
+
+    @Test
+    public void rejectsValuesNotOfTheColumnType() {
+        assertThrows(IllegalArgumentException.class, () -> values.literal(DataTypes.UUID, "not-a-uuid"));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.ProtocolVersion;
+import com.datastax.oss.driver.api.core.data.GettableById;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checksums of rows given as serialized values of their columns.
+ * @author repasi
+ */
+public class RowChecksumTest {
+
+    private static final CqlIdentifier A = CqlIdentifier.fromInternal("a");
+    private static final CqlIdentifier B = CqlIdentifier.fromInternal("b");
+
+    @Test
+    public void hashesLengthPrefixedValues() {
+        // xxh64 of 03 00 00 00 'a' 'b' 'c' ff ff ff ff
+        assertEquals("341b61a1bb75d727", RowChecksum.of(row(A, "abc", B, null), List.of(A, B)));
+    }
+
+    @Test
+    public void dependsOnColumnOrder() {
+        var row = row(A, "x", B, "y");
+        assertNotEquals(RowChecksum.of(row, List.of(A, B)), RowChecksum.of(row, List.of(B, A)));
+        assertEquals(RowChecksum.of(row, List.of(A, B)), RowChecksum.of(row(B, "y", A, "x"), List.of(A, B)));
+    }
+
+    @Test
+    public void distinguishesNullEmptyAndShiftedValues() {
+        List<CqlIdentifier> columns = List.of(A, B);
+        assertNotEquals(RowChecksum.of(row(A, null, B, "x"), columns), RowChecksum.of(row(A, "", B, "x"), columns));
+        assertNotEquals(RowChecksum.of(row(A, "ab", B, "c"), columns), RowChecksum.of(row(A, "a", B, "bc"), columns));
+        assertNotEquals(RowChecksum.of(row(A, "x", B, null), columns), RowChecksum.of(row(A, "x", B, "y"), columns));
+    }
+
+    /**
+     * A row of text columns, given as alternating names and values.
+     */
+    private static GettableById row(Object... columns) {
+        return new Row(columns);
+    }
+
+    private static final class Row implements GettableById {
+        private final List<CqlIdentifier> names = new ArrayList<>();
+        private final List<ByteBuffer> values = new ArrayList<>();
+
+        private Row(Object... columns) {
+            for (int i = 0; i < columns.length; i += 2) {
+                names.add((CqlIdentifier) columns[i]);
+                values.add(columns[i + 1] == null ? null
+                        : ByteBuffer.wrap(((String) columns[i + 1]).getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+
+        @Override
+        public ByteBuffer getBytesUnsafe(int i) {
+            ByteBuffer value = values.get(i);
+            return value == null ? null : value.duplicate();
+        }
+
+        @Override
+        public int firstIndexOf(CqlIdentifier id) {
+            int i = names.indexOf(id);
+            if (i < 0)
+                throw new IllegalArgumentException(id + " is not a column of " + Arrays.toString(names.toArray()));
+            return i;
+        }
+
+        @Override
+        public DataType getType(CqlIdentifier id) {
+            return DataTypes.TEXT;
+        }
+
+        @Override
+        public DataType getType(int i) {
+            return DataTypes.TEXT;
+        }
+
+        @Override
+        public int size() {
+            return names.size();
+        }
+
+        @Override
+        public CodecRegistry codecRegistry() {
+            return CodecRegistry.DEFAULT;
+        }
+
+        @Override
+        public ProtocolVersion protocolVersion() {
+            return ProtocolVersion.DEFAULT;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Hash the inputs of the sanity check of the reference implementation and
+ * compare to its known answers. The lengths cross the boundaries of the
+ * tails of 1, 4 and 8 bytes and of the 32 byte stripes.
+ * @author repasi
+ */
+public class XxHash64Test {
+
+    private static final long PRIME32 = 2654435761L;
+
+    @Test
+    public void hashesEmptyInput() {
+        assertEquals(0xEF46DB3751D8E999L, new XxHash64().digest());
+        assertEquals(0xAC75FDA2929B17EFL, new XxHash64(PRIME32).digest());
+    }
+
+    @Test
+    public void matchesKnownAnswers() {
+        assertKnownAnswer(1, 0xE934A84ADB052768L, 0x5014607643A9B4C3L);
+        assertKnownAnswer(4, 0x9136A0DCA57457EEL, 0xCAAB286BD8E9FDB5L);
+        assertKnownAnswer(8, 0xCDBCF538E71D1348L, 0xFE0C047A5353CDACL);
+        assertKnownAnswer(14, 0x8282DCC4994E35C8L, 0xC3BD6BF63DEB6DF0L);
+        assertKnownAnswer(31, 0x299B39A290E6D783L, 0xDA673D5FEB5C1D79L);
+        assertKnownAnswer(32, 0x18B216492BB44B70L, 0xB3F33BDF93ADE409L);
+        assertKnownAnswer(33, 0x55C8DC3E578F5B59L, 0xE92C292F64BC3071L);
+        assertKnownAnswer(100, 0x4BFE019CD91D9EA4L, 0x4853706DC9625CAEL);
+        assertKnownAnswer(222, 0xB641AE8CB691C174L, 0x20CB8AB7AE10C14AL);
+    }
+
+    @Test
+    public void hashesUpdatesLikeTheirConcatenation() {
+        byte[] data = testInput(100);
+        long expected = new XxHash64().update(ByteBuffer.wrap(data)).digest();
+        for (int split : new int[]{1, 7, 31, 32, 33, 64, 99}) {
+            XxHash64 hash = new XxHash64()
+                    .update(ByteBuffer.wrap(data, 0, split))
+                    .update(ByteBuffer.wrap(data, split, data.length - split));
+            assertEquals(expected, hash.digest());
+        }
+        // integers are hashed as their little endian bytes, also across stripes
+        for (int offset : new int[]{0, 30, 61}) {
+            XxHash64 hash = new XxHash64().update(ByteBuffer.wrap(data, 0, offset));
+            int p = offset;
+            for (; p + Integer.BYTES <= data.length; p += Integer.BYTES)
+                hash.update(ByteBuffer.wrap(data, p, Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).getInt());
+            hash.update(ByteBuffer.wrap(data, p, data.length - p));
+            assertEquals(expected, hash.digest());
+        }
+    }
+
+    @Test
+    public void restartsWithTheSeed() {
+        XxHash64 hash = new XxHash64(PRIME32).update(ByteBuffer.wrap(testInput(100)));
+        assertEquals(0xAC75FDA2929B17EFL, hash.reset().digest());
+    }
+
+    private static void assertKnownAnswer(int length, long unseeded, long seeded) {
+        ByteBuffer input = ByteBuffer.wrap(testInput(length));
+        assertEquals(unseeded, new XxHash64().update(input).digest());
+        assertEquals(seeded, new XxHash64(PRIME32).update(input).digest());
+    }
+
+    /**
+     * The pseudo random input of the sanity check of the reference
+     * implementation.
+     */
+    private static byte[] testInput(int length) {
+        byte[] data = new byte[length];
+        long gen = PRIME32;
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (gen >>> 56);
+            gen *= 0x9E3779B185EBCA8DL;
+        }
+        return data;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.verifier;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.token.TokenRange;
+import io.github.rtib.cassandra.aviary.model.ICanary;
+import io.github.rtib.cassandra.aviary.model.IOrigin;
+import io.github.rtib.cassandra.aviary.report.IRunReport;
+import io.github.rtib.cassandra.aviary.selector.AbstractSelector;
+import io.github.rtib.cassandra.aviary.selector.RangeSelector;
+import io.github.rtib.cassandra.aviary.standin.StandInCluster;
+import io.github.rtib.cassandra.aviary.storage.AviaryReader;
+import io.github.rtib.cassandra.aviary.storage.AviaryWriter;
+import io.github.rtib.cassandra.aviary.utils.ProgressTracker;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Verify the replicas of canaries selected from stand-in clusters.
+ * @author repasi
+ */
+public class ReplicaVerifierTest {
+
+    private static final int NODES = 3;
+    private static final int VNODES = 4;
+    private static final int LIMIT = 5;
+    private static final int LOSSY_NODE = 1;
+    private static final long CANARIES = (long) LIMIT * NODES * VNODES;
+    private static final PrintStream NO_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+
+    @TempDir
+    File tmp;
+
+    @Test
+    public void findsCanariesOnAllReplicas() throws Exception {
+        try (var cluster = cluster().build()) {
+            cluster.start();
+            File file = select(cluster);
+            Report report = new Report();
+            ProgressTracker.Snapshot result = verify(cluster, file, report);
+            assertEquals(CANARIES, result.total());
+            assertEquals(CANARIES, result.items());
+            assertEquals(0, result.errors());
+            assertEquals(NODES, report.nodes.size());
+            report.nodes.values().forEach(counters -> {
+                assertEquals(CANARIES, counters.get("checked").longValue());
+                assertEquals(CANARIES, counters.get("present").longValue());
+            });
+            assertTrue(report.canaries.isEmpty());
+            assertTrue(report.ranges.isEmpty());
+        }
+    }
+
+    @Test
+    public void reportsReplicasMissingCanaries() throws Exception {
+        File file;
+        try (var cluster = cluster().build()) {
+            cluster.start();
+            file = select(cluster);
+        }
+        // the same seed gives the same ring and rows, except for the rows lost
+        try (var cluster = cluster().withLoss(LOSSY_NODE, 0.5).build()) {
+            cluster.start();
+            Report report = new Report();
+            ProgressTracker.Snapshot result = verify(cluster, file, report);
+            InetSocketAddress lossy = cluster.getContactPoints().get(LOSSY_NODE);
+
+            long missing = 0;
+            for (var entry : report.nodes.entrySet()) {
+                long count = entry.getValue().get("missing").longValue();
+                if (entry.getKey().getEndPoint().resolve().equals(lossy))
+                    missing = count;
+                else
+                    assertEquals(0, count);
+                assertEquals(CANARIES, entry.getValue().get("checked").longValue());
+            }
+            assertTrue(missing > 0 && missing < CANARIES);
+            assertEquals(CANARIES, result.total());
+            assertEquals(CANARIES - missing, result.items());
+            assertEquals(missing, report.canaries.size());
+            assertTrue(report.canaries.stream().allMatch(s -> s == IRunReport.CanaryStatus.INCONSISTENT));
+            assertEquals(missing, report.ranges.values().stream().mapToLong(c -> c.get("canaries").longValue()).sum());
+            assertEquals(missing, report.ranges.values().stream().mapToLong(c -> c.get("missing").longValue()).sum());
+        }
+    }
+
+    private static StandInCluster.Builder cluster() {
+        return StandInCluster.builder()
+                .withNodes(NODES)
+                .withVnodes(VNODES)
+                .withReplicationFactor(NODES)
+                .withTables(1)
+                .withPartitions(2000)
+                .withRowsPerPartition(2)
+                .withSeed(0L);
+    }
+
+    private File select(StandInCluster cluster) throws Exception {
+        File file = new File(tmp, "aviary.json");
+        try (CqlSession session = connect(cluster);
+                var writer = new AviaryWriter(file)) {
+            AbstractSelector.builder()
+                    .forName(RangeSelector.class.getName())
+                    .withCqlSession(session)
+                    .withCanaryWriter(writer)
+                    .withLimit(LIMIT)
+                    .withOutput(NO_OUTPUT)
+                    .build()
+                    .selectCanaries();
+        }
+        return file;
+    }
+
+    private static ProgressTracker.Snapshot verify(StandInCluster cluster, File file, IRunReport report) throws Exception {
+        ProgressTracker progress = new ProgressTracker();
+        try (CqlSession session = connect(cluster)) {
+            AbstractVerifier.builder()
+                    .forName(ReplicaVerifier.class.getName())
+                    .withCqlSession(session)
+                    .withAviaryReader(new AviaryReader(file))
+                    .withProgressTracker(progress)
+                    .withRunReport(report)
+                    .withOutput(NO_OUTPUT)
+                    .build()
+                    .verifyCanaries();
+        }
+        return progress.snapshot();
+    }
+
+    private static CqlSession connect(StandInCluster cluster) {
+        return CqlSession.builder()
+                .addContactPoints(cluster.getContactPoints())
+                .withLocalDatacenter(cluster.getLocalDatacenter())
+                .build();
+    }
+
+    /**
+     * Report keeping the summaries of nodes and ranges, and the status of
+     * the canaries reported individually.
+     */
+    private static final class Report implements IRunReport {
+        private final Map<Node, Map<String, ? extends Number>> nodes = new ConcurrentHashMap<>();
+        private final Map<TokenRange, Map<String, ? extends Number>> ranges = new ConcurrentHashMap<>();
+        private final List<CanaryStatus> canaries = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void canaryResult(ICanary canary, CanaryStatus status, long nanos, String detail) {
+            canaries.add(status);
+        }
+
+        @Override
+        public void nodeSummary(Node node, Map<String, ? extends Number> counters) {
+            nodes.put(node, counters);
+        }
+
+        @Override
+        public void rangeSummary(IOrigin origin, TokenRange range, Map<String, ? extends Number> counters) {
+            ranges.put(range, counters);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2023 T. Répási.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.rtib.cassandra.aviary.verifier;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import io.github.rtib.cassandra.aviary.selector.AbstractSelector;
+import io.github.rtib.cassandra.aviary.selector.RangeSelector;
+import io.github.rtib.cassandra.aviary.standin.StandInCluster;
+import io.github.rtib.cassandra.aviary.storage.AviaryReader;
+import io.github.rtib.cassandra.aviary.storage.AviaryWriter;
+import io.github.rtib.cassandra.aviary.utils.ProgressTracker;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Verify canaries selected from stand-in clusters.
+ * @author repasi
+ */
+public class SimpleVerifierTest {
+
+    private static final int NODES = 3;
+    private static final int VNODES = 4;
+    private static final int TABLES = 2;
+    private static final int LIMIT = 5;
+    private static final long CANARIES = (long) LIMIT * TABLES * NODES * VNODES;
+    private static final PrintStream NO_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+
+    @TempDir
+    File tmp;
+
+    @Test
+    public void findsAllCanariesSelected() throws Exception {
+        try (var cluster = cluster().build()) {
+            cluster.start();
+            File file = select(cluster);
+            ProgressTracker.Snapshot result = verify(cluster, file);
+            assertEquals(CANARIES, result.total());
+            assertEquals(CANARIES, result.done());
+            assertEquals(CANARIES, result.items());
+            assertEquals(0, result.errors());
+        }
+    }
+
+    @Test
+    public void reportsCanariesLostOnEveryReplica() throws Exception {
+        File file;
+        try (var cluster = cluster().build()) {
+            cluster.start();
+            file = select(cluster);
+        }
+        // the same seed gives the same ring and rows, except for the rows lost
+        StandInCluster.Builder lossy = cluster();
+        for (int node = 0; node < NODES; node++)
+            lossy.withLoss(node, 1.0);
+        try (var cluster = lossy.build()) {
+            cluster.start();
+            ProgressTracker.Snapshot result = verify(cluster, file);
+            assertEquals(CANARIES, result.total());
+            assertEquals(CANARIES, result.done());
+            assertEquals(0, result.items());
+            assertEquals(0, result.errors());
+        }
+    }
+
+    private static StandInCluster.Builder cluster() {
+        return StandInCluster.builder()
+                .withNodes(NODES)
+                .withVnodes(VNODES)
+                .withReplicationFactor(NODES)
+                .withTables(TABLES)
+                .withPartitions(2000)
+                .withRowsPerPartition(2)
+                .withSeed(0L);
+    }
+
+    private File select(StandInCluster cluster) throws Exception {
+        File file = new File(tmp, "aviary.json");
+        try (CqlSession session = connect(cluster);
+                var writer = new AviaryWriter(file)) {
+            AbstractSelector.builder()
+                    .forName(RangeSelector.class.getName())
+                    .withCqlSession(session)
+                    .withCanaryWriter(writer)
+                    .withLimit(LIMIT)
+                    .withOutput(NO_OUTPUT)
+                    .build()
+                    .selectCanaries();
+        }
+        return file;
+    }
+
+    private static ProgressTracker.Snapshot verify(StandInCluster cluster, File file) throws Exception {
+        ProgressTracker progress = new ProgressTracker();
+        try (CqlSession session = connect(cluster)) {
+            AbstractVerifier.builder()
+                    .forName(SimpleVerifier.class.getName())
+                    .withCqlSession(session)
+                    .withAviaryReader(new AviaryReader(file))
+                    .withProgressTracker(progress)
+                    .withOutput(NO_OUTPUT)
+                    .build()
+                    .verifyCanaries();
+        }
+        return progress.snapshot();
+    }
+
+    private static CqlSession connect(StandInCluster cluster) {
+        return CqlSession.builder()
+                .addContactPoints(cluster.getContactPoints())
+                .withLocalDatacenter(cluster.getLocalDatacenter())
+                .build();
+    }
+}